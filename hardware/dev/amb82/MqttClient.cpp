@@ -209,6 +209,32 @@ bool MqttClient::publishNotification(const char* topic, const char* hardwareId,
   return result;
 }
 
+bool MqttClient::publishCommandAck(const char* topic, const char* hardwareId, const char* commandId,
+                                   const char* status, const char* detail) {
+  if (!client.connected()) {
+    debugPrint("MqttClient: Cannot publish ack - not connected to broker");
+    return false;
+  }
+
+  JsonDocument doc;
+  doc["hardwareId"] = hardwareId;
+  doc["commandId"] = commandId;
+  doc["status"] = status;
+  doc["detail"] = detail;
+
+  String message;
+  serializeJson(doc, message);
+
+  bool result = client.publish(topic, message.c_str());
+  if (result) {
+    client.loop();
+  } else {
+    debugPrint("MqttClient: Failed to publish command ack");
+    debugPrintStatus();
+  }
+  return result;
+}
+
 void MqttClient::update() {
   unsigned long currentTime = millis();
   
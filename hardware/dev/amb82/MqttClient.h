@@ -22,6 +22,10 @@ public:
   bool publishNotification(const char* topic, const char* hardwareId, const char* eventType, 
                           const char* title, const char* description, const char* mediaUrl, const char* timestamp);
   
+  // Acknowledge a backend command (status "OK" or "ERROR")
+  bool publishCommandAck(const char* topic, const char* hardwareId, const char* commandId,
+                         const char* status, const char* detail);
+  
   // Update the MQTT client (call in loop)
   void update();
   
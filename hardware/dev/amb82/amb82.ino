@@ -23,8 +23,10 @@ const char* MINIO_BUCKET = "apollo-bucket/uploads/";
 const char* MQTT_BROKER = "192.168.2.186";
 const int MQTT_PORT = 1883;
 const char* MQTT_NOTIFICATION_TOPIC = "devices/notifications";
-const char* MQTT_UNLOCK_TOPIC = "devices/commands/unlock";
-const char* MQTT_ENROLL_START_TOPIC = "doorlock/1/enroll/start";
+// Command topics are addressed to this device: devices/{HARDWARE_ID}/commands/...
+const char* MQTT_UNLOCK_TOPIC = "devices/AMB82_001/commands/unlock";
+const char* MQTT_ENROLL_START_TOPIC = "devices/AMB82_001/commands/enroll/start";
+const char* MQTT_COMMAND_ACK_TOPIC = "devices/AMB82_001/acks";
 const char* MQTT_ENROLL_STATUS_TOPIC = "doorlock/1/enroll/status";
 const char* MQTT_EVENT_TOPIC = "doorlock/1/event";
 const char* HARDWARE_ID = "AMB82_001";
@@ -94,6 +96,11 @@ void mqttCallback(char* topic, uint8_t* payload, unsigned int length) {
     // Send the unlock command to the STM32 via Serial2
     uint8_t emptyPayload[1] = {0};
     sendMessage(Serial2, CMD_UNLOCK, emptyPayload, 0);
+
+    // Acknowledge so the backend can report the outcome to the user
+    if (doc.containsKey("commandId")) {
+      mqttClient.publishCommandAck(MQTT_COMMAND_ACK_TOPIC, HARDWARE_ID, doc["commandId"], "OK", "Forwarded to lock");
+    }
   } else if (String(topic) == MQTT_ENROLL_START_TOPIC) {
     JsonDocument doc;
     DeserializationError err = deserializeJson(doc, payload, length);
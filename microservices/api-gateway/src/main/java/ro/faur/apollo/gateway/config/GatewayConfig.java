@@ -5,6 +5,7 @@ import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
 import ro.faur.apollo.gateway.filter.JwtAuthenticationFilter;
 
 @Configuration
@@ -89,6 +90,12 @@ public class GatewayConfig {
                         .filters(f -> f.filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config())))
                         .uri(getHomeServiceUri()))
                 
+                // Notification live stream (protected): long-lived, so exempt from the global response timeout
+                .route("notification-stream", r -> r.path("/api/notification/user/stream")
+                        .filters(f -> f.filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config())))
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri(getNotificationServiceUri()))
+                
                 // Notification Service routes (protected)
                 .route("notification-service", r -> r.path("/api/notification/**")
                         .filters(f -> f.filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config())))
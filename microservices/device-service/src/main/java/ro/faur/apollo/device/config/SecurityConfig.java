@@ -28,6 +28,7 @@ public class SecurityConfig extends BaseSecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/actuator/**").permitAll() // Health checks
+                        .requestMatchers("/internal/**").permitAll() // Service-to-service calls, not routed by the gateway
                         .requestMatchers("/v3/api-docs", "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll() // OpenAPI docs
                         .requestMatchers("/api/devices/register").permitAll() // Device registration from MQTT
                         .requestMatchers("/api/devices/hardware/*/uuid").permitAll() // Device UUID lookup from MQTT
@@ -1,11 +1,13 @@
 package ro.faur.apollo.device.controller;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ro.faur.apollo.device.dto.DeviceDTO;
 import ro.faur.apollo.device.service.DeviceService;
 import ro.faur.apollo.device.service.FingerprintEnrollService;
 import ro.faur.apollo.device.service.feign.NotificationServiceClient;
+import ro.faur.apollo.shared.dto.CommandOutcomeDTO;
 import ro.faur.apollo.shared.exception.DeviceException;
 
 import java.util.List;
@@ -15,6 +17,9 @@ import java.util.Map;
 @RequestMapping("/api/devices")
 public class DeviceController {
 
+    // Stays below the Feign read timeout (10s) towards notification-service
+    private static final long MAX_COMMAND_WAIT_MS = 8000;
+
     private final DeviceService deviceService;
     private final FingerprintEnrollService fingerprintEnrollService;
     private final NotificationServiceClient notificationServiceClient;
@@ -153,6 +158,10 @@ public class DeviceController {
         return success ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body("Device not found");
     }
 
+    /**
+     * Sends a remote unlock and returns its command id; poll {@code /{deviceUuid}/commands/{commandId}}
+     * for the device's acknowledgement.
+     */
     @PostMapping("/{deviceUuid}/unlock")
     public ResponseEntity<?> remoteUnlock(@PathVariable String deviceUuid) {
         var device = deviceService.getDevice(deviceUuid);
@@ -160,18 +169,33 @@ public class DeviceController {
             return ResponseEntity.notFound().build();
         }
 
-        Map<String, Object> body = Map.of("hardwareId", device.getHardwareId());
+        // Notification service only queues the command, so this call does not wait on the broker
+        Map<String, String> command = notificationServiceClient.sendUnlockCommand(Map.of("hardwareId", device.getHardwareId()));
+        if (command == null || command.get("commandId") == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                "error", "COMMAND_NOT_SENT",
+                "message", "The unlock command could not be sent, try again"
+            ));
+        }
+        return ResponseEntity.accepted().body(command);
+    }
 
-        // Fire-and-forget: perform the Feign call asynchronously so the client doesn't wait
-        java.util.concurrent.CompletableFuture.runAsync(() -> {
-            try {
-                notificationServiceClient.sendUnlockCommand(body);
-            } catch (Exception e) {
-                // Just log the error; we don't want to fail the user's request
-                System.err.println("Failed to send unlock command for device " + deviceUuid + ": " + e.getMessage());
-            }
-        });
+    /**
+     * Long-polls the outcome of a command sent to this device, waiting up to {@code waitMs} for the ack.
+     */
+    @GetMapping("/{deviceUuid}/commands/{commandId}")
+    public ResponseEntity<CommandOutcomeDTO> getCommandOutcome(@PathVariable String deviceUuid,
+                                                               @PathVariable String commandId,
+                                                               @RequestParam(defaultValue = "0") long waitMs) {
+        var device = deviceService.getDevice(deviceUuid);
+        if (device == null) {
+            return ResponseEntity.notFound().build();
+        }
 
-        return ResponseEntity.accepted().build();
+        CommandOutcomeDTO outcome = notificationServiceClient.getCommandOutcome(commandId, Math.min(waitMs, MAX_COMMAND_WAIT_MS));
+        if (outcome == null || (outcome.getHardwareId() != null && !outcome.getHardwareId().equals(device.getHardwareId()))) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(outcome);
     }
-}
\ No newline at end of file
+}
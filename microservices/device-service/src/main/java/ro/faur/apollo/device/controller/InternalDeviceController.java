@@ -0,0 +1,33 @@
+package ro.faur.apollo.device.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.device.service.DeviceService;
+import ro.faur.apollo.shared.dto.DeviceRegistrationDTO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service-to-service endpoints. These are not exposed through the API gateway.
+ */
+@RestController
+@RequestMapping("/internal/devices")
+public class InternalDeviceController {
+
+    private final DeviceService deviceService;
+
+    public InternalDeviceController(DeviceService deviceService) {
+        this.deviceService = deviceService;
+    }
+
+    @GetMapping("/hardware-map")
+    public ResponseEntity<Map<String, String>> getHardwareIdMappings() {
+        return ResponseEntity.ok(deviceService.getHardwareIdMappings());
+    }
+
+    @PostMapping("/register/batch")
+    public ResponseEntity<Map<String, String>> registerDevices(@RequestBody List<DeviceRegistrationDTO> registrations) {
+        return ResponseEntity.ok(deviceService.registerDevices(registrations));
+    }
+}
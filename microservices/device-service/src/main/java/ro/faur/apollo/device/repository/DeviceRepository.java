@@ -1,7 +1,10 @@
 package ro.faur.apollo.device.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ro.faur.apollo.device.domain.Device;
 
 import java.util.List;
@@ -13,4 +16,36 @@ public interface DeviceRepository extends JpaRepository<Device, String> {
 
     // Batch retrieval for multiple homes
     List<Device> findByHomeUuidIn(List<String> homeUuids);
+
+    // Only the two columns needed to export the whole fleet, without loading entities
+    @Query("SELECT d.hardwareId AS hardwareId, d.uuid AS uuid FROM Device d")
+    List<HardwareIdMapping> findAllHardwareIdMappings();
+
+    // Inserts the devices that don't exist yet and returns the uuid of every requested device, in one
+    // statement. The outer SELECT runs on the statement's snapshot, so it sees only the pre-existing rows
+    // and the CTE contributes the new ones. A row inserted concurrently by another transaction is in
+    // neither and is left out of the result; callers retry those.
+    @Transactional
+    @Query(value = """
+        WITH input AS (
+            SELECT DISTINCT ON (hardware_id) hardware_id, device_type
+            FROM unnest(CAST(:hardwareIds AS text[]), CAST(:deviceTypes AS text[])) AS t(hardware_id, device_type)
+        ),
+        inserted AS (
+            INSERT INTO device (uuid, hardware_id, device_type, status, created_at, updated_at, deleted)
+            SELECT gen_random_uuid(), hardware_id, device_type, 'ONLINE', NOW(), NOW(), false FROM input
+            ON CONFLICT (hardware_id) DO NOTHING
+            RETURNING hardware_id, uuid
+        )
+        SELECT hardware_id AS "hardwareId", uuid AS "uuid" FROM inserted
+        UNION ALL
+        SELECT d.hardware_id, d.uuid FROM device d JOIN input i ON i.hardware_id = d.hardware_id
+        """, nativeQuery = true)
+    List<HardwareIdMapping> upsertByHardwareIds(@Param("hardwareIds") String[] hardwareIds,
+                                                @Param("deviceTypes") String[] deviceTypes);
+
+    interface HardwareIdMapping {
+        String getHardwareId();
+        String getUuid();
+    }
 } 
\ No newline at end of file
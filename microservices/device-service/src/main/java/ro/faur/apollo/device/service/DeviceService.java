@@ -1,23 +1,32 @@
 package ro.faur.apollo.device.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import ro.faur.apollo.device.domain.Device;
+import ro.faur.apollo.shared.dto.DeviceRegistrationDTO;
 import ro.faur.apollo.shared.dto.DeviceStatus;
 import ro.faur.apollo.device.dto.DeviceDTO;
 import ro.faur.apollo.device.repository.DeviceRepository;
+import ro.faur.apollo.device.service.feign.NotificationServiceClient;
 import ro.faur.apollo.shared.exception.DeviceException;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 public class DeviceService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DeviceService.class);
+
     private final DeviceRepository deviceRepository;
+    private final NotificationServiceClient notificationServiceClient;
 
-    public DeviceService(DeviceRepository deviceRepository) {
+    public DeviceService(DeviceRepository deviceRepository, NotificationServiceClient notificationServiceClient) {
         this.deviceRepository = deviceRepository;
+        this.notificationServiceClient = notificationServiceClient;
     }
 
     public List<DeviceDTO> getAllDevices() {
@@ -37,6 +46,16 @@ public class DeviceService {
         return device != null ? convertToDTO(device) : null;
     }
 
+    /**
+     * Export of every hardwareId &rarr; device UUID mapping, used to warm caches in other services.
+     */
+    public Map<String, String> getHardwareIdMappings() {
+        return deviceRepository.findAllHardwareIdMappings()
+                .stream()
+                .collect(Collectors.toMap(DeviceRepository.HardwareIdMapping::getHardwareId,
+                        DeviceRepository.HardwareIdMapping::getUuid));
+    }
+
     public List<DeviceDTO> getDevicesByHomeUuid(String homeUuid) {
         return deviceRepository.findByHomeUuid(homeUuid)
                 .stream()
@@ -79,18 +98,26 @@ public class DeviceService {
     }
 
     public DeviceDTO registerDevice(String hardwareId, String deviceType) {
-        Device existingDevice = deviceRepository.findByHardwareId(hardwareId);
-        if (existingDevice != null) {
-            return convertToDTO(existingDevice);
-        }
-
-        Device device = new Device();
-        device.setHardwareId(hardwareId);
-        device.setDeviceType(deviceType);
-        device.setStatus(DeviceStatus.ONLINE);
+        // Upsert so that two concurrent hellos for the same device cannot race on the unique hardware_id
+        String deviceUuid = registerDevices(List.of(new DeviceRegistrationDTO(hardwareId, deviceType))).get(hardwareId);
+        return deviceUuid != null ? getDevice(deviceUuid) : getDeviceByHardwareId(hardwareId);
+    }
 
-        Device savedDevice = deviceRepository.save(device);
-        return convertToDTO(savedDevice);
+    /**
+     * Registers many devices at once with a single upsert; devices that already exist are left untouched.
+     *
+     * @return hardwareId &rarr; device UUID for the requested devices
+     */
+    public Map<String, String> registerDevices(List<DeviceRegistrationDTO> registrations) {
+        if (registrations == null || registrations.isEmpty()) {
+            return Map.of();
+        }
+        String[] hardwareIds = registrations.stream().map(DeviceRegistrationDTO::getHardwareId).toArray(String[]::new);
+        String[] deviceTypes = registrations.stream().map(DeviceRegistrationDTO::getDeviceType).toArray(String[]::new);
+        return deviceRepository.upsertByHardwareIds(hardwareIds, deviceTypes)
+                .stream()
+                .collect(Collectors.toMap(DeviceRepository.HardwareIdMapping::getHardwareId,
+                        DeviceRepository.HardwareIdMapping::getUuid));
     }
 
     public boolean unlinkDeviceFromHome(String deviceUuid) {
@@ -99,6 +126,7 @@ public class DeviceService {
             Device device = deviceOpt.get();
             device.setHomeUuid(null);
             deviceRepository.save(device);
+            evictDeviceResolution(device.getHardwareId());
             return true;
         }
         return false;
@@ -114,6 +142,14 @@ public class DeviceService {
         return null;
     }
 
+    private void evictDeviceResolution(String hardwareId) {
+        try {
+            notificationServiceClient.evictDeviceResolution(hardwareId);
+        } catch (Exception e) {
+            logger.warn("Failed to evict cached resolution for hardwareId {}: {}", hardwareId, e.getMessage());
+        }
+    }
+
     private DeviceDTO convertToDTO(Device device) {
         return new DeviceDTO(
                 device.getUuid(),
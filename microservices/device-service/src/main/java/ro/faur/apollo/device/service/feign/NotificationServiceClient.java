@@ -2,8 +2,13 @@ package ro.faur.apollo.device.service.feign;
 
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.context.annotation.Primary;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import ro.faur.apollo.shared.dto.CommandOutcomeDTO;
 
 import java.util.Map;
 
@@ -19,5 +24,11 @@ public interface NotificationServiceClient {
     void startFingerprintEnroll(@RequestBody Map<String, Object> body);
 
     @PostMapping("/internal/mqtt/unlock")
-    void sendUnlockCommand(@RequestBody Map<String, Object> body);
+    Map<String, String> sendUnlockCommand(@RequestBody Map<String, Object> body);
+
+    @GetMapping("/internal/mqtt/commands/{commandId}")
+    CommandOutcomeDTO getCommandOutcome(@PathVariable String commandId, @RequestParam long waitMs);
+
+    @DeleteMapping("/internal/mqtt/devices/{hardwareId}/resolution")
+    void evictDeviceResolution(@PathVariable String hardwareId);
 } 
\ No newline at end of file
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.openfeign.FallbackFactory;
 import org.springframework.stereotype.Component;
+import ro.faur.apollo.shared.dto.CommandOutcomeDTO;
 
 import java.util.Map;
 
@@ -21,8 +22,20 @@ public class NotificationServiceClientFallback implements FallbackFactory<Notifi
             }
 
             @Override
-            public void sendUnlockCommand(Map<String, Object> body) {
-                logger.error("NotificationServiceClient.sendUnlockCommand(body={}) failed - falling back to no-op", body, cause);
+            public Map<String, String> sendUnlockCommand(Map<String, Object> body) {
+                logger.error("NotificationServiceClient.sendUnlockCommand(body={}) failed - falling back to empty map", body, cause);
+                return Map.of();
+            }
+
+            @Override
+            public CommandOutcomeDTO getCommandOutcome(String commandId, long waitMs) {
+                logger.error("NotificationServiceClient.getCommandOutcome({}) failed - falling back to null", commandId, cause);
+                return null;
+            }
+
+            @Override
+            public void evictDeviceResolution(String hardwareId) {
+                logger.error("NotificationServiceClient.evictDeviceResolution({}) failed - falling back to no-op", hardwareId, cause);
             }
         };
     }
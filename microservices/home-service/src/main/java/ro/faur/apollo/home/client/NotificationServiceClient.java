@@ -0,0 +1,18 @@
+package ro.faur.apollo.home.client;
+
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.List;
+
+@FeignClient(
+    name = "notification-service",
+    url = "${services.notification.url:}",
+    fallbackFactory = NotificationServiceClientFallback.class
+)
+public interface NotificationServiceClient {
+
+    @PostMapping("/internal/notifications/inbox/stale")
+    void markInboxesStale(@RequestBody List<String> userUuids);
+}
@@ -0,0 +1,24 @@
+package ro.faur.apollo.home.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.openfeign.FallbackFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class NotificationServiceClientFallback implements FallbackFactory<NotificationServiceClient> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationServiceClientFallback.class);
+
+    @Override
+    public NotificationServiceClient create(Throwable cause) {
+        return new NotificationServiceClient() {
+            @Override
+            public void markInboxesStale(List<String> userUuids) {
+                logger.error("NotificationServiceClient.markInboxesStale({}) failed - falling back to no-op", userUuids, cause);
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package ro.faur.apollo.home.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.home.dto.HomeSummaryDTO;
+import ro.faur.apollo.home.service.DeviceAudienceIndex;
+import ro.faur.apollo.home.service.HomeService;
+import ro.faur.apollo.shared.dto.DeviceAudienceDTO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service-to-service endpoints. These are not exposed through the API gateway.
+ */
+@RestController
+@RequestMapping("/internal/home")
+public class InternalHomeController {
+
+    private final HomeService homeService;
+    private final DeviceAudienceIndex deviceAudienceIndex;
+
+    public InternalHomeController(HomeService homeService, DeviceAudienceIndex deviceAudienceIndex) {
+        this.homeService = homeService;
+        this.deviceAudienceIndex = deviceAudienceIndex;
+    }
+
+    @GetMapping("/summary/user/{userUuid}")
+    public ResponseEntity<List<HomeSummaryDTO>> getHomeSummariesForUser(@PathVariable String userUuid) {
+        return ResponseEntity.ok(homeService.getHomeSummariesForUser(userUuid));
+    }
+
+    @GetMapping("/devices/user/{userUuid}")
+    public ResponseEntity<List<String>> getDeviceUuidsForUser(@PathVariable String userUuid) {
+        return ResponseEntity.ok(homeService.getDeviceUuidsForUser(userUuid));
+    }
+
+    /**
+     * Batch audience lookup. The body maps each device UUID to the audience version the caller
+     * holds ({@code -1} for none); only devices whose audience has moved on are returned.
+     */
+    @PostMapping("/audience")
+    public ResponseEntity<List<DeviceAudienceDTO>> getAudiences(@RequestBody Map<String, Long> knownVersions) {
+        return ResponseEntity.ok(deviceAudienceIndex.getAudiences(knownVersions));
+    }
+}
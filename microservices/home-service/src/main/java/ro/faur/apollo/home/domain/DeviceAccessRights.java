@@ -1,5 +1,7 @@
 package ro.faur.apollo.home.domain;
 
+import java.util.Collection;
+
 public enum DeviceAccessRights {
     VIEW_IMAGES,
     VIEW_LIVE_STREAM,
@@ -12,5 +14,20 @@ public enum DeviceAccessRights {
     ENROLL_RFID,
     DELETE_RFID,
     VIEW_DEVICE_INFO,
-    VIEW_DEVICE_SETTINGS,
+    VIEW_DEVICE_SETTINGS;
+
+    // Bit i of a rights mask is the right with ordinal i, so new rights must be added at the end
+    public static final long ALL_MASK = (1L << values().length) - 1;
+
+    public static long toMask(Collection<DeviceAccessRights> rights) {
+        long mask = 0;
+        for (DeviceAccessRights right : rights) {
+            mask |= 1L << right.ordinal();
+        }
+        return mask;
+    }
+
+    public boolean isIn(long mask) {
+        return (mask & (1L << ordinal())) != 0;
+    }
 } 
\ No newline at end of file
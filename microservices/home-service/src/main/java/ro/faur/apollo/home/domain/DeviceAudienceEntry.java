@@ -0,0 +1,58 @@
+package ro.faur.apollo.home.domain;
+
+import jakarta.persistence.*;
+import ro.faur.apollo.shared.domain.BaseEntity;
+
+/**
+ * One row of the device &rarr; audience reverse index: a user who can see the device, with their
+ * rights on it as a {@link DeviceAccessRights} bit mask. Admins hold every right. Maintained by
+ * {@code DeviceAudienceIndex} from the home's admins and guests.
+ */
+@Entity
+@Table(name = "device_audience",
+        uniqueConstraints = @UniqueConstraint(name = "uk_device_audience_device_user", columnNames = {"device_uuid", "user_uuid"}),
+        indexes = @Index(name = "idx_device_audience_home_uuid", columnList = "home_uuid"))
+public class DeviceAudienceEntry extends BaseEntity {
+
+    @Column(name = "home_uuid", nullable = false)
+    private String homeUuid;
+
+    @Column(name = "device_uuid", nullable = false)
+    private String deviceUuid;
+
+    @Column(name = "user_uuid", nullable = false)
+    private String userUuid;
+
+    @Column(name = "rights", nullable = false)
+    private long rights;
+
+    public DeviceAudienceEntry(String homeUuid, String deviceUuid, String userUuid, long rights) {
+        this.homeUuid = homeUuid;
+        this.deviceUuid = deviceUuid;
+        this.userUuid = userUuid;
+        this.rights = rights;
+    }
+
+    public DeviceAudienceEntry() {
+    }
+
+    public String getHomeUuid() {
+        return homeUuid;
+    }
+
+    public String getDeviceUuid() {
+        return deviceUuid;
+    }
+
+    public String getUserUuid() {
+        return userUuid;
+    }
+
+    public long getRights() {
+        return rights;
+    }
+
+    public void setRights(long rights) {
+        this.rights = rights;
+    }
+}
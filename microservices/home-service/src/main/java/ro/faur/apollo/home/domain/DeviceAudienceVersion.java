@@ -0,0 +1,30 @@
+package ro.faur.apollo.home.domain;
+
+import jakarta.persistence.*;
+
+/**
+ * Version stamp of a device's audience, raised on every change to it. Callers that cache an
+ * audience send the version they hold and only get the device back once it has moved.
+ */
+@Entity
+@Table(name = "device_audience_version")
+public class DeviceAudienceVersion {
+
+    @Id
+    @Column(name = "device_uuid")
+    private String deviceUuid;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public DeviceAudienceVersion() {
+    }
+
+    public String getDeviceUuid() {
+        return deviceUuid;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
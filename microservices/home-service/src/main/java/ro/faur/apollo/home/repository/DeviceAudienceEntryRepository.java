@@ -0,0 +1,15 @@
+package ro.faur.apollo.home.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ro.faur.apollo.home.domain.DeviceAudienceEntry;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DeviceAudienceEntryRepository extends JpaRepository<DeviceAudienceEntry, String> {
+    List<DeviceAudienceEntry> findByHomeUuid(String homeUuid);
+    // Served by the unique (device_uuid, user_uuid) index
+    List<DeviceAudienceEntry> findByDeviceUuidIn(Collection<String> deviceUuids);
+}
@@ -0,0 +1,22 @@
+package ro.faur.apollo.home.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ro.faur.apollo.home.domain.DeviceAudienceVersion;
+
+@Repository
+public interface DeviceAudienceVersionRepository extends JpaRepository<DeviceAudienceVersion, String> {
+
+    // Increments under the row lock, so concurrent changes to one device never end on the same version
+    @Modifying
+    @Transactional
+    @Query(value = """
+        INSERT INTO device_audience_version (device_uuid, version) VALUES (:deviceUuid, 1)
+        ON CONFLICT (device_uuid) DO UPDATE SET version = device_audience_version.version + 1
+        """, nativeQuery = true)
+    void bump(@Param("deviceUuid") String deviceUuid);
+}
@@ -0,0 +1,231 @@
+package ro.faur.apollo.home.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ro.faur.apollo.home.domain.DeviceAccessRights;
+import ro.faur.apollo.home.domain.DeviceAudienceEntry;
+import ro.faur.apollo.home.domain.DeviceAudienceVersion;
+import ro.faur.apollo.home.domain.GuestDeviceRights;
+import ro.faur.apollo.home.domain.Home;
+import ro.faur.apollo.home.domain.HomeGuest;
+import ro.faur.apollo.home.repository.DeviceAudienceEntryRepository;
+import ro.faur.apollo.home.repository.DeviceAudienceVersionRepository;
+import ro.faur.apollo.home.repository.HomeRepository;
+import ro.faur.apollo.shared.dto.DeviceAudienceDTO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Device &rarr; audience reverse index: which users can see a device, and with which rights.
+ * Admins of the device's home get every right, guests the rights granted to them on that device.
+ * The index is stored in {@code device_audience} and recomputed for a whole home, in the
+ * transaction that changes the home, by {@link #refresh(Home)}. Every device whose audience changed
+ * gets its version stamp raised.
+ * <p>
+ * Lookups are served from an in-process cache validated against the version stamps, which are read
+ * from the database on every lookup, so a change made through another replica is never missed.
+ */
+@Component
+public class DeviceAudienceIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceAudienceIndex.class);
+
+    private final DeviceAudienceEntryRepository entryRepository;
+    private final DeviceAudienceVersionRepository versionRepository;
+    private final HomeRepository homeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, DeviceAudienceDTO> cache = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public DeviceAudienceIndex(DeviceAudienceEntryRepository entryRepository,
+                               DeviceAudienceVersionRepository versionRepository,
+                               HomeRepository homeRepository,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${home.audience-cache.max-entries}") int maxEntries) {
+        this.entryRepository = entryRepository;
+        this.versionRepository = versionRepository;
+        this.homeRepository = homeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxEntries = maxEntries;
+
+        Gauge.builder("home.audience.cache.size", cache, Map::size)
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("home.audience.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("home.audience.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the index for homes that existed before it did.
+     */
+    @PostConstruct
+    void buildIfEmpty() {
+        try {
+            if (entryRepository.count() > 0) {
+                return;
+            }
+            int homes = transactionTemplate.execute(status -> {
+                List<Home> all = homeRepository.findAll();
+                all.forEach(this::refresh);
+                return all.size();
+            });
+            logger.info("Built device audience index for {} homes", homes);
+        } catch (Exception e) {
+            logger.error("Could not build device audience index", e);
+        }
+    }
+
+    /**
+     * Brings the index of every device of the home in line with its admins and guests. Must be
+     * called inside the transaction that changed the home, after the change.
+     */
+    public void refresh(Home home) {
+        Map<String, Map<String, Long>> wanted = audienceOf(home);
+        Map<String, DeviceAudienceEntry> existing = new HashMap<>();
+        for (DeviceAudienceEntry entry : entryRepository.findByHomeUuid(home.getUuid())) {
+            existing.put(entry.getDeviceUuid() + "|" + entry.getUserUuid(), entry);
+        }
+
+        Set<String> changed = new HashSet<>();
+        List<DeviceAudienceEntry> toSave = new ArrayList<>();
+        wanted.forEach((deviceUuid, members) -> members.forEach((userUuid, rights) -> {
+            DeviceAudienceEntry entry = existing.remove(deviceUuid + "|" + userUuid);
+            if (entry == null) {
+                toSave.add(new DeviceAudienceEntry(home.getUuid(), deviceUuid, userUuid, rights));
+                changed.add(deviceUuid);
+            } else if (entry.getRights() != rights) {
+                entry.setRights(rights);
+                toSave.add(entry);
+                changed.add(deviceUuid);
+            }
+        }));
+        // Whatever is left lost access
+        existing.values().forEach(entry -> changed.add(entry.getDeviceUuid()));
+        entryRepository.deleteAll(existing.values());
+        entryRepository.saveAll(toSave);
+
+        markChanged(changed);
+    }
+
+    /**
+     * Drops the index of a deleted home. Must be called inside the transaction that deletes it.
+     */
+    public void removeHome(String homeUuid) {
+        List<DeviceAudienceEntry> entries = entryRepository.findByHomeUuid(homeUuid);
+        entryRepository.deleteAll(entries);
+        markChanged(entries.stream().map(DeviceAudienceEntry::getDeviceUuid).collect(Collectors.toSet()));
+    }
+
+    private void markChanged(Set<String> deviceUuids) {
+        // Sorted so two transactions bumping overlapping devices lock them in the same order
+        deviceUuids.stream().sorted().forEach(versionRepository::bump);
+        if (!deviceUuids.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.keySet().removeAll(deviceUuids);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the audience of every requested device whose version differs from the one the
+     * caller holds. Pass {@code -1} for devices the caller has nothing cached for. A device that is
+     * not in any home has version 0 and no members.
+     */
+    public List<DeviceAudienceDTO> getAudiences(Map<String, Long> knownVersions) {
+        Map<String, Long> versions = versionRepository.findAllById(knownVersions.keySet()).stream()
+                .collect(Collectors.toMap(DeviceAudienceVersion::getDeviceUuid, DeviceAudienceVersion::getVersion));
+
+        List<DeviceAudienceDTO> result = new ArrayList<>();
+        List<String> misses = new ArrayList<>();
+        knownVersions.forEach((deviceUuid, known) -> {
+            long version = versions.getOrDefault(deviceUuid, 0L);
+            if (Objects.equals(known, version)) {
+                return;
+            }
+            DeviceAudienceDTO cached = cache.get(deviceUuid);
+            if (cached != null && cached.getVersion() == version) {
+                hitCounter.increment();
+                result.add(cached);
+            } else {
+                missCounter.increment();
+                misses.add(deviceUuid);
+            }
+        });
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Map<String, List<DeviceAudienceDTO.Member>> members = new HashMap<>();
+        for (DeviceAudienceEntry entry : entryRepository.findByDeviceUuidIn(misses)) {
+            members.computeIfAbsent(entry.getDeviceUuid(), key -> new ArrayList<>())
+                    .add(new DeviceAudienceDTO.Member(entry.getUserUuid(),
+                            DeviceAccessRights.VIEW_NOTIFICATIONS.isIn(entry.getRights())));
+        }
+        for (String deviceUuid : misses) {
+            // The version was read before the entries, so a change in between only makes the next lookup miss again
+            DeviceAudienceDTO audience = new DeviceAudienceDTO(deviceUuid, versions.getOrDefault(deviceUuid, 0L),
+                    List.copyOf(members.getOrDefault(deviceUuid, List.of())));
+            cache.put(deviceUuid, audience);
+            result.add(audience);
+        }
+        if (cache.size() > maxEntries) {
+            evict();
+        }
+        return result;
+    }
+
+    private void evict() {
+        // Dropped entries are simply loaded again
+        Iterator<String> keys = cache.keySet().iterator();
+        while (cache.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static Map<String, Map<String, Long>> audienceOf(Home home) {
+        Map<String, Map<String, Long>> audience = new HashMap<>();
+        for (String deviceUuid : home.getDeviceUuids()) {
+            Map<String, Long> members = audience.computeIfAbsent(deviceUuid, key -> new HashMap<>());
+            home.getAdminUuids().forEach(adminUuid -> members.put(adminUuid, DeviceAccessRights.ALL_MASK));
+        }
+        for (HomeGuest guest : home.getGuests()) {
+            for (GuestDeviceRights deviceRights : guest.getDeviceRights()) {
+                Map<String, Long> members = audience.get(deviceRights.getDeviceUuid());
+                // Rights on a device that is not (or no longer) in the home grant nothing
+                if (members != null && deviceRights.getAccessRights() != null) {
+                    members.merge(guest.getUserUuid(), DeviceAccessRights.toMask(deviceRights.getAccessRights()), (a, b) -> a | b);
+                }
+            }
+        }
+        return audience;
+    }
+}
@@ -28,6 +28,8 @@ public class HomeAccessService {
     private final GuestDeviceRightsRepository guestDeviceRightsRepository;
     private final DeviceServiceClient deviceServiceClient;
     private final TransactionTemplate transactionTemplate;
+    private final InboxAccessNotifier inboxAccessNotifier;
+    private final DeviceAudienceIndex deviceAudienceIndex;
 
     public HomeAccessService(
             HomeRepository homeRepository, 
@@ -35,7 +37,9 @@ public class HomeAccessService {
             HomeGuestRepository homeGuestRepository,
             GuestDeviceRightsRepository guestDeviceRightsRepository,
             DeviceServiceClient deviceServiceClient,
-            PlatformTransactionManager transactionManager
+            PlatformTransactionManager transactionManager,
+            InboxAccessNotifier inboxAccessNotifier,
+            DeviceAudienceIndex deviceAudienceIndex
     ) {
         this.homeRepository = homeRepository;
         this.userServiceClient = userServiceClient;
@@ -43,6 +47,8 @@ public class HomeAccessService {
         this.guestDeviceRightsRepository = guestDeviceRightsRepository;
         this.deviceServiceClient = deviceServiceClient;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.inboxAccessNotifier = inboxAccessNotifier;
+        this.deviceAudienceIndex = deviceAudienceIndex;
     }
 
     public List<AdminDTO> getHomeAdmins(String homeUuid) {
@@ -77,8 +83,10 @@ public class HomeAccessService {
                     .orElseThrow(() -> new IllegalArgumentException("Home not found"));
             homeTx.getAdminUuids().add(user.getUuid());
             homeRepository.save(homeTx);
+            deviceAudienceIndex.refresh(homeTx);
             return null;
         });
+        inboxAccessNotifier.notifyUsers(List.of(user.getUuid()));
     }
 
     @CacheEvict(value = "homeSummaries", allEntries = true)
@@ -88,8 +96,10 @@ public class HomeAccessService {
                     .orElseThrow(() -> new IllegalArgumentException("Home not found"));
             homeTx.getAdminUuids().remove(adminUuid);
             homeRepository.save(homeTx);
+            deviceAudienceIndex.refresh(homeTx);
             return null;
         });
+        inboxAccessNotifier.notifyUsers(List.of(adminUuid));
     }
 
     public List<GuestDTO> getHomeGuests(String homeUuid) {
@@ -148,13 +158,15 @@ public class HomeAccessService {
             homeTx.getGuests().add(guest);
             homeGuestRepository.save(guest);
             homeRepository.save(homeTx);
+            deviceAudienceIndex.refresh(homeTx);
             return null;
         });
+        inboxAccessNotifier.notifyUsers(List.of(user.getUuid()));
     }
 
     @CacheEvict(value = "homeSummaries", allEntries = true)
     public void removeHomeGuest(String homeUuid, String guestUuid) {
-        transactionTemplate.execute(status -> {
+        String guestUserUuid = transactionTemplate.execute(status -> {
             Home homeTx = homeRepository.findById(homeUuid)
                     .orElseThrow(() -> new IllegalArgumentException("Home not found"));
 
@@ -167,13 +179,15 @@ public class HomeAccessService {
 
             homeTx.getGuests().remove(guest);
             homeRepository.save(homeTx);
-            return null;
+            deviceAudienceIndex.refresh(homeTx);
+            return guest.getUserUuid();
         });
+        inboxAccessNotifier.notifyUsers(List.of(guestUserUuid));
     }
 
     @CacheEvict(value = "homeSummaries", allEntries = true)
     public void updateGuestDeviceRights(String homeUuid, String guestUuid, List<GuestDeviceRightsDTO> deviceRights) {
-        transactionTemplate.execute(status -> {
+        String guestUserUuid = transactionTemplate.execute(status -> {
             Home homeTx = homeRepository.findById(homeUuid)
                     .orElseThrow(() -> new IllegalArgumentException("Home not found"));
 
@@ -193,7 +207,10 @@ public class HomeAccessService {
 
             guest.getDeviceRights().addAll(newRights);
             homeGuestRepository.save(guest);
-            return null;
+            deviceAudienceIndex.refresh(homeTx);
+            return guest.getUserUuid();
         });
+        // VIEW_NOTIFICATIONS decides which devices are in the guest's notification inbox
+        inboxAccessNotifier.notifyUsers(List.of(guestUserUuid));
     }
 } 
\ No newline at end of file
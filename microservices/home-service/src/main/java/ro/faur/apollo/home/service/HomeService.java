@@ -26,12 +26,18 @@ public class HomeService {
     private final DeviceServiceClient deviceServiceClient;
     private final HomeDtoMapper homeDtoMapper;
     private final TransactionTemplate transactionTemplate;
+    private final InboxAccessNotifier inboxAccessNotifier;
+    private final DeviceAudienceIndex deviceAudienceIndex;
 
-    public HomeService(HomeRepository homeRepository, DeviceServiceClient deviceServiceClient, HomeDtoMapper homeDtoMapper, PlatformTransactionManager transactionManager) {
+    public HomeService(HomeRepository homeRepository, DeviceServiceClient deviceServiceClient, HomeDtoMapper homeDtoMapper,
+                       PlatformTransactionManager transactionManager, InboxAccessNotifier inboxAccessNotifier,
+                       DeviceAudienceIndex deviceAudienceIndex) {
         this.homeRepository = homeRepository;
         this.deviceServiceClient = deviceServiceClient;
         this.homeDtoMapper = homeDtoMapper;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.inboxAccessNotifier = inboxAccessNotifier;
+        this.deviceAudienceIndex = deviceAudienceIndex;
     }
 
     public HomeDTO createHome(String name, String address, String creatorUserUuid) {
@@ -48,13 +54,19 @@ public class HomeService {
             throw new IllegalArgumentException("User is not an admin of the home.");
         }
 
+        List<String> homeUsers = homeRepository.findById(homeUuid).map(InboxAccessNotifier::usersOf).orElse(List.of());
         List<DeviceDTO> homeDevices = deviceServiceClient.getDevicesByHome(homeUuid);
 
         for (DeviceDTO device : homeDevices) {
             deviceServiceClient.unlinkDeviceFromHome(device.getUuid());
         }
 
-        homeRepository.deleteById(homeUuid);
+        transactionTemplate.execute(status -> {
+            homeRepository.deleteById(homeUuid);
+            deviceAudienceIndex.removeHome(homeUuid);
+            return null;
+        });
+        inboxAccessNotifier.notifyUsers(homeUsers);
         return true;
     }
 
@@ -120,8 +132,10 @@ public class HomeService {
                     .orElseThrow(() -> new IllegalArgumentException("Home not found for UUID: " + homeUuid));
             home.getDeviceUuids().add(createdDevice.getUuid());
             homeRepository.save(home);
+            deviceAudienceIndex.refresh(home);
             return null;
         });
+        inboxAccessNotifier.notifyHome(homeUuid);
 
         return createdDevice;
     }
@@ -140,9 +154,11 @@ public class HomeService {
         if (Boolean.TRUE.equals(success)) {
             transactionTemplate.execute(status -> {
                 home.getDeviceUuids().remove(deviceUuid);
-                homeRepository.save(home);
+                // home was loaded outside this transaction; index the managed copy
+                deviceAudienceIndex.refresh(homeRepository.save(home));
                 return null;
             });
+            inboxAccessNotifier.notifyHome(homeUuid);
             return true;
         }
 
@@ -164,6 +180,16 @@ public class HomeService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Every device the user sees as an admin or guest of its home.
+     */
+    public List<String> getDeviceUuidsForUser(String userUuid) {
+        return homeRepository.findByAdminOrGuest(userUuid).stream()
+                .flatMap(h -> h.getDeviceUuids().stream())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
     /**
      * Convert Home entity to HomeDTO using the mapper
      */
@@ -0,0 +1,56 @@
+package ro.faur.apollo.home.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.home.client.NotificationServiceClient;
+import ro.faur.apollo.home.domain.Home;
+import ro.faur.apollo.home.domain.HomeGuest;
+import ro.faur.apollo.home.repository.HomeRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tells notification-service whose device access changed, so their notification inbox is synced
+ * on their next read. Must be called after the change is committed. A failed call is only logged:
+ * notification-service also resyncs every inbox periodically.
+ */
+@Component
+public class InboxAccessNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboxAccessNotifier.class);
+
+    private final NotificationServiceClient notificationServiceClient;
+    private final HomeRepository homeRepository;
+
+    public InboxAccessNotifier(NotificationServiceClient notificationServiceClient, HomeRepository homeRepository) {
+        this.notificationServiceClient = notificationServiceClient;
+        this.homeRepository = homeRepository;
+    }
+
+    public void notifyUsers(Collection<String> userUuids) {
+        if (userUuids.isEmpty()) {
+            return;
+        }
+        try {
+            notificationServiceClient.markInboxesStale(List.copyOf(userUuids));
+        } catch (Exception e) {
+            logger.warn("Failed to report access change of users {}: {}", userUuids, e.getMessage());
+        }
+    }
+
+    /**
+     * For changes to the home's devices, which every admin and guest of the home sees.
+     */
+    public void notifyHome(String homeUuid) {
+        homeRepository.findById(homeUuid).ifPresent(home -> notifyUsers(usersOf(home)));
+    }
+
+    public static List<String> usersOf(Home home) {
+        List<String> userUuids = new ArrayList<>(home.getAdminUuids());
+        home.getGuests().stream().map(HomeGuest::getUserUuid).forEach(userUuids::add);
+        return userUuids;
+    }
+}
@@ -3,7 +3,9 @@ package ro.faur.apollo.notification.client;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.context.annotation.Primary;
 import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.shared.dto.DeviceRegistrationDTO;
 
+import java.util.List;
 import java.util.Map;
 
 @FeignClient(
@@ -18,9 +20,15 @@ public interface DeviceServiceClient {
     void registerDevice(@RequestBody String hardwareId,
                         @RequestParam String deviceType);
 
+    @PostMapping("/internal/devices/register/batch")
+    Map<String, String> registerDevices(@RequestBody List<DeviceRegistrationDTO> registrations);
+
     @GetMapping("/api/devices/hardware/{hardwareId}/uuid")
     String getDeviceUuidByHardwareId(@PathVariable String hardwareId);
 
+    @GetMapping("/internal/devices/hardware-map")
+    Map<String, String> getHardwareIdMappings();
+
     @PostMapping("/api/devices/{deviceUuid}/fingerprint/enroll/status")
     void updateEnrollStatus(@PathVariable String deviceUuid, @RequestBody Map<String, Object> body);
 } 
\ No newline at end of file
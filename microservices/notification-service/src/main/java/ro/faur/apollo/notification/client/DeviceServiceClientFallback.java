@@ -4,7 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.openfeign.FallbackFactory;
 import org.springframework.stereotype.Component;
+import ro.faur.apollo.shared.dto.DeviceRegistrationDTO;
 
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -21,12 +23,25 @@ public class DeviceServiceClientFallback implements FallbackFactory<DeviceServic
                            hardwareId, deviceType, cause);
             }
 
+            @Override
+            public Map<String, String> registerDevices(List<DeviceRegistrationDTO> registrations) {
+                logger.error("DeviceServiceClient.registerDevices({} devices) failed - falling back to empty map",
+                           registrations.size(), cause);
+                return Map.of();
+            }
+
             @Override
             public String getDeviceUuidByHardwareId(String hardwareId) {
                 logger.error("DeviceServiceClient.getDeviceUuidByHardwareId({}) failed - falling back to null", hardwareId, cause);
                 return null;
             }
 
+            @Override
+            public Map<String, String> getHardwareIdMappings() {
+                logger.error("DeviceServiceClient.getHardwareIdMappings() failed - falling back to empty map", cause);
+                return Map.of();
+            }
+
             @Override
             public void updateEnrollStatus(String deviceUuid, Map<String, Object> body) {
                 logger.error("DeviceServiceClient.updateEnrollStatus(deviceUuid={}, body={}) failed - falling back to no-op", 
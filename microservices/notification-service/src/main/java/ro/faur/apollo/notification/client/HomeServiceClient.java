@@ -3,10 +3,14 @@ package ro.faur.apollo.notification.client;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import ro.faur.apollo.notification.dto.HomeDTO;
+import ro.faur.apollo.shared.dto.DeviceAudienceDTO;
 import ro.faur.apollo.shared.dto.HomeSummaryDTO;
 
 import java.util.List;
+import java.util.Map;
 
 @FeignClient(
     name = "home-service",
@@ -20,4 +24,10 @@ public interface HomeServiceClient {
 
     @GetMapping("/internal/home/summary/user/{userUuid}")
     List<HomeSummaryDTO> getHomeSummariesForUser(@PathVariable String userUuid);
+
+    @GetMapping("/internal/home/devices/user/{userUuid}")
+    List<String> getDeviceUuidsForUser(@PathVariable String userUuid);
+
+    @PostMapping("/internal/home/audience")
+    List<DeviceAudienceDTO> getAudiences(@RequestBody Map<String, Long> knownVersions);
 } 
\ No newline at end of file
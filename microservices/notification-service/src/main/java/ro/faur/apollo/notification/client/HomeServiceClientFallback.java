@@ -5,10 +5,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.cloud.openfeign.FallbackFactory;
 import org.springframework.stereotype.Component;
 import ro.faur.apollo.notification.dto.HomeDTO;
+import ro.faur.apollo.shared.dto.DeviceAudienceDTO;
 import ro.faur.apollo.shared.dto.HomeSummaryDTO;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class HomeServiceClientFallback implements FallbackFactory<HomeServiceClient> {
@@ -29,6 +31,20 @@ public class HomeServiceClientFallback implements FallbackFactory<HomeServiceCli
                 logger.error("HomeServiceClient.getHomeSummariesForUser({}) failed - falling back to empty list", userUuid, cause);
                 return Collections.emptyList();
             }
+
+            @Override
+            public List<String> getDeviceUuidsForUser(String userUuid) {
+                // Not an empty list: that would read as "the user lost all devices" and empty their inbox
+                logger.error("HomeServiceClient.getDeviceUuidsForUser({}) failed - falling back to null", userUuid, cause);
+                return null;
+            }
+
+            @Override
+            public List<DeviceAudienceDTO> getAudiences(Map<String, Long> knownVersions) {
+                // Not an empty list: that would read as every audience the caller holds being current
+                logger.error("HomeServiceClient.getAudiences({} devices) failed - falling back to null", knownVersions.size(), cause);
+                return null;
+            }
         };
     }
 } 
\ No newline at end of file
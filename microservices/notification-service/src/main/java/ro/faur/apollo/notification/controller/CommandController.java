@@ -0,0 +1,46 @@
+package ro.faur.apollo.notification.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import ro.faur.apollo.notification.service.outbound.CommandStatus;
+import ro.faur.apollo.notification.service.outbound.CommandTracker;
+import ro.faur.apollo.shared.dto.CommandOutcomeDTO;
+
+@RestController
+@RequestMapping("/internal/mqtt/commands")
+public class CommandController {
+
+    private final CommandTracker commandTracker;
+    private final long maxWaitMs;
+
+    public CommandController(CommandTracker commandTracker,
+                             @Value("${mqtt.commands.max-wait-ms}") long maxWaitMs) {
+        this.commandTracker = commandTracker;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * Long-polls for the outcome of a command: answers as soon as the device acks, the command
+     * fails or expires, or after {@code waitMs} with the still pending state.
+     */
+    @GetMapping("/{commandId}")
+    public DeferredResult<ResponseEntity<CommandOutcomeDTO>> getOutcome(@PathVariable String commandId,
+                                                                       @RequestParam(defaultValue = "0") long waitMs) {
+        long timeout = Math.max(1, Math.min(waitMs, maxWaitMs));
+        DeferredResult<ResponseEntity<CommandOutcomeDTO>> result = new DeferredResult<>(timeout);
+        result.onTimeout(() -> {
+            CommandOutcomeDTO current = commandTracker.current(commandId);
+            result.setResult(current != null ? ResponseEntity.ok(current) : ResponseEntity.notFound().build());
+        });
+
+        CommandOutcomeDTO current = commandTracker.current(commandId);
+        if (waitMs <= 0 || (current != null && !CommandStatus.PENDING.name().equals(current.getStatus()))) {
+            result.setResult(current != null ? ResponseEntity.ok(current) : ResponseEntity.notFound().build());
+            return result;
+        }
+        commandTracker.awaitOutcome(commandId).thenAccept(outcome -> result.setResult(ResponseEntity.ok(outcome)));
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package ro.faur.apollo.notification.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.notification.service.DeviceResolutionCache;
+
+@RestController
+@RequestMapping("/internal/mqtt/devices")
+public class DeviceResolutionController {
+
+    private final DeviceResolutionCache deviceResolutionCache;
+
+    public DeviceResolutionController(DeviceResolutionCache deviceResolutionCache) {
+        this.deviceResolutionCache = deviceResolutionCache;
+    }
+
+    @DeleteMapping("/{hardwareId}/resolution")
+    public ResponseEntity<Void> evictResolution(@PathVariable String hardwareId) {
+        deviceResolutionCache.invalidate(hardwareId);
+        return ResponseEntity.noContent().build();
+    }
+}
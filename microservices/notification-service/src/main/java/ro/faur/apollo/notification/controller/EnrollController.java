@@ -1,5 +1,6 @@
 package ro.faur.apollo.notification.controller;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ro.faur.apollo.notification.service.MqttService;
@@ -23,7 +24,9 @@ public class EnrollController {
         if (hardwareId == null || userFpId == null) {
             return ResponseEntity.badRequest().body("hardwareId and userFpId required");
         }
-        mqttService.publishEnrollStart(hardwareId, userFpId);
+        if (!mqttService.publishEnrollStart(hardwareId, userFpId)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Command could not be queued, try again later");
+        }
         return ResponseEntity.accepted().build();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,32 @@
+package ro.faur.apollo.notification.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.notification.service.NotificationInbox;
+import ro.faur.apollo.notification.service.stream.FeedEventBus;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/internal/notifications/inbox")
+public class InboxController {
+
+    private final NotificationInbox notificationInbox;
+    private final FeedEventBus feedEventBus;
+
+    public InboxController(NotificationInbox notificationInbox, FeedEventBus feedEventBus) {
+        this.notificationInbox = notificationInbox;
+        this.feedEventBus = feedEventBus;
+    }
+
+    /**
+     * Called by home-service when the users gained or lost access to devices. Their open
+     * streams are closed, so they reconnect with their new devices.
+     */
+    @PostMapping("/stale")
+    public ResponseEntity<Void> markStale(@RequestBody List<String> userUuids) {
+        notificationInbox.markStale(userUuids);
+        feedEventBus.publishAccessChange(userUuids);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,9 +1,14 @@
 package ro.faur.apollo.notification.controller;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ro.faur.apollo.notification.dto.NotificationDTO;
+import ro.faur.apollo.notification.dto.NotificationPageDTO;
 import ro.faur.apollo.notification.service.NotificationService;
+import ro.faur.apollo.notification.service.stream.NotificationStreamHub;
 import ro.faur.apollo.shared.security.UserContext;
 
 import java.util.List;
@@ -13,10 +18,13 @@ import java.util.List;
 public class NotificationController {
 
     private final NotificationService notificationService;
+    private final NotificationStreamHub notificationStreamHub;
     private final UserContext userContext;
 
-    public NotificationController(NotificationService notificationService, UserContext userContext) {
+    public NotificationController(NotificationService notificationService, NotificationStreamHub notificationStreamHub,
+                                  UserContext userContext) {
         this.notificationService = notificationService;
+        this.notificationStreamHub = notificationStreamHub;
         this.userContext = userContext;
     }
 
@@ -33,6 +41,46 @@ public class NotificationController {
         return ResponseEntity.ok(notifications);
     }
 
+    /**
+     * Cursor-paginated feed of the current user, newest first. Pass the returned
+     * {@code nextCursor} as {@code cursor} to get the next page.
+     */
+    @GetMapping("/user/feed")
+    public ResponseEntity<?> getNotificationFeedForUser(@RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) Integer limit) {
+        String userUuid = userContext.getCurrentUserUuid();
+        try {
+            NotificationPageDTO page = notificationService.getNotificationFeedForUser(userUuid, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Live stream (server-sent events) of the current user's new notifications. Event ids are feed
+     * cursors; a client reconnecting with {@code Last-Event-ID} (or {@code lastEventId} where the
+     * header cannot be set) first gets the notifications it missed.
+     */
+    @GetMapping(value = "/user/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamNotificationsForUser(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                                        @RequestParam(required = false) String lastEventId) {
+        if (!notificationStreamHub.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        String userUuid = userContext.getCurrentUserUuid();
+        try {
+            SseEmitter emitter = notificationStreamHub.connect(userUuid, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    // Stops nginx-style proxies from buffering the stream
+                    .header("X-Accel-Buffering", "no")
+                    .body(emitter);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/user/{userUuid}")
     public ResponseEntity<List<NotificationDTO>> getNotificationsForUser(@PathVariable String userUuid) {
         List<NotificationDTO> notifications = notificationService.getNotificationsForUser(userUuid);
@@ -0,0 +1,58 @@
+package ro.faur.apollo.notification.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ro.faur.apollo.notification.dto.PushPreferenceDTO;
+import ro.faur.apollo.notification.dto.PushTokenDTO;
+import ro.faur.apollo.notification.service.push.PushSettingsService;
+import ro.faur.apollo.shared.security.UserContext;
+
+@RestController
+@RequestMapping("/api/notification/push")
+public class PushController {
+
+    private final PushSettingsService pushSettingsService;
+    private final UserContext userContext;
+
+    public PushController(PushSettingsService pushSettingsService, UserContext userContext) {
+        this.pushSettingsService = pushSettingsService;
+        this.userContext = userContext;
+    }
+
+    /**
+     * Registers the app installation's push token for the current user.
+     */
+    @PostMapping("/tokens")
+    public ResponseEntity<?> registerToken(@RequestBody PushTokenDTO request) {
+        try {
+            pushSettingsService.registerToken(userContext.getCurrentUserUuid(), request);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Stops pushes to the installation, e.g. on logout. The token travels in the body since
+     * provider tokens do not fit in a path segment.
+     */
+    @PostMapping("/tokens/unregister")
+    public ResponseEntity<Void> unregisterToken(@RequestBody PushTokenDTO request) {
+        boolean removed = pushSettingsService.unregisterToken(userContext.getCurrentUserUuid(), request.getToken());
+        return removed ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/preferences")
+    public ResponseEntity<PushPreferenceDTO> getPreferences() {
+        return ResponseEntity.ok(pushSettingsService.getPreference(userContext.getCurrentUserUuid()));
+    }
+
+    @PutMapping("/preferences")
+    public ResponseEntity<?> updatePreferences(@RequestBody PushPreferenceDTO request) {
+        try {
+            return ResponseEntity.ok(pushSettingsService.updatePreference(userContext.getCurrentUserUuid(), request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
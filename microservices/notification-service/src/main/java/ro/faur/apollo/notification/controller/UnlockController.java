@@ -1,5 +1,6 @@
 package ro.faur.apollo.notification.controller;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ro.faur.apollo.notification.service.MqttService;
@@ -22,7 +23,10 @@ public class UnlockController {
         if (hardwareId == null) {
             return ResponseEntity.badRequest().body("hardwareId required");
         }
-        mqttService.publishUnlock(hardwareId);
-        return ResponseEntity.accepted().build();
+        String commandId = mqttService.publishUnlock(hardwareId);
+        if (commandId == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Command could not be queued, try again later");
+        }
+        return ResponseEntity.accepted().body(Map.of("commandId", commandId));
     }
 } 
\ No newline at end of file
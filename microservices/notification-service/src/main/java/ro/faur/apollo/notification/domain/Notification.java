@@ -3,10 +3,18 @@ package ro.faur.apollo.notification.domain;
 import jakarta.persistence.*;
 import ro.faur.apollo.shared.domain.BaseEntity;
 
+import java.time.LocalDateTime;
+
+/**
+ * Stored in the {@code notification} table, range-partitioned by {@code created_at} month. The
+ * table, its primary key {@code (uuid, created_at)} and the feed index
+ * {@code idx_notification_device_created} are created by {@code schema.sql}.
+ * <p>
+ * The {@code unique} flag inherited on {@code uuid} is not enforced: a partitioned table can only
+ * be unique on keys that include {@code created_at}. Uniqueness of the uuid rests on it being a
+ * random UUID, assigned by {@link BaseEntity} or {@code NotificationBatchWriter}.
+ */
 @Entity
-@Table(indexes = {
-        @Index(name = "idx_notification_device_uuid", columnList = "device_uuid")
-})
 public class Notification extends BaseEntity {
 
     @Column(nullable = false)
@@ -24,6 +32,16 @@ public class Notification extends BaseEntity {
     @Column(name = "device_uuid")
     private String deviceUuid;
 
+    /**
+     * Number of device events rolled up into this notification; more than one for a motion
+     * session, which spans from {@code createdAt} to {@link #lastEventAt}.
+     */
+    @Column(name = "event_count", nullable = false, columnDefinition = "integer default 1")
+    private int eventCount = 1;
+
+    @Column(name = "last_event_at")
+    private LocalDateTime lastEventAt;
+
     public Notification(String title, String message) {
         this.title = title;
         this.message = message;
@@ -79,4 +97,20 @@ public class Notification extends BaseEntity {
     public void setDeviceUuid(String deviceUuid) {
         this.deviceUuid = deviceUuid;
     }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(int eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    public LocalDateTime getLastEventAt() {
+        return lastEventAt;
+    }
+
+    public void setLastEventAt(LocalDateTime lastEventAt) {
+        this.lastEventAt = lastEventAt;
+    }
 } 
\ No newline at end of file
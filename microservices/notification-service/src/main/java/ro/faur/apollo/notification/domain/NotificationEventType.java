@@ -6,5 +6,68 @@ public enum NotificationEventType {
     DOORLOCK_OPENED_AUTHORIZED,
     DOORLOCK_SUSPICIOUS_ACTIVITY,
     DOORLOCK_LOST_POWER,
-    DOORLOCK_MISC,
-} 
\ No newline at end of file
+    DOORLOCK_MISC;
+
+    private static final int UNAUTHORIZED = 1;
+    private static final int DOOR = 1 << 1;
+    private static final int HANDLE = 1 << 2;
+    private static final int OPENED = 1 << 3;
+    private static final int MOTION = 1 << 4;
+    private static final int FINGERPRINT = 1 << 5;
+
+    /**
+     * Maps the free-form event type string coming from the IoT device into our internal
+     * NotificationEventType enum. The mapping is deliberately fuzzy – it relies on keywords
+     * to keep the firmware and the backend loosely coupled while still enabling us to
+     * categorise notifications properly.
+     * <p>
+     * Keywords are matched case-insensitively in a single scan of the string, without
+     * lowercasing a copy of it first. Every keyword starts with a different letter, so each
+     * position is compared against at most one of them.
+     */
+    public static NotificationEventType fromDeviceEventType(String eventType) {
+        if (eventType == null) {
+            return DOORLOCK_MISC;
+        }
+
+        int found = 0;
+        for (int i = 0; i < eventType.length(); i++) {
+            switch (Character.toLowerCase(eventType.charAt(i))) {
+                case 'u' -> found |= keywordAt(eventType, i, "unauthorized", UNAUTHORIZED);
+                case 'd' -> found |= keywordAt(eventType, i, "door", DOOR);
+                case 'h' -> found |= keywordAt(eventType, i, "handle", HANDLE);
+                case 'o' -> found |= keywordAt(eventType, i, "opened", OPENED);
+                case 'm' -> found |= keywordAt(eventType, i, "motion", MOTION);
+                case 'f' -> found |= keywordAt(eventType, i, "fingerprint", FINGERPRINT);
+                default -> {
+                }
+            }
+        }
+
+        if (has(found, UNAUTHORIZED | DOOR)) {
+            return DOORLOCK_OPENED_UNAUTHORIZED;
+        }
+        if (has(found, DOOR | HANDLE)) {
+            return DOORLOCK_HANDLE_TRIED_UNAUTHORIZED;
+        }
+        if (has(found, DOOR | OPENED)) {
+            return DOORLOCK_OPENED_AUTHORIZED;
+        }
+        if (has(found, MOTION)) {
+            return DOORLOCK_SUSPICIOUS_ACTIVITY;
+        }
+        if (has(found, FINGERPRINT)) {
+            return DOORLOCK_HANDLE_TRIED_UNAUTHORIZED;
+        }
+
+        return DOORLOCK_MISC;
+    }
+
+    private static int keywordAt(String eventType, int offset, String keyword, int flag) {
+        return eventType.regionMatches(true, offset, keyword, 0, keyword.length()) ? flag : 0;
+    }
+
+    private static boolean has(int found, int keywords) {
+        return (found & keywords) == keywords;
+    }
+}
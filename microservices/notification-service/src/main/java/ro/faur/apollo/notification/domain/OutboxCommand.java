@@ -0,0 +1,107 @@
+package ro.faur.apollo.notification.domain;
+
+import jakarta.persistence.*;
+import ro.faur.apollo.shared.domain.BaseEntity;
+
+import java.time.LocalDateTime;
+
+/**
+ * A device command waiting to be published. Rows are removed once the broker acknowledges the
+ * publish; rows past {@code expiresAt} are discarded instead, so a stale command is never replayed.
+ */
+@Entity
+@Table(name = "command_outbox", indexes = {
+        @Index(name = "idx_command_outbox_sequence", columnList = "sequence")
+})
+public class OutboxCommand extends BaseEntity {
+
+    @Column(nullable = false)
+    private long sequence;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(nullable = false, length = 4000)
+    private String payload;
+
+    @Column(nullable = false)
+    private int qos;
+
+    @Column(name = "command_id")
+    private String commandId;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    // Set while a replica is publishing the row; once it passes, another drain may pick the row up
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
+    public OutboxCommand() {
+    }
+
+    public OutboxCommand(long sequence, String topic, String payload, int qos, String commandId, LocalDateTime expiresAt) {
+        this.sequence = sequence;
+        this.topic = topic;
+        this.payload = payload;
+        this.qos = qos;
+        this.commandId = commandId;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public void setQos(int qos) {
+        this.qos = qos;
+    }
+
+    public String getCommandId() {
+        return commandId;
+    }
+
+    public void setCommandId(String commandId) {
+        this.commandId = commandId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(LocalDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+}
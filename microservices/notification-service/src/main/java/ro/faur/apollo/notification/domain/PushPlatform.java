@@ -0,0 +1,6 @@
+package ro.faur.apollo.notification.domain;
+
+public enum PushPlatform {
+    ANDROID,
+    IOS
+}
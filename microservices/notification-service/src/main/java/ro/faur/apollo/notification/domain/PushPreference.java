@@ -0,0 +1,77 @@
+package ro.faur.apollo.notification.domain;
+
+import jakarta.persistence.*;
+
+import java.time.LocalTime;
+
+/**
+ * A user's push settings. Users without a row get pushes at any hour. During quiet hours, which
+ * may span midnight and are read in the user's time zone, only critical alerts are pushed.
+ */
+@Entity
+@Table(name = "push_preference")
+public class PushPreference {
+
+    @Id
+    @Column(name = "user_uuid", nullable = false)
+    private String userUuid;
+
+    @Column(nullable = false)
+    private boolean enabled = true;
+
+    @Column(name = "quiet_start")
+    private LocalTime quietStart;
+
+    @Column(name = "quiet_end")
+    private LocalTime quietEnd;
+
+    @Column(name = "time_zone")
+    private String timeZone;
+
+    public PushPreference() {
+    }
+
+    public PushPreference(String userUuid) {
+        this.userUuid = userUuid;
+    }
+
+    public String getUserUuid() {
+        return userUuid;
+    }
+
+    public void setUserUuid(String userUuid) {
+        this.userUuid = userUuid;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LocalTime getQuietStart() {
+        return quietStart;
+    }
+
+    public void setQuietStart(LocalTime quietStart) {
+        this.quietStart = quietStart;
+    }
+
+    public LocalTime getQuietEnd() {
+        return quietEnd;
+    }
+
+    public void setQuietEnd(LocalTime quietEnd) {
+        this.quietEnd = quietEnd;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
+}
@@ -0,0 +1,58 @@
+package ro.faur.apollo.notification.domain;
+
+import jakarta.persistence.*;
+import ro.faur.apollo.shared.domain.BaseEntity;
+
+/**
+ * A mobile app installation that receives push notifications for a user. A token belongs to one
+ * user at a time; registering it again for someone else moves it.
+ */
+@Entity
+@Table(name = "push_token", indexes = {
+        @Index(name = "idx_push_token_user", columnList = "user_uuid")
+})
+public class PushToken extends BaseEntity {
+
+    @Column(nullable = false, unique = true, length = 4096)
+    private String token;
+
+    @Column(name = "user_uuid", nullable = false)
+    private String userUuid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PushPlatform platform;
+
+    public PushToken() {
+    }
+
+    public PushToken(String token, String userUuid, PushPlatform platform) {
+        this.token = token;
+        this.userUuid = userUuid;
+        this.platform = platform;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getUserUuid() {
+        return userUuid;
+    }
+
+    public void setUserUuid(String userUuid) {
+        this.userUuid = userUuid;
+    }
+
+    public PushPlatform getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(PushPlatform platform) {
+        this.platform = platform;
+    }
+}
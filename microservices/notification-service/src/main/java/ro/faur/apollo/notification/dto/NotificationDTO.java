@@ -12,6 +12,8 @@ public class NotificationDTO {
     private String mediaUrl;
     private LocalDateTime createdAt;
     private String deviceUuid;
+    private int eventCount = 1;
+    private LocalDateTime lastEventAt;
 
     public NotificationDTO() {}
 
@@ -81,4 +83,20 @@ public class NotificationDTO {
     public void setDeviceUuid(String deviceUuid) {
         this.deviceUuid = deviceUuid;
     }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(int eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    public LocalDateTime getLastEventAt() {
+        return lastEventAt;
+    }
+
+    public void setLastEventAt(LocalDateTime lastEventAt) {
+        this.lastEventAt = lastEventAt;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,35 @@
+package ro.faur.apollo.notification.dto;
+
+import java.util.List;
+
+/**
+ * One page of a notification feed, newest first. {@code nextCursor} is passed back to fetch the
+ * following page and is {@code null} on the last one.
+ */
+public class NotificationPageDTO {
+    private List<NotificationDTO> items;
+    private String nextCursor;
+
+    public NotificationPageDTO() {}
+
+    public NotificationPageDTO(List<NotificationDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<NotificationDTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<NotificationDTO> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
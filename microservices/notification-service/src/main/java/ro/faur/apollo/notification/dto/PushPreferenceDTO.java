@@ -0,0 +1,55 @@
+package ro.faur.apollo.notification.dto;
+
+import java.time.LocalTime;
+
+/**
+ * A user's push settings. Quiet hours are optional and may span midnight (e.g. 22:00 to 07:00);
+ * {@code timeZone} is an IANA zone id such as {@code Europe/Bucharest}.
+ */
+public class PushPreferenceDTO {
+    private boolean enabled = true;
+    private LocalTime quietStart;
+    private LocalTime quietEnd;
+    private String timeZone;
+
+    public PushPreferenceDTO() {}
+
+    public PushPreferenceDTO(boolean enabled, LocalTime quietStart, LocalTime quietEnd, String timeZone) {
+        this.enabled = enabled;
+        this.quietStart = quietStart;
+        this.quietEnd = quietEnd;
+        this.timeZone = timeZone;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LocalTime getQuietStart() {
+        return quietStart;
+    }
+
+    public void setQuietStart(LocalTime quietStart) {
+        this.quietStart = quietStart;
+    }
+
+    public LocalTime getQuietEnd() {
+        return quietEnd;
+    }
+
+    public void setQuietEnd(LocalTime quietEnd) {
+        this.quietEnd = quietEnd;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
+}
@@ -0,0 +1,34 @@
+package ro.faur.apollo.notification.dto;
+
+import ro.faur.apollo.notification.domain.PushPlatform;
+
+/**
+ * An app installation's push token, as registered by the mobile app.
+ */
+public class PushTokenDTO {
+    private String token;
+    private PushPlatform platform;
+
+    public PushTokenDTO() {}
+
+    public PushTokenDTO(String token, PushPlatform platform) {
+        this.token = token;
+        this.platform = platform;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public PushPlatform getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(PushPlatform platform) {
+        this.platform = platform;
+    }
+}
@@ -0,0 +1,44 @@
+package ro.faur.apollo.notification.dto.mqtt;
+
+/**
+ * Acknowledgement of a command, published by the device on {@code devices/{hardwareId}/acks}.
+ * A missing {@code status} counts as {@code OK}.
+ */
+public class CommandAckMessage {
+    private String hardwareId;
+    private String commandId;
+    private String status;
+    private String detail;
+
+    public String getHardwareId() {
+        return hardwareId;
+    }
+    
+    public void setHardwareId(String hardwareId) {
+        this.hardwareId = hardwareId;
+    }
+
+    public String getCommandId() {
+        return commandId;
+    }
+    
+    public void setCommandId(String commandId) {
+        this.commandId = commandId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+    
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+} 
\ No newline at end of file
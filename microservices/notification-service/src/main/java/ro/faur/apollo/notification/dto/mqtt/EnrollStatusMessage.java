@@ -0,0 +1,45 @@
+package ro.faur.apollo.notification.dto.mqtt;
+
+/**
+ * Result of a fingerprint enrollment, published by the lock on {@code doorlock/{id}/enroll/status}.
+ * {@code eventType} is {@code EnrollSuccess} or {@code EnrollFailure}; {@code description} carries
+ * the error code of a failure.
+ */
+public class EnrollStatusMessage {
+    private String hardwareId;
+    private String eventType;
+    private String description;
+    private String eventId;
+
+    public String getHardwareId() {
+        return hardwareId;
+    }
+    
+    public void setHardwareId(String hardwareId) {
+        this.hardwareId = hardwareId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+    
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+    
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+    
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+} 
\ No newline at end of file
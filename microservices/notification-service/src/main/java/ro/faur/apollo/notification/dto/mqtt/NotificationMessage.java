@@ -6,6 +6,7 @@ public class NotificationMessage {
     private String message;
     private String mediaUrl;
     private String eventType;
+    private String eventId;
 
     public String getHardwareId() {
         return hardwareId;
@@ -46,4 +47,12 @@ public class NotificationMessage {
     public void setEventType(String eventType) {
         this.eventType = eventType;
     }
-} 
\ No newline at end of file
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+}
@@ -15,7 +15,7 @@ public class NotificationDtoMapper {
             return null;
         }
         
-        return new NotificationDTO(
+        NotificationDTO dto = new NotificationDTO(
                 notification.getUuid(),
                 notification.getTitle(),
                 notification.getMessage(),
@@ -24,6 +24,9 @@ public class NotificationDtoMapper {
                 notification.getCreatedAt(),
                 notification.getDeviceUuid()
         );
+        dto.setEventCount(notification.getEventCount());
+        dto.setLastEventAt(notification.getLastEventAt());
+        return dto;
     }
 
     public List<NotificationDTO> toDto(List<Notification> notifications) {
@@ -48,6 +51,8 @@ public class NotificationDtoMapper {
         notification.setMediaUrl(notificationDTO.getMediaUrl());
         notification.setCreatedAt(notificationDTO.getCreatedAt());
         notification.setDeviceUuid(notificationDTO.getDeviceUuid());
+        notification.setEventCount(notificationDTO.getEventCount());
+        notification.setLastEventAt(notificationDTO.getLastEventAt());
         
         return notification;
     }
@@ -1,18 +1,70 @@
 package ro.faur.apollo.notification.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ro.faur.apollo.notification.domain.Notification;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, String> {
 
     List<Notification> findByDeviceUuid(String deviceUuid);
-    
-    List<Notification> findAllByOrderByCreatedAtDesc();
 
     // Fetch only notifications belonging to the supplied devices.
     List<Notification> findByDeviceUuidInOrderByCreatedAtDesc(List<String> deviceUuids);
+
+    // One feed page, newest first, strictly older than the (createdAt, uuid) cursor. Every device is
+    // read as its own range of idx_notification_device_created with a LIMIT and only those rows are
+    // merged, so a page costs the same however much history the devices have. The plain created_at
+    // bound next to the row comparison lets Postgres prune the month partitions newer than the cursor,
+    // and the LIMIT stops the scan of older months once a device has filled its share of the page.
+    @Query(value = """
+        SELECT n.* FROM unnest(ARRAY[:deviceUuids]) AS d(device_uuid)
+        CROSS JOIN LATERAL (
+            SELECT * FROM notification x
+            WHERE x.device_uuid = d.device_uuid AND x.created_at <= :createdAt
+              AND (x.created_at, x.uuid) < (:createdAt, :uuid)
+            ORDER BY x.created_at DESC, x.uuid DESC
+            LIMIT :limit
+        ) n
+        ORDER BY n.created_at DESC, n.uuid DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Notification> findFeedPage(@Param("deviceUuids") List<String> deviceUuids,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("uuid") String uuid,
+                                    @Param("limit") int limit);
+
+    // One inbox page for the user: a single backward range scan of the inbox primary key, joined to
+    // the notifications by their full key so each lookup touches one month partition only.
+    @Query(value = """
+        SELECT n.* FROM notification_inbox i
+        JOIN notification n ON n.uuid = i.notification_uuid AND n.created_at = i.created_at
+        WHERE i.user_uuid = :userUuid AND i.created_at <= :createdAt
+          AND (i.created_at, i.notification_uuid) < (:createdAt, :uuid)
+        ORDER BY i.created_at DESC, i.notification_uuid DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Notification> findInboxPage(@Param("userUuid") String userUuid,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("uuid") String uuid,
+                                     @Param("limit") int limit);
+
+    // The user's notifications after the position, oldest first, for resuming the live stream
+    @Query(value = """
+        SELECT n.* FROM notification_inbox i
+        JOIN notification n ON n.uuid = i.notification_uuid AND n.created_at = i.created_at
+        WHERE i.user_uuid = :userUuid AND i.created_at >= :createdAt
+          AND (i.created_at, i.notification_uuid) > (:createdAt, :uuid)
+        ORDER BY i.created_at, i.notification_uuid
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Notification> findInboxAfter(@Param("userUuid") String userUuid,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("uuid") String uuid,
+                                      @Param("limit") int limit);
 } 
\ No newline at end of file
@@ -0,0 +1,52 @@
+package ro.faur.apollo.notification.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ro.faur.apollo.notification.domain.OutboxCommand;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxCommandRepository extends JpaRepository<OutboxCommand, String> {
+
+    // Claims the oldest unclaimed, unexpired rows for this drain. SKIP LOCKED lets several replicas
+    // drain the same table without blocking on or double-publishing each other's rows.
+    @Transactional
+    @Query(value = """
+        UPDATE command_outbox SET claimed_until = :claimedUntil
+        WHERE uuid IN (
+            SELECT uuid FROM command_outbox
+            WHERE expires_at > :now AND (claimed_until IS NULL OR claimed_until < :now)
+            ORDER BY sequence
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING *
+        """, nativeQuery = true)
+    List<OutboxCommand> claimBatch(@Param("now") LocalDateTime now,
+                                   @Param("claimedUntil") LocalDateTime claimedUntil,
+                                   @Param("limit") int limit);
+
+    // Keeps rows this drain is still waiting on from being claimed again
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxCommand c SET c.claimedUntil = :claimedUntil WHERE c.uuid IN :uuids")
+    int renewClaims(@Param("uuids") Collection<String> uuids, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    // Hands undelivered rows back at once, so the next drain starts again from the oldest of them
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxCommand c SET c.claimedUntil = NULL WHERE c.uuid IN :uuids")
+    int releaseClaims(@Param("uuids") Collection<String> uuids);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboxCommand c WHERE c.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
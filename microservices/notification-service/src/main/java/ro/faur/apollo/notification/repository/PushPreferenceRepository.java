@@ -0,0 +1,9 @@
+package ro.faur.apollo.notification.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ro.faur.apollo.notification.domain.PushPreference;
+
+@Repository
+public interface PushPreferenceRepository extends JpaRepository<PushPreference, String> {
+}
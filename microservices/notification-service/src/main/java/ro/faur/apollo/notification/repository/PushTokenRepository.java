@@ -0,0 +1,32 @@
+package ro.faur.apollo.notification.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ro.faur.apollo.notification.domain.PushToken;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PushTokenRepository extends JpaRepository<PushToken, String> {
+
+    Optional<PushToken> findByToken(String token);
+
+    List<PushToken> findByUserUuidIn(Collection<String> userUuids);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PushToken t WHERE t.token = :token AND t.userUuid = :userUuid")
+    int deleteByTokenAndUserUuid(@Param("token") String token, @Param("userUuid") String userUuid);
+
+    // Tokens the provider reported as no longer registered
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PushToken t WHERE t.token IN :tokens")
+    int deleteByTokenIn(@Param("tokens") Collection<String> tokens);
+}
@@ -0,0 +1,13 @@
+package ro.faur.apollo.notification.service;
+
+/**
+ * Which topics device commands (unlock, enroll start) are published to.
+ */
+public enum CommandTopicMode {
+    /** Shared topics every lock subscribes to; devices filter on the hardwareId in the payload. */
+    LEGACY,
+    /** One topic per device, {@code devices/{hardwareId}/commands/...}. */
+    ADDRESSED,
+    /** Both, while old firmware is still in the field. */
+    BOTH
+}
@@ -0,0 +1,141 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.client.DeviceServiceClient;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process hardwareId &rarr; deviceUuid cache in front of Device Service. The mapping is
+ * practically immutable, so entries live for a long TTL; unregistered devices are cached
+ * negatively for a much shorter time. Hellos and unlinks invalidate the entry explicitly.
+ * <p>
+ * Invalidations only reach the replica that receives them, so the TTL is what bounds
+ * staleness across replicas.
+ */
+@Component
+public class DeviceResolutionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceResolutionCache.class);
+
+    private final DeviceServiceClient deviceServiceClient;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public DeviceResolutionCache(DeviceServiceClient deviceServiceClient,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${mqtt.device-cache.max-entries}") int maxEntries,
+                                 @Value("${mqtt.device-cache.ttl-seconds}") long ttlSeconds,
+                                 @Value("${mqtt.device-cache.negative-ttl-seconds}") long negativeTtlSeconds) {
+        this.deviceServiceClient = deviceServiceClient;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+
+        Gauge.builder("mqtt.device.cache.size", entries, Map::size)
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("mqtt.device.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("mqtt.device.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads every known mapping from Device Service in one call.
+     */
+    public void warm() {
+        try {
+            Map<String, String> mappings = deviceServiceClient.getHardwareIdMappings();
+            long expiresAt = System.currentTimeMillis() + ttlMillis;
+            mappings.entrySet().stream()
+                    .limit(maxEntries)
+                    .forEach(mapping -> entries.put(mapping.getKey(), new Entry(mapping.getValue(), expiresAt)));
+            logger.info("Warmed device resolution cache with {} devices", Math.min(mappings.size(), maxEntries));
+        } catch (Exception e) {
+            logger.warn("Could not warm device resolution cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the device UUID, or {@code null} if the device is not registered.
+     */
+    public String resolve(String hardwareId) {
+        Entry entry = entries.get(hardwareId);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            hitCounter.increment();
+            return entry.deviceUuid;
+        }
+        missCounter.increment();
+
+        String deviceUuid;
+        try {
+            deviceUuid = deviceServiceClient.getDeviceUuidByHardwareId(hardwareId);
+        } catch (Exception e) {
+            logger.error("Error getting device UUID for hardwareId: {}", hardwareId, e);
+            return null;
+        }
+
+        long ttl = deviceUuid != null ? ttlMillis : negativeTtlMillis;
+        entries.put(hardwareId, new Entry(deviceUuid, System.currentTimeMillis() + ttl));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+        return deviceUuid;
+    }
+
+    /**
+     * @return {@code true} if the device is cached as registered; never calls Device Service.
+     */
+    public boolean isKnown(String hardwareId) {
+        Entry entry = entries.get(hardwareId);
+        return entry != null && entry.deviceUuid != null && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    public void put(String hardwareId, String deviceUuid) {
+        entries.put(hardwareId, new Entry(deviceUuid, System.currentTimeMillis() + ttlMillis));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    public void invalidate(String hardwareId) {
+        entries.remove(hardwareId);
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+
+        // Still over the bound: drop arbitrary entries, they will simply be fetched again
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final String deviceUuid;
+        private final long expiresAt;
+
+        private Entry(String deviceUuid, long expiresAt) {
+            this.deviceUuid = deviceUuid;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
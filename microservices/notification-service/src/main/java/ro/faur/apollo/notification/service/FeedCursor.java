@@ -0,0 +1,55 @@
+package ro.faur.apollo.notification.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * A position in a user's notification feed: the {@code (createdAt, uuid)} of a notification,
+ * encoded as URL-safe base64 of {@code createdAt|uuid}. Used as the feed's page cursor and as
+ * the event id of the live stream, so a stream can resume from any feed position.
+ */
+public final class FeedCursor {
+
+    private final LocalDateTime createdAt;
+    private final String uuid;
+
+    public FeedCursor(LocalDateTime createdAt, String uuid) {
+        this.createdAt = createdAt;
+        this.uuid = uuid;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static FeedCursor decode(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+            return new FeedCursor(LocalDateTime.parse(position[0]), position[1]);
+        } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public String encode() {
+        String position = createdAt + "|" + uuid;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Feed order: by creation time, then UUID.
+     */
+    public boolean isAfter(FeedCursor other) {
+        int byTime = createdAt.compareTo(other.createdAt);
+        return byTime != 0 ? byTime > 0 : uuid.compareTo(other.uuid) > 0;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+}
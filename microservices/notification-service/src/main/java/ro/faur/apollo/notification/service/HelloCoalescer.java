@@ -0,0 +1,148 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.client.DeviceServiceClient;
+import ro.faur.apollo.shared.dto.DeviceRegistrationDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Absorbs hello storms after a mass reboot. Devices already cached as registered are skipped,
+ * repeated hellos from one device within a window collapse into one, and whatever is left is
+ * registered with Device Service in batches once per window instead of one call per hello.
+ */
+@Component
+public class HelloCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HelloCoalescer.class);
+
+    private final DeviceServiceClient deviceServiceClient;
+    private final DeviceResolutionCache deviceResolutionCache;
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hello-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long windowMillis;
+    private final int batchSize;
+    private final int maxPending;
+    private final Counter knownCounter;
+    private final Counter coalescedCounter;
+    private final Counter droppedCounter;
+    private final Counter registeredCounter;
+
+    public HelloCoalescer(DeviceServiceClient deviceServiceClient,
+                          DeviceResolutionCache deviceResolutionCache,
+                          MeterRegistry meterRegistry,
+                          @Value("${mqtt.hello.window-ms}") long windowMillis,
+                          @Value("${mqtt.hello.batch-size}") int batchSize,
+                          @Value("${mqtt.hello.max-pending}") int maxPending) {
+        this.deviceServiceClient = deviceServiceClient;
+        this.deviceResolutionCache = deviceResolutionCache;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+
+        Gauge.builder("mqtt.hello.pending", pending, Map::size)
+                .description("Hellos waiting for the next registration batch")
+                .register(meterRegistry);
+        this.knownCounter = helloCounter(meterRegistry, "known");
+        this.coalescedCounter = helloCounter(meterRegistry, "coalesced");
+        this.droppedCounter = helloCounter(meterRegistry, "dropped");
+        this.registeredCounter = helloCounter(meterRegistry, "registered");
+    }
+
+    @PostConstruct
+    void start() {
+        flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void offer(String hardwareId, String deviceType) {
+        if (deviceResolutionCache.isKnown(hardwareId)) {
+            knownCounter.increment();
+            return;
+        }
+        if (pending.containsKey(hardwareId)) {
+            coalescedCounter.increment();
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            // The device says hello again on its next reconnect
+            droppedCounter.increment();
+            logger.warn("Hello backlog full, dropping hello from {}", hardwareId);
+            return;
+        }
+        pending.put(hardwareId, deviceType);
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<DeviceRegistrationDTO> batch = new ArrayList<>(batchSize);
+        for (String hardwareId : List.copyOf(pending.keySet())) {
+            String deviceType = pending.remove(hardwareId);
+            if (deviceType == null) {
+                continue;
+            }
+            batch.add(new DeviceRegistrationDTO(hardwareId, deviceType));
+            if (batch.size() == batchSize) {
+                register(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            register(batch);
+        }
+    }
+
+    private void register(List<DeviceRegistrationDTO> batch) {
+        Map<String, String> mappings;
+        try {
+            mappings = deviceServiceClient.registerDevices(batch);
+        } catch (Exception e) {
+            logger.error("Error registering batch of {} devices", batch.size(), e);
+            mappings = Map.of();
+        }
+
+        for (DeviceRegistrationDTO registration : batch) {
+            String deviceUuid = mappings.get(registration.getHardwareId());
+            if (deviceUuid != null) {
+                deviceResolutionCache.put(registration.getHardwareId(), deviceUuid);
+                registeredCounter.increment();
+            } else if (pending.size() < maxPending) {
+                // Not confirmed, retry with the next batch
+                pending.putIfAbsent(registration.getHardwareId(), registration.getDeviceType());
+            }
+        }
+        logger.info("Registered {} of {} devices from hello messages", mappings.size(), batch.size());
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private static Counter helloCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("mqtt.hello")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,231 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.domain.NotificationEventType;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls bursts of same-type events from one device into a single notification. A motion sensor
+ * fires over and over while someone stands at the door; instead of a row, an AI call and a feed
+ * entry per event, the first event of a burst is stored as usual and opens a session, and every
+ * event of that type within {@code gap-seconds} of the previous one only raises the stored
+ * notification's event count and moves its last event time.
+ * <p>
+ * The session's first clip is its representative and the only one analysed. A session that
+ * started without media adopts the first clip that arrives. Later clips are dropped.
+ * <p>
+ * Counts are written back every {@code flush-interval-ms} rather than per event, and a session is
+ * closed once its gap has passed or it has been open for {@code max-span-seconds}, so a sensor
+ * that never stops still produces a new notification now and then.
+ */
+@Component
+public class MotionSessionAggregator {
+
+    /**
+     * What the caller should do with a notification passed to {@link #offer(Notification)}.
+     */
+    public enum Outcome {
+        /** Store it; it is not coalesced or it opened a new session. */
+        STORE,
+        /** Drop it; it was merged into an open session. */
+        MERGED,
+        /**
+         * Drop it, but analyse its clip: it became the representative clip of the open session,
+         * whose UUID and creation time the notification now carries.
+         */
+        MERGED_WITH_MEDIA
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(MotionSessionAggregator.class);
+
+    private final NotificationBatchWriter notificationBatchWriter;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "motion-sessions");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final boolean enabled;
+    private final Set<NotificationEventType> types = EnumSet.noneOf(NotificationEventType.class);
+    private final long gapNanos;
+    private final long maxSpanNanos;
+    private final long flushIntervalMillis;
+    private final Counter coalescedCounter;
+
+    /**
+     * @param types comma-separated {@link NotificationEventType} names to coalesce
+     */
+    public MotionSessionAggregator(NotificationBatchWriter notificationBatchWriter,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${notification.coalesce.enabled}") boolean enabled,
+                                   @Value("${notification.coalesce.types}") String types,
+                                   @Value("${notification.coalesce.gap-seconds}") long gapSeconds,
+                                   @Value("${notification.coalesce.max-span-seconds}") long maxSpanSeconds,
+                                   @Value("${notification.coalesce.flush-interval-ms}") long flushIntervalMillis) {
+        this.notificationBatchWriter = notificationBatchWriter;
+        this.enabled = enabled;
+        for (String type : types.split(",")) {
+            if (!type.isBlank()) {
+                this.types.add(NotificationEventType.valueOf(type.trim()));
+            }
+        }
+        this.gapNanos = TimeUnit.SECONDS.toNanos(gapSeconds);
+        this.maxSpanNanos = TimeUnit.SECONDS.toNanos(maxSpanSeconds);
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        Gauge.builder("notification.coalesce.sessions", sessions, Map::size)
+                .description("Open notification sessions")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("notification.coalesced")
+                .description("Events merged into an already stored notification instead of getting their own")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Merges the notification into its device's open session of the same type, or opens one with
+     * it. Must be called once the device UUID is set and before the notification is stored.
+     */
+    public Outcome offer(Notification notification) {
+        if (!enabled || notification.getDeviceUuid() == null || !types.contains(notification.getType())) {
+            return Outcome.STORE;
+        }
+
+        long now = System.nanoTime();
+        LocalDateTime eventAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Outcome[] outcome = {Outcome.STORE};
+        Session[] replaced = {null};
+        sessions.compute(notification.getDeviceUuid() + "|" + notification.getType(), (key, session) -> {
+            if (session != null && session.isOpen(now, gapNanos, maxSpanNanos)) {
+                outcome[0] = session.merge(notification, now, eventAt);
+                return session;
+            }
+            replaced[0] = session;
+            // Picked here rather than by the writer so the session knows its row from the start
+            notification.setUuid(UUID.randomUUID().toString());
+            notification.setCreatedAt(eventAt);
+            return new Session(notification, now);
+        });
+
+        if (replaced[0] != null) {
+            write(replaced[0]);
+        }
+        if (outcome[0] != Outcome.STORE) {
+            coalescedCounter.increment();
+        }
+        return outcome[0];
+    }
+
+    private void flush() {
+        try {
+            for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                Session session = entry.getValue();
+                write(session);
+                // Atomic with offer(): a session that took another event meanwhile is open again and stays
+                if (sessions.computeIfPresent(entry.getKey(), (key, current) ->
+                        current == session && !current.isOpen(System.nanoTime(), gapNanos, maxSpanNanos) ? null : current) == null) {
+                    write(session);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error flushing notification sessions", e);
+        }
+    }
+
+    private void write(Session session) {
+        Session.Snapshot snapshot = session.takeChanges();
+        if (snapshot != null) {
+            notificationBatchWriter.updateSession(session.uuid, session.createdAt, snapshot.eventCount,
+                    snapshot.lastEventAt, snapshot.mediaUrl);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdown();
+        sessions.values().forEach(this::write);
+    }
+
+    private static final class Session {
+        private final String uuid;
+        private final LocalDateTime createdAt;
+        private final long openedAtNanos;
+        private long lastEventNanos;
+        private LocalDateTime lastEventAt;
+        private int eventCount = 1;
+        private String mediaUrl;
+        private boolean dirty;
+
+        private Session(Notification first, long now) {
+            this.uuid = first.getUuid();
+            this.createdAt = first.getCreatedAt();
+            this.openedAtNanos = now;
+            this.lastEventNanos = now;
+            this.lastEventAt = first.getCreatedAt();
+            this.mediaUrl = first.getMediaUrl();
+        }
+
+        synchronized boolean isOpen(long now, long gapNanos, long maxSpanNanos) {
+            return now - lastEventNanos <= gapNanos && now - openedAtNanos <= maxSpanNanos;
+        }
+
+        synchronized Outcome merge(Notification notification, long now, LocalDateTime eventAt) {
+            eventCount++;
+            lastEventNanos = now;
+            lastEventAt = eventAt;
+            dirty = true;
+            if (mediaUrl == null && notification.getMediaUrl() != null) {
+                mediaUrl = notification.getMediaUrl();
+                notification.setUuid(uuid);
+                notification.setCreatedAt(createdAt);
+                return Outcome.MERGED_WITH_MEDIA;
+            }
+            return Outcome.MERGED;
+        }
+
+        synchronized Snapshot takeChanges() {
+            if (!dirty) {
+                return null;
+            }
+            dirty = false;
+            return new Snapshot(eventCount, lastEventAt, mediaUrl);
+        }
+
+        private static final class Snapshot {
+            private final int eventCount;
+            private final LocalDateTime lastEventAt;
+            private final String mediaUrl;
+
+            private Snapshot(int eventCount, LocalDateTime lastEventAt, String mediaUrl) {
+                this.eventCount = eventCount;
+                this.lastEventAt = lastEventAt;
+                this.mediaUrl = mediaUrl;
+            }
+        }
+    }
+}
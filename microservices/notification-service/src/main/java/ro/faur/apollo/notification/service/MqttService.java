@@ -1,9 +1,14 @@
 package ro.faur.apollo.notification.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,11 +17,25 @@ import ro.faur.apollo.notification.client.DeviceServiceClient;
 import ro.faur.apollo.notification.client.MediaAnalysisServiceClient;
 import ro.faur.apollo.notification.domain.Notification;
 import ro.faur.apollo.notification.domain.NotificationEventType;
+import ro.faur.apollo.notification.dto.mqtt.CommandAckMessage;
+import ro.faur.apollo.notification.dto.mqtt.EnrollStatusMessage;
 import ro.faur.apollo.notification.dto.mqtt.HelloMessage;
 import ro.faur.apollo.notification.dto.mqtt.NotificationMessage;
+import ro.faur.apollo.notification.service.ingest.DeviceRateLimiter;
+import ro.faur.apollo.notification.service.ingest.InboundEvent;
+import ro.faur.apollo.notification.service.ingest.DuplicateFilter;
+import ro.faur.apollo.notification.service.ingest.EventPriority;
+import ro.faur.apollo.notification.service.ingest.InboundRateShaper;
+import ro.faur.apollo.notification.service.ingest.IngestPipeline;
+import ro.faur.apollo.notification.service.ingest.MqttPayloadCodec;
+import ro.faur.apollo.notification.service.ingest.MqttScalingMode;
+import ro.faur.apollo.notification.service.ingest.PayloadFields;
+import ro.faur.apollo.notification.service.ingest.ReplicaPartitioner;
+import ro.faur.apollo.notification.service.outbound.CommandOutbox;
+import ro.faur.apollo.notification.service.outbound.CommandTracker;
+import ro.faur.apollo.notification.service.outbound.OutboundPublisher;
 
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -32,31 +51,115 @@ public class MqttService {
     private final ObjectMapper objectMapper;
     private final DeviceServiceClient deviceServiceClient;
     private final MediaAnalysisServiceClient mediaAnalysisServiceClient;
-    private final ExecutorService executorService;
+    private final DeviceResolutionCache deviceResolutionCache;
+    private final HelloCoalescer helloCoalescer;
+    private final MotionSessionAggregator motionSessionAggregator;
+    private final IngestPipeline ingestPipeline;
+    private final MqttPayloadCodec payloadCodec;
+    private final ReplicaPartitioner replicaPartitioner;
+    private final DuplicateFilter duplicateFilter;
+    private final InboundRateShaper inboundRateShaper;
+    private final DeviceRateLimiter deviceRateLimiter;
+    private final OutboundPublisher outboundPublisher;
+    private final CommandOutbox commandOutbox;
+    private final CommandTracker commandTracker;
+    private final Timer enrichmentTimer;
+    private final Counter enrichmentSkippedCounter;
+    private final Counter partitionSkippedCounter;
     private final ScheduledExecutorService scheduledExecutorService;
-    private MqttClient mqttClient;
+    private MqttAsyncClient mqttClient;
     private volatile boolean connected = false;
 
     @Value("${mqtt.broker.url}")
     private String mqttBrokerUrl;
+    @Value("${mqtt.session.persistent}")
+    private boolean persistentSession;
+    @Value("${mqtt.session.client-id}")
+    private String clientId;
+    @Value("${mqtt.session.persistence-dir}")
+    private String persistenceDir;
+    @Value("${mqtt.ingest.shutdown-drain-ms}")
+    private long shutdownDrainMillis;
+    @Value("${mqtt.rate-limit.enabled}")
+    private boolean rateLimitEnabled;
+    @Value("${mqtt.rate-limit.flood-report-seconds}")
+    private long floodReportSeconds;
     @Value("${minio.url}")
     private String minioUrl;
     @Value("${minio.bucket}")
     private String minioBucket;
+    @Value("${mqtt.commands.topic-mode}")
+    private CommandTopicMode commandTopicMode;
+    @Value("${mqtt.outbox.ttl.unlock-ms}")
+    private long unlockTtlMillis;
+    @Value("${mqtt.outbox.ttl.enroll-start-ms}")
+    private long enrollStartTtlMillis;
+    @Value("${mqtt.scaling.mode}")
+    private MqttScalingMode scalingMode;
+    @Value("${mqtt.scaling.shared-group}")
+    private String sharedGroup;
 
     private String linkPrefix;
+    private static final String HELLO_TOPIC = "devices/hello";
+    private static final String NOTIFICATIONS_TOPIC = "devices/notifications";
+    private static final String ENROLL_STATUS_TOPIC = "doorlock/+/enroll/status";
+    private static final String COMMAND_ACK_TOPIC = "devices/+/acks";
+    private static final String LEGACY_UNLOCK_TOPIC = "devices/commands/unlock";
+    private static final String LEGACY_ENROLL_START_TOPIC = "doorlock/1/enroll/start";
+    private static final int SUBSCRIPTION_QOS = 1;
+    private static final int COMMAND_QOS = 1;
+    private static final long CONNECT_TIMEOUT_MS = 15000;
+    private static final long DISCONNECT_QUIESCE_MS = 5000;
     private static final int MAX_RETRY_ATTEMPTS = 10;
     private static final long INITIAL_RETRY_DELAY_MS = 5000;
+    private static final long JOURNAL_REPLAY_INTERVAL_MS = 5000;
+    private static final String MEDIA_ANALYSIS_PENDING_MESSAGE = "Analyzing recorded media...";
+    private static final String MEDIA_ANALYSIS_SKIPPED_MESSAGE = "Media analysis unavailable";
+    private static final String FLOODING_TITLE = "Device flooding";
 
     public MqttService(NotificationService notificationService,
                        ObjectMapper objectMapper,
                        DeviceServiceClient deviceServiceClient,
-                       MediaAnalysisServiceClient mediaAnalysisServiceClient) throws MqttException {
+                       MediaAnalysisServiceClient mediaAnalysisServiceClient,
+                       DeviceResolutionCache deviceResolutionCache,
+                       HelloCoalescer helloCoalescer,
+                       MotionSessionAggregator motionSessionAggregator,
+                       IngestPipeline ingestPipeline,
+                       MqttPayloadCodec payloadCodec,
+                       ReplicaPartitioner replicaPartitioner,
+                       DuplicateFilter duplicateFilter,
+                       InboundRateShaper inboundRateShaper,
+                       DeviceRateLimiter deviceRateLimiter,
+                       OutboundPublisher outboundPublisher,
+                       CommandOutbox commandOutbox,
+                       CommandTracker commandTracker,
+                       MeterRegistry meterRegistry) throws MqttException {
         this.notificationService = notificationService;
         this.objectMapper = objectMapper;
         this.deviceServiceClient = deviceServiceClient;
         this.mediaAnalysisServiceClient = mediaAnalysisServiceClient;
-        this.executorService = Executors.newFixedThreadPool(10);
+        this.deviceResolutionCache = deviceResolutionCache;
+        this.helloCoalescer = helloCoalescer;
+        this.motionSessionAggregator = motionSessionAggregator;
+        this.ingestPipeline = ingestPipeline;
+        this.payloadCodec = payloadCodec;
+        this.replicaPartitioner = replicaPartitioner;
+        this.duplicateFilter = duplicateFilter;
+        this.inboundRateShaper = inboundRateShaper;
+        this.deviceRateLimiter = deviceRateLimiter;
+        this.outboundPublisher = outboundPublisher;
+        this.commandOutbox = commandOutbox;
+        this.commandTracker = commandTracker;
+        this.enrichmentTimer = Timer.builder("notification.enrichment.latency")
+                .description("Time from storing a notification to its AI-generated message being queued")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.enrichmentSkippedCounter = Counter.builder("notification.enrichment.skipped")
+                .description("Notifications left without media analysis because the enrich stage was full")
+                .register(meterRegistry);
+        this.partitionSkippedCounter = Counter.builder("mqtt.ingest.partition.skipped")
+                .description("Messages ignored because another replica owns the device")
+                .register(meterRegistry);
         this.scheduledExecutorService = Executors.newScheduledThreadPool(2);
     }
 
@@ -68,7 +171,18 @@ public class MqttService {
         
         // Start MQTT connection in background - don't fail application startup
         logger.info("Starting MQTT connection to broker at: {}", mqttBrokerUrl);
-        scheduledExecutorService.execute(this::connectWithRetry);
+        scheduledExecutorService.execute(() -> {
+            deviceResolutionCache.warm();
+            connectWithRetry();
+        });
+
+        // Feed messages spilled during a burst back in once the parse stage has room again
+        scheduledExecutorService.scheduleWithFixedDelay(this::replaySpilledMessages,
+                JOURNAL_REPLAY_INTERVAL_MS, JOURNAL_REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (rateLimitEnabled) {
+            scheduledExecutorService.scheduleWithFixedDelay(this::reportFloodingDevices,
+                    floodReportSeconds, floodReportSeconds, TimeUnit.SECONDS);
+        }
     }
 
     private void connectWithRetry() {
@@ -109,15 +223,22 @@ public class MqttService {
             return;
         }
 
-        mqttClient = new MqttClient(mqttBrokerUrl, MqttClient.generateClientId(), new MemoryPersistence());
+        // A persistent session needs the same client id on every connect: the broker queues QoS 1
+        // messages for it while we are away and replays them when it reconnects
+        if (persistentSession) {
+            mqttClient = new MqttAsyncClient(mqttBrokerUrl, clientId, new MqttDefaultFilePersistence(persistenceDir));
+        } else {
+            mqttClient = new MqttAsyncClient(mqttBrokerUrl, MqttAsyncClient.generateClientId(), new MemoryPersistence());
+        }
         
         MqttConnectOptions options = new MqttConnectOptions();
         options.setMqttVersion(MqttConnectOptions.MQTT_VERSION_3_1_1);  // Force MQTT v3.1.1 like working client
         options.setAutomaticReconnect(true);
-        options.setCleanSession(true);
+        options.setCleanSession(!persistentSession);
         options.setConnectionTimeout(10);
         options.setKeepAliveInterval(60);  // Match working client's 60-second keepalive
-        options.setMaxInflight(10);
+        // The outbound publisher adapts its own window below this
+        options.setMaxInflight(outboundPublisher.getMaxWindow());
         options.setServerURIs(new String[]{mqttBrokerUrl});
         
         // Set callback for connection events
@@ -140,8 +261,17 @@ public class MqttService {
             }
 
             @Override
-            public void messageArrived(String topic, MqttMessage message) throws Exception {
-                // This is handled by individual topic subscriptions
+            public void messageArrived(String topic, MqttMessage message) {
+                // Dispatch on the actual topic: shared subscription filters ($share/...) never
+                // match incoming topics, so per-filter listeners would not be invoked
+                if (topic.startsWith("devices/") && topic.endsWith("/acks")) {
+                    handleCommandAck(message);
+                    return;
+                }
+                InboundEvent.Kind kind = kindOf(topic);
+                if (kind != null) {
+                    ingest(kind, topic, message);
+                }
             }
 
             @Override
@@ -150,8 +280,12 @@ public class MqttService {
             }
         });
 
-        mqttClient.connect(options);
-        subscribeToTopics();
+        IMqttToken connectToken = mqttClient.connect(options);
+        connectToken.waitForCompletion(CONNECT_TIMEOUT_MS);
+        outboundPublisher.attach(mqttClient);
+        if (persistentSession) {
+            logger.info("MQTT session {} as client {}", connectToken.getSessionPresent() ? "resumed" : "created", clientId);
+        }
     }
 
     private void subscribeToTopics() throws MqttException {
@@ -160,113 +294,315 @@ public class MqttService {
             return;
         }
         
-        mqttClient.subscribe("devices/hello", this::handleHelloMessage);
-        mqttClient.subscribe("devices/notifications", this::handleNotificationMessage);
-        mqttClient.subscribe("doorlock/+/enroll/status", this::handleEnrollStatusMessage);
-        logger.info("Subscribed to MQTT topics: devices/hello, devices/notifications, and doorlock/+/enroll/status");
-    }
+        String[] topicFilters = subscriptionFilters();
+        int[] qos = {SUBSCRIPTION_QOS, SUBSCRIPTION_QOS, SUBSCRIPTION_QOS, SUBSCRIPTION_QOS};
+        // Called from the client's callback thread, so never wait on the token here
+        mqttClient.subscribe(topicFilters, qos, null, new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken token) {
+                logger.info("Subscribed to MQTT topics: {} ({} mode)", String.join(", ", topicFilters), scalingMode);
+            }
 
-    private void handleHelloMessage(String topic, MqttMessage message) {
-        executorService.submit(() -> {
-            try {
-                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-                HelloMessage helloMsg = objectMapper.readValue(payload, HelloMessage.class);
+            @Override
+            public void onFailure(IMqttToken token, Throwable exception) {
+                logger.error("Failed to subscribe to MQTT topics: {}", String.join(", ", topicFilters), exception);
+            }
+        });
+    }
 
-                if (helloMsg.getHardwareId() == null || helloMsg.getDeviceType() == null) {
-                    logger.warn("Invalid hello message: missing required fields. Payload: {}", payload);
-                    return;
-                }
+    private String[] subscriptionFilters() {
+        return new String[]{
+                subscriptionFilter(HELLO_TOPIC),
+                subscriptionFilter(NOTIFICATIONS_TOPIC),
+                subscriptionFilter(ENROLL_STATUS_TOPIC),
+                // Never shared: every replica sees every ack so any of them can answer an outcome poll
+                COMMAND_ACK_TOPIC
+        };
+    }
 
-                // Call Device Service to register/update device
-                registerDevice(helloMsg);
+    private String subscriptionFilter(String topic) {
+        return scalingMode == MqttScalingMode.SHARED_SUBSCRIPTION ? "$share/" + sharedGroup + "/" + topic : topic;
+    }
 
-            } catch (Exception e) {
-                logger.error("Error processing hello message", e);
+    // Acks are tiny and only update the in-memory command table, so they skip the ingest pipeline
+    private void handleCommandAck(MqttMessage message) {
+        try {
+            CommandAckMessage ack = payloadCodec.readCommandAck(message.getPayload());
+            if (ack.getCommandId() == null || ack.getHardwareId() == null) {
+                logger.warn("Invalid command ack: missing commandId or hardwareId");
+                return;
             }
-        });
+            commandTracker.acknowledge(ack.getCommandId(), ack.getHardwareId(),
+                    ack.getStatus() == null || "OK".equalsIgnoreCase(ack.getStatus()), ack.getDetail());
+        } catch (Exception e) {
+            logger.error("Error handling command ack", e);
+        }
     }
 
-    private void handleNotificationMessage(String topic, MqttMessage message) {
-        executorService.submit(() -> {
-            try {
-                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-                NotificationMessage notifMsg = objectMapper.readValue(payload, NotificationMessage.class);
+    private static InboundEvent.Kind kindOf(String topic) {
+        if (HELLO_TOPIC.equals(topic)) {
+            return InboundEvent.Kind.HELLO;
+        }
+        if (NOTIFICATIONS_TOPIC.equals(topic)) {
+            return InboundEvent.Kind.NOTIFICATION;
+        }
+        if (topic.startsWith("doorlock/") && topic.endsWith("/enroll/status")) {
+            return InboundEvent.Kind.ENROLL_STATUS;
+        }
+        return null;
+    }
 
-                if (notifMsg.getHardwareId() == null) {
-                    logger.warn("Invalid notification message: missing required fields. Payload: {}", payload);
-                    return;
-                }
+    /**
+     * Entry point for every subscribed topic. Runs on the Paho callback thread, so it only
+     * hands the raw message to the parse stage; the rate shaper and, with the BLOCK overflow
+     * policy, a full parse queue deliberately stall this thread and push back on the broker.
+     * Events from a device over its rate limit are dropped here, before they cost any work.
+     * Critical events are exempt and never touch the device's bucket.
+     */
+    private void ingest(InboundEvent.Kind kind, String topic, MqttMessage message) {
+        InboundEvent event = new InboundEvent(kind, topic, message.getPayload());
+        // Lock alerts are never limited: a lock being forced is exactly when it sends the most
+        if (rateLimitEnabled && kind != InboundEvent.Kind.HELLO && event.getPriority() != EventPriority.CRITICAL) {
+            String hardwareId = PayloadFields.stringField(message.getPayload(), "hardwareId");
+            // Devices owned by another replica are skipped at parse and must not be counted here
+            if (hardwareId != null && replicaPartitioner.owns(hardwareId) && !deviceRateLimiter.tryAcquire(hardwareId)) {
+                return;
+            }
+        }
+        try {
+            inboundRateShaper.acquire();
+        } catch (InterruptedException e) {
+            // Still hand the message over: returning from the callback acks it to the broker
+            Thread.currentThread().interrupt();
+        }
+        ingestPipeline.parse().submit(event, this::parse);
+    }
 
-                String deviceUuid = getDeviceUuidByHardwareId(notifMsg.getHardwareId());
+    // Replaces the events a device had dropped by its rate limit with one notification per report interval
+    private void reportFloodingDevices() {
+        try {
+            deviceRateLimiter.sweep((hardwareId, dropped) -> {
+                String deviceUuid = deviceResolutionCache.resolve(hardwareId);
                 if (deviceUuid == null) {
-                    logger.warn("Notification from unregistered device: {}", notifMsg.getHardwareId());
                     return;
                 }
+                Notification notification = new Notification();
+                notification.setDeviceUuid(deviceUuid);
+                notification.setTitle(FLOODING_TITLE);
+                notification.setMessage(String.format("Dropped %d events sent in the last %d seconds: the device "
+                        + "exceeded its event rate limit and may be malfunctioning.", dropped, floodReportSeconds));
+                notification.setType(NotificationEventType.DOORLOCK_MISC);
+                notificationService.saveNotification(notification);
+                logger.warn("Device {} flooded {} events over its rate limit", hardwareId, dropped);
+            });
+        } catch (Exception e) {
+            logger.error("Error reporting flooding devices", e);
+        }
+    }
 
-                String notificationMessage = notifMsg.getMessage();
+    private void replaySpilledMessages() {
+        if (ingestPipeline.journal().isEmpty() || !ingestPipeline.parse().hasHeadroom()) {
+            return;
+        }
+        try {
+            ingestPipeline.journal().replay(event -> ingestPipeline.parse().submit(event, this::parse));
+        } catch (Exception e) {
+            logger.error("Error replaying spilled MQTT messages", e);
+        }
+    }
 
-                // Analyse media content with AI service, if any
-                if (notifMsg.getMediaUrl() != null && !notifMsg.getMediaUrl().isBlank()) {
-                    String mediaPath = notifMsg.getMediaUrl();
-                    // Strip any leading slash so we don't end up with double slashes
-                    if (mediaPath.startsWith("/")) {
-                        mediaPath = mediaPath.substring(1);
+    // Stage 1: decode the payload and classify the event
+    private void parse(InboundEvent event) {
+        try {
+            switch (event.getKind()) {
+                case HELLO -> {
+                    HelloMessage helloMsg = payloadCodec.readHello(event.getPayload());
+                    if (helloMsg.getHardwareId() == null || helloMsg.getDeviceType() == null) {
+                        logger.warn("Invalid hello message: missing required fields. Payload: {}", payloadText(event));
+                        return;
+                    }
+                    event.setHardwareId(helloMsg.getHardwareId());
+                    event.setDeviceType(helloMsg.getDeviceType());
+                    deviceRateLimiter.learnDeviceType(helloMsg.getHardwareId(), helloMsg.getDeviceType());
+                }
+                case NOTIFICATION -> {
+                    NotificationMessage notifMsg = payloadCodec.readNotification(event.getPayload());
+                    if (notifMsg.getHardwareId() == null) {
+                        logger.warn("Invalid notification message: missing required fields. Payload: {}", payloadText(event));
+                        return;
                     }
-                    String mediaUrl = linkPrefix + mediaPath;
-                    notificationMessage = getMediaAnalysis(mediaUrl);
+                    event.setHardwareId(notifMsg.getHardwareId());
+                    event.setNotificationMessage(notifMsg);
+                    event.setNotification(toNotification(notifMsg));
                 }
+                case ENROLL_STATUS -> {
+                    EnrollStatusMessage enrollStatus = payloadCodec.readEnrollStatus(event.getPayload());
+                    if (enrollStatus.getHardwareId() == null || enrollStatus.getEventType() == null) {
+                        return;
+                    }
+                    event.setHardwareId(enrollStatus.getHardwareId());
+                    event.setEnrollStatus(enrollStatus);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error parsing {} message", event.getKind(), e);
+            return;
+        }
 
-                // Map event type coming from device to our internal enum and derive a better title
-                String eventTypeStr = notifMsg.getEventType();
-                NotificationEventType mappedType = mapEventType(eventTypeStr);
+        if (!replicaPartitioner.owns(event.getHardwareId())) {
+            partitionSkippedCounter.increment();
+            return;
+        }
+        if (duplicateFilter.isDuplicate(event)) {
+            logger.debug("Dropping redelivered {} message from {}", event.getKind(), event.getHardwareId());
+            return;
+        }
+        ingestPipeline.resolve().submit(event, this::resolve);
+    }
 
+    // Only built for the log line of a rejected message
+    private static String payloadText(InboundEvent event) {
+        return new String(event.getPayload(), StandardCharsets.UTF_8);
+    }
 
-                String originalTitle = notifMsg.getTitle();
-                String title;
-                if (originalTitle == null || originalTitle.equalsIgnoreCase("Video Recording Alert")) {
-                    title = (eventTypeStr != null && !eventTypeStr.isBlank()) ? capitalize(eventTypeStr) : "Security Event";
-                } else {
-                    title = originalTitle;
-                }
+    // Stage 2: register the device or resolve its UUID in Device Service
+    private void resolve(InboundEvent event) {
+        try {
+            if (event.getKind() == InboundEvent.Kind.HELLO) {
+                // Registered in batches; the coalescer caches the resulting UUID
+                helloCoalescer.offer(event.getHardwareId(), event.getDeviceType());
+                return;
+            }
 
-                Notification notification = new Notification();
-                notification.setTitle(title);
-                notification.setMessage(notificationMessage);
-                if (notifMsg.getMediaUrl() != null) {
-                    String mediaPath = notifMsg.getMediaUrl();
-                    if (mediaPath.startsWith("/")) {
-                        mediaPath = mediaPath.substring(1);
-                    }
-                    notification.setMediaUrl(linkPrefix + mediaPath);
+            String deviceUuid = deviceResolutionCache.resolve(event.getHardwareId());
+            if (deviceUuid == null) {
+                if (event.getKind() == InboundEvent.Kind.NOTIFICATION) {
+                    logger.warn("Notification from unregistered device: {}", event.getHardwareId());
                 }
-                notification.setType(mappedType);
-                notification.setDeviceUuid(deviceUuid);
+                return;
+            }
+            event.setDeviceUuid(deviceUuid);
+        } catch (Exception e) {
+            logger.error("Error resolving device for {} message", event.getKind(), e);
+            return;
+        }
 
-                notificationService.saveNotification(notification);
-                logger.info("Saved AI-generated notification for device: {}", notifMsg.getHardwareId());
+        ingestPipeline.persist().submit(event, this::persist);
+    }
 
-            } catch (Exception e) {
-                logger.error("Error processing notification message", e);
+    // Stage 3: store the notification or forward the enroll result to Device Service
+    private void persist(InboundEvent event) {
+        if (!event.claim()) {
+            // Journaled by the shutdown drain while it was on its way here
+            return;
+        }
+        try {
+            if (event.getKind() == InboundEvent.Kind.NOTIFICATION) {
+                persistNotification(event);
+            } else {
+                updateEnrollStatus(event.getDeviceUuid(), event.getEnrollStatus());
+            }
+        } catch (Exception e) {
+            logger.error("Error persisting {} message", event.getKind(), e);
+        }
+    }
+
+    /**
+     * Saves the notification straight away so the alert is not held up by the AI service.
+     * Notifications with media are stored with a placeholder message that the enrich stage
+     * patches once the analysis returns. Motion bursts are rolled into the notification of
+     * their session instead of being stored one by one.
+     */
+    private void persistNotification(InboundEvent event) {
+        Notification notification = event.getNotification();
+        notification.setDeviceUuid(event.getDeviceUuid());
+
+        String mediaUrl = event.getNotificationMessage().getMediaUrl();
+        boolean analyseMedia = mediaUrl != null && !mediaUrl.isBlank();
+        MotionSessionAggregator.Outcome outcome = motionSessionAggregator.offer(notification);
+        if (outcome == MotionSessionAggregator.Outcome.MERGED) {
+            return;
+        }
+        if (outcome == MotionSessionAggregator.Outcome.MERGED_WITH_MEDIA) {
+            // The session's stored notification had no clip yet; this one becomes its representative
+            notificationService.updateNotificationMessage(notification, MEDIA_ANALYSIS_PENDING_MESSAGE);
+            submitEnrichment(event);
+            return;
+        }
+
+        if (analyseMedia) {
+            notification.setMessage(MEDIA_ANALYSIS_PENDING_MESSAGE);
+        }
+
+        notificationService.saveNotification(notification).whenComplete((saved, error) -> {
+            if (error != null) {
+                logger.error("Error saving notification for device: {}", event.getHardwareId(), error);
+            } else {
+                logger.info("Saved notification for device: {}", event.getHardwareId());
             }
         });
+
+        if (analyseMedia) {
+            submitEnrichment(event);
+        }
     }
 
-    private void registerDevice(HelloMessage helloMsg) {
-        try {
-            deviceServiceClient.registerDevice(helloMsg.getHardwareId(), helloMsg.getDeviceType());
-            logger.info("Received hello message from device with hardwareId: {}", helloMsg.getHardwareId());
-        } catch (Exception e) {
-            logger.error("Error registering device with hardwareId: {}", helloMsg.getHardwareId(), e);
+    private void submitEnrichment(InboundEvent event) {
+        event.setEnrichSubmittedAtNanos(System.nanoTime());
+        if (!ingestPipeline.enrich().trySubmit(event, this::enrich)) {
+            // Enrichment is best effort: never let a backlog of AI calls hold up persistence
+            enrichmentSkippedCounter.increment();
+            logger.warn("Enrich stage is full, skipping media analysis for device: {}", event.getHardwareId());
+            notificationService.updateNotificationMessage(event.getNotification(), fallbackMessage(event));
         }
     }
 
-    private String getDeviceUuidByHardwareId(String hardwareId) {
+    // Stage 4: analyse the media with the AI service and patch the stored message
+    private void enrich(InboundEvent event) {
+        Notification notification = event.getNotification();
         try {
-            return deviceServiceClient.getDeviceUuidByHardwareId(hardwareId);
+            String analysis = getMediaAnalysis(notification.getMediaUrl());
+            notificationService.updateNotificationMessage(notification, analysis);
+            logger.info("Saved AI-generated message for notification {} of device: {}",
+                    notification.getUuid(), event.getHardwareId());
         } catch (Exception e) {
-            logger.error("Error getting device UUID for hardwareId: {}", hardwareId, e);
-            return null;
+            logger.error("Error enriching notification message", e);
+        } finally {
+            enrichmentTimer.record(System.nanoTime() - event.getEnrichSubmittedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String fallbackMessage(InboundEvent event) {
+        String deviceMessage = event.getNotificationMessage().getMessage();
+        return deviceMessage != null && !deviceMessage.isBlank() ? deviceMessage : MEDIA_ANALYSIS_SKIPPED_MESSAGE;
+    }
+
+    private Notification toNotification(NotificationMessage notifMsg) {
+        // Map event type coming from device to our internal enum and derive a better title
+        String eventTypeStr = notifMsg.getEventType();
+        NotificationEventType mappedType = NotificationEventType.fromDeviceEventType(eventTypeStr);
+
+        String originalTitle = notifMsg.getTitle();
+        String title;
+        if (originalTitle == null || originalTitle.equalsIgnoreCase("Video Recording Alert")) {
+            title = (eventTypeStr != null && !eventTypeStr.isBlank()) ? capitalize(eventTypeStr) : "Security Event";
+        } else {
+            title = originalTitle;
+        }
+
+        Notification notification = new Notification();
+        notification.setTitle(title);
+        notification.setMessage(notifMsg.getMessage());
+        if (notifMsg.getMediaUrl() != null) {
+            String mediaPath = notifMsg.getMediaUrl();
+            // Strip any leading slash so we don't end up with double slashes
+            if (mediaPath.startsWith("/")) {
+                mediaPath = mediaPath.substring(1);
+            }
+            notification.setMediaUrl(linkPrefix + mediaPath);
         }
+        notification.setType(mappedType);
+        return notification;
     }
 
     private String getMediaAnalysis(String mediaUrl) {
@@ -278,94 +614,82 @@ public class MqttService {
         }
     }
 
-    public void disconnect() throws MqttException {
-        if (mqttClient != null && mqttClient.isConnected()) {
-            mqttClient.disconnect();
-            logger.info("Disconnected from MQTT broker");
+    /**
+     * Shutdown sequence: stop taking messages from the broker, drain the ingest stages within
+     * {@code mqtt.ingest.shutdown-drain-ms} and spill whatever is left to the ingest journal,
+     * which is replayed after the next start.
+     */
+    @PreDestroy
+    public void disconnect() {
+        scheduledExecutorService.shutdownNow();
+        stopIntake();
+        // The notification writer is destroyed after this bean and flushes whatever persist queued
+        try {
+            for (InboundEvent event : ingestPipeline.drain(shutdownDrainMillis)) {
+                // Already stored with the placeholder; settle it instead of leaving it pending forever
+                notificationService.updateNotificationMessage(event.getNotification(), fallbackMessage(event));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while draining the ingest pipeline");
         }
-        executorService.shutdown();
-        scheduledExecutorService.shutdown();
     }
 
-    // Publish enroll start command on behalf of Device Service
-    public void publishEnrollStart(String hardwareId, int userFpId) {
-        if (!isConnected()) {
-            logger.warn("Cannot publish enroll start - MQTT not connected");
+    private void stopIntake() {
+        if (mqttClient == null) {
             return;
         }
-        
+        try {
+            if (mqttClient.isConnected()) {
+                // A clean session loses its subscriptions on disconnect anyway; unsubscribing first lets
+                // the broker hand shared-subscription messages to other replicas right away. A persistent
+                // session keeps its subscriptions so the broker queues messages until we are back.
+                if (!persistentSession) {
+                    mqttClient.unsubscribe(subscriptionFilters()).waitForCompletion(CONNECT_TIMEOUT_MS);
+                }
+                // Quiescing lets the callback thread finish handing over the message it is on
+                mqttClient.disconnect(DISCONNECT_QUIESCE_MS).waitForCompletion(CONNECT_TIMEOUT_MS);
+                logger.info("Disconnected from MQTT broker");
+            }
+            mqttClient.close();
+        } catch (MqttException e) {
+            logger.warn("Error disconnecting from MQTT broker: {}", e.getMessage());
+        }
+        connected = false;
+    }
+
+    /**
+     * Queues an enroll start command on behalf of Device Service and returns without waiting for the broker.
+     * Commands issued while MQTT is down are sent once it reconnects, unless their TTL has passed.
+     *
+     * @return {@code false} if the command could not be queued
+     */
+    public boolean publishEnrollStart(String hardwareId, int userFpId) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("hardwareId", hardwareId);
         payload.put("user_fp_id", userFpId);
         try {
             String json = objectMapper.writeValueAsString(payload);
-            MqttMessage mqttMessage = new MqttMessage(json.getBytes(StandardCharsets.UTF_8));
-            mqttClient.publish("doorlock/1/enroll/start", mqttMessage);
-            logger.info("Published enroll start for hardwareId {} (templateId={})", hardwareId, userFpId);
+            return publishCommand(hardwareId, "enroll/start", LEGACY_ENROLL_START_TOPIC, json, enrollStartTtlMillis, null);
         } catch (Exception e) {
             logger.error("Failed to publish enroll start", e);
+            return false;
         }
     }
 
-    private void handleEnrollStatusMessage(String topic, MqttMessage message) {
-        executorService.submit(() -> {
-            try {
-                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-                Map<?,?> map = objectMapper.readValue(payload, Map.class);
-                String hardwareId = (String) map.get("hardwareId");
-                String eventType = (String) map.get("eventType");
-                if (hardwareId == null || eventType == null) return;
-
-                String deviceUuid = getDeviceUuidByHardwareId(hardwareId);
-                if (deviceUuid == null) return;
-
-                Map<String, Object> updateBody = new HashMap<>();
-                if (eventType.equals("EnrollSuccess")) {
-                    updateBody.put("status", "success");
-                } else if (eventType.equals("EnrollFailure")) {
-                    updateBody.put("status", "failure");
-                    updateBody.put("errorCode", map.get("description"));
-                } else {
-                    return;
-                }
-
-                deviceServiceClient.updateEnrollStatus(deviceUuid, updateBody);
-            } catch (Exception e) {
-                logger.error("Error processing enroll status message", e);
-            }
-        });
-    }
-
-    /**
-     * Maps the free-form event type string coming from the IoT device into our internal
-     * NotificationEventType enum. The mapping is deliberately fuzzy – it relies on keywords
-     * to keep the firmware and the backend loosely coupled while still enabling us to
-     * categorise notifications properly.
-     */
-    private NotificationEventType mapEventType(String eventType) {
-        if (eventType == null) {
-            return NotificationEventType.DOORLOCK_MISC;
-        }
-
-        String normalized = eventType.toLowerCase();
-
-        if (normalized.contains("unauthorized") && normalized.contains("door")) {
-            return NotificationEventType.DOORLOCK_OPENED_UNAUTHORIZED;
-        }
-        if (normalized.contains("door") && normalized.contains("handle")) {
-            return NotificationEventType.DOORLOCK_HANDLE_TRIED_UNAUTHORIZED;
-        }
-        if (normalized.contains("door") && normalized.contains("opened")) {
-            return NotificationEventType.DOORLOCK_OPENED_AUTHORIZED;
-        }
-        if (normalized.contains("motion")) {
-            return NotificationEventType.DOORLOCK_SUSPICIOUS_ACTIVITY;
-        }
-        if (normalized.contains("fingerprint")) {
-            return NotificationEventType.DOORLOCK_HANDLE_TRIED_UNAUTHORIZED;
+    private void updateEnrollStatus(String deviceUuid, EnrollStatusMessage enrollStatus) {
+        String eventType = enrollStatus.getEventType();
+        Map<String, Object> updateBody = new HashMap<>();
+        if (eventType.equals("EnrollSuccess")) {
+            updateBody.put("status", "success");
+        } else if (eventType.equals("EnrollFailure")) {
+            updateBody.put("status", "failure");
+            updateBody.put("errorCode", enrollStatus.getDescription());
+        } else {
+            return;
         }
 
-        return NotificationEventType.DOORLOCK_MISC;
+        deviceServiceClient.updateEnrollStatus(deviceUuid, updateBody);
     }
 
     private String capitalize(String str) {
@@ -375,22 +699,59 @@ public class MqttService {
         return str.substring(0, 1).toUpperCase() + str.substring(1);
     }
 
-    public void publishUnlock(String hardwareId) {
-        if (!isConnected()) {
-            logger.warn("Cannot publish unlock command - MQTT not connected");
-            return;
+    /**
+     * Queues a remote unlock and returns without waiting for the broker. The device acks on
+     * {@code devices/{hardwareId}/acks} with the returned command id; see {@link CommandTracker}.
+     *
+     * @return the command id, or {@code null} if the command could not be queued
+     */
+    public String publishUnlock(String hardwareId) {
+        String commandId = commandTracker.register(hardwareId, "unlock", unlockTtlMillis);
+        if (commandId == null) {
+            return null;
         }
-        
         try {
-            String json = objectMapper.writeValueAsString(Map.of("hardwareId", hardwareId));
-            MqttMessage msg = new MqttMessage(json.getBytes(StandardCharsets.UTF_8));
-            mqttClient.publish("devices/commands/unlock", msg);
-            logger.info("Published remote unlock for {}", hardwareId);
+            String json = objectMapper.writeValueAsString(Map.of("hardwareId", hardwareId, "commandId", commandId));
+            return publishCommand(hardwareId, "unlock", LEGACY_UNLOCK_TOPIC, json, unlockTtlMillis, commandId) ? commandId : null;
         } catch (Exception e) {
             logger.error("Failed to publish unlock", e);
+            commandTracker.publishFailed(commandId, e);
+            return null;
         }
     }
-    
+
+    /**
+     * Stores a command in the {@link CommandOutbox} for {@code devices/{hardwareId}/commands/{command}}
+     * and/or the legacy shared topic, depending on {@code mqtt.commands.topic-mode}. The payload keeps
+     * the hardwareId so old firmware can still filter the shared topic.
+     *
+     * @param ttlMillis how long the command may wait for the broker before it is discarded
+     * @param commandId id of the tracked command, or {@code null} for untracked commands
+     * @return {@code false} if the command could not be stored
+     */
+    private boolean publishCommand(String hardwareId, String command, String legacyTopic, String json,
+                                   long ttlMillis, String commandId) {
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        boolean stored = false;
+        if (commandTopicMode != CommandTopicMode.LEGACY) {
+            stored = commandOutbox.enqueue("devices/" + hardwareId + "/commands/" + command, payload,
+                    COMMAND_QOS, commandId, ttlMillis);
+        }
+        if (commandTopicMode != CommandTopicMode.ADDRESSED) {
+            stored |= commandOutbox.enqueue(legacyTopic, payload, COMMAND_QOS, commandId, ttlMillis);
+        }
+
+        if (!stored) {
+            logger.warn("Could not store {} for {} in the outbox", command, hardwareId);
+            if (commandId != null) {
+                commandTracker.publishFailed(commandId, new IllegalStateException("command outbox unavailable"));
+            }
+            return false;
+        }
+        logger.info("Queued {} for {}", command, hardwareId);
+        return true;
+    }
+
     public boolean isConnected() {
         return connected && mqttClient != null && mqttClient.isConnected();
     }
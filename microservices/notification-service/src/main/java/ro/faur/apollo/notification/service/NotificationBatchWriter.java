@@ -0,0 +1,345 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.service.push.PushDispatcher;
+import ro.faur.apollo.notification.service.stream.FeedEventBus;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind writer for notifications. Saves are queued and a single writer thread
+ * flushes them in groups, either every {@code max-delay-ms} or once {@code batch-size}
+ * rows are waiting, as one JDBC batch in one transaction. With {@code reWriteBatchedInserts}
+ * on the datasource URL the driver sends each batch as a multi-row INSERT.
+ * <p>
+ * Message and session patches go through the same queue. Since there is a single writer and
+ * inserts are executed before updates within a flush, a patch can never overtake the insert of
+ * its row. Patches address a row by UUID and creation time, so they only touch the month
+ * partition the row lives in.
+ * <p>
+ * Inserted notifications are appended to their readers' inboxes in the same transaction, see
+ * {@link NotificationInbox}, and published to the live streams when it commits, see
+ * {@link FeedEventBus}; so are the patched ones. Once committed, inserted notifications are
+ * handed to the {@link PushDispatcher}.
+ */
+@Component
+public class NotificationBatchWriter {
+
+    /**
+     * When the future returned by {@link #write(Notification)} completes.
+     */
+    public enum AckMode {
+        /** After the batch holding the notification has been committed. */
+        FLUSH,
+        /** As soon as the notification is queued; a crash before the next flush loses it. */
+        ENQUEUE
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationBatchWriter.class);
+
+    private static final String INSERT_SQL = """
+        INSERT INTO notification (uuid, created_at, updated_at, deleted, title, message, type, media_url, device_uuid,
+                                  event_count, last_event_at)
+        VALUES (?, ?, ?, false, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private static final String UPDATE_MESSAGE_SQL =
+            "UPDATE notification SET message = ?, updated_at = ? WHERE uuid = ? AND created_at = ?";
+
+    // A session keeps the first clip it was given, see MotionSessionAggregator
+    private static final String UPDATE_SESSION_SQL = """
+        UPDATE notification SET event_count = ?, last_event_at = ?, media_url = COALESCE(media_url, ?), updated_at = ?
+        WHERE uuid = ? AND created_at = ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationInbox notificationInbox;
+    private final FeedEventBus feedEventBus;
+    private final PushDispatcher pushDispatcher;
+    private final BlockingQueue<PendingWrite> queue;
+    private final AckMode ackMode;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public NotificationBatchWriter(JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   NotificationInbox notificationInbox,
+                                   FeedEventBus feedEventBus,
+                                   PushDispatcher pushDispatcher,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${notification.writer.ack-mode}") AckMode ackMode,
+                                   @Value("${notification.writer.batch-size}") int batchSize,
+                                   @Value("${notification.writer.max-delay-ms}") long maxDelayMs,
+                                   @Value("${notification.writer.queue-capacity}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.notificationInbox = notificationInbox;
+        this.feedEventBus = feedEventBus;
+        this.pushDispatcher = pushDispatcher;
+        this.ackMode = ackMode;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(this::runWriter, "notification-writer");
+        this.writerThread.setDaemon(true);
+
+        Gauge.builder("notification.writer.queue.depth", queue, BlockingQueue::size)
+                .description("Notifications waiting for the next flush")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("notification.writer.batch.size")
+                .description("Rows written per flush")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("notification.writer.flush")
+                .description("Time spent writing one batch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread.start();
+        logger.info("Notification writer started (ackMode={}, batchSize={})", ackMode, batchSize);
+    }
+
+    /**
+     * Queues the notification for the next flush, blocking while the queue is full. The UUID (unless
+     * the caller already picked one) and timestamps are assigned here so callers can reference the
+     * row before it is written. The creation time is cut to the microsecond precision of the column,
+     * since later patches look the row up by it.
+     */
+    public CompletableFuture<Notification> write(Notification notification) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        if (notification.getUuid() == null) {
+            notification.setUuid(UUID.randomUUID().toString());
+        }
+        if (notification.getCreatedAt() == null) {
+            notification.setCreatedAt(now);
+        } else {
+            notification.setCreatedAt(notification.getCreatedAt().truncatedTo(ChronoUnit.MICROS));
+        }
+        notification.setUpdatedAt(now);
+
+        return enqueue(PendingWrite.insert(notification)).thenApply(ignored -> notification);
+    }
+
+    /**
+     * Queues an in-place update of an already written (or still queued) notification's message.
+     */
+    public CompletableFuture<Void> updateMessage(String uuid, LocalDateTime createdAt, String message) {
+        return enqueue(PendingWrite.updateMessage(uuid, createdAt, message, LocalDateTime.now()));
+    }
+
+    /**
+     * Queues an update of a rolled-up notification's event count and span. {@code mediaUrl} is
+     * only stored if the row has no media yet.
+     */
+    public CompletableFuture<Void> updateSession(String uuid, LocalDateTime createdAt, int eventCount,
+                                                 LocalDateTime lastEventAt, String mediaUrl) {
+        return enqueue(PendingWrite.updateSession(uuid, createdAt, eventCount, lastEventAt, mediaUrl, LocalDateTime.now()));
+    }
+
+    private CompletableFuture<Void> enqueue(PendingWrite pending) {
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (ackMode == AckMode.ENQUEUE) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pending.future;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        // Whatever the writer thread did not get to is flushed from the caller's thread
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Unexpected error in notification writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSizeSummary.record(batch.size());
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> writeBatch(batch)));
+            batch.forEach(PendingWrite::complete);
+        } catch (Exception e) {
+            logger.warn("Batch insert of {} notifications failed, retrying one by one: {}", batch.size(), e.getMessage());
+            // Isolate the offending row(s) so one bad notification doesn't take the whole batch down
+            for (PendingWrite pending : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeBatch(List.of(pending)));
+                    pending.complete();
+                } catch (Exception rowError) {
+                    logger.error("Failed to write notification {}", pending.uuid, rowError);
+                    pending.future.completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        List<PendingWrite> inserts = batch.stream().filter(pending -> pending.notification != null).toList();
+        List<PendingWrite> messages = batch.stream().filter(pending -> pending.message != null).toList();
+        List<PendingWrite> sessions = batch.stream().filter(pending -> pending.lastEventAt != null).toList();
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), this::bindInsert);
+            List<Notification> inserted = inserts.stream().map(pending -> pending.notification).toList();
+            notificationInbox.fanOut(inserted);
+            feedEventBus.publishInserted(inserted);
+            pushDispatcher.submitAfterCommit(inserted);
+        }
+        if (!messages.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_MESSAGE_SQL, messages, messages.size(), this::bindUpdate);
+        }
+        if (!sessions.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SESSION_SQL, sessions, sessions.size(), this::bindSessionUpdate);
+        }
+        if (!messages.isEmpty() || !sessions.isEmpty()) {
+            feedEventBus.publishUpdated(Stream.concat(messages.stream(), sessions.stream())
+                    .map(pending -> new FeedCursor(pending.createdAt, pending.uuid))
+                    .toList());
+        }
+    }
+
+    private void bindUpdate(PreparedStatement ps, PendingWrite pending) throws SQLException {
+        ps.setString(1, pending.message);
+        ps.setTimestamp(2, Timestamp.valueOf(pending.updatedAt));
+        ps.setString(3, pending.uuid);
+        ps.setTimestamp(4, Timestamp.valueOf(pending.createdAt));
+    }
+
+    private void bindSessionUpdate(PreparedStatement ps, PendingWrite pending) throws SQLException {
+        ps.setInt(1, pending.eventCount);
+        ps.setTimestamp(2, Timestamp.valueOf(pending.lastEventAt));
+        ps.setString(3, pending.mediaUrl);
+        ps.setTimestamp(4, Timestamp.valueOf(pending.updatedAt));
+        ps.setString(5, pending.uuid);
+        ps.setTimestamp(6, Timestamp.valueOf(pending.createdAt));
+    }
+
+    private void bindInsert(PreparedStatement ps, PendingWrite pending) throws SQLException {
+        Notification notification = pending.notification;
+        ps.setString(1, notification.getUuid());
+        ps.setTimestamp(2, Timestamp.valueOf(notification.getCreatedAt()));
+        ps.setTimestamp(3, Timestamp.valueOf(notification.getUpdatedAt()));
+        ps.setString(4, notification.getTitle());
+        ps.setString(5, notification.getMessage());
+        ps.setString(6, notification.getType() != null ? notification.getType().name() : null);
+        ps.setString(7, notification.getMediaUrl());
+        ps.setString(8, notification.getDeviceUuid());
+        ps.setInt(9, notification.getEventCount());
+        ps.setTimestamp(10, notification.getLastEventAt() != null ? Timestamp.valueOf(notification.getLastEventAt()) : null);
+    }
+
+    private static final class PendingWrite {
+        // Set for inserts only; updates carry just the columns they change
+        private final Notification notification;
+        private final String uuid;
+        private final LocalDateTime createdAt;
+        private final String message;
+        private final int eventCount;
+        private final LocalDateTime lastEventAt;
+        private final String mediaUrl;
+        private final LocalDateTime updatedAt;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Notification notification, String uuid, LocalDateTime createdAt, String message,
+                             int eventCount, LocalDateTime lastEventAt, String mediaUrl, LocalDateTime updatedAt) {
+            this.notification = notification;
+            this.uuid = uuid;
+            this.createdAt = createdAt;
+            this.message = message;
+            this.eventCount = eventCount;
+            this.lastEventAt = lastEventAt;
+            this.mediaUrl = mediaUrl;
+            this.updatedAt = updatedAt;
+        }
+
+        private static PendingWrite insert(Notification notification) {
+            return new PendingWrite(notification, notification.getUuid(), notification.getCreatedAt(), null, 0, null, null, null);
+        }
+
+        private static PendingWrite updateMessage(String uuid, LocalDateTime createdAt, String message, LocalDateTime updatedAt) {
+            return new PendingWrite(null, uuid, createdAt, message, 0, null, null, updatedAt);
+        }
+
+        private static PendingWrite updateSession(String uuid, LocalDateTime createdAt, int eventCount,
+                                                  LocalDateTime lastEventAt, String mediaUrl, LocalDateTime updatedAt) {
+            return new PendingWrite(null, uuid, createdAt, null, eventCount, lastEventAt, mediaUrl, updatedAt);
+        }
+
+        private void complete() {
+            future.complete(null);
+        }
+    }
+}
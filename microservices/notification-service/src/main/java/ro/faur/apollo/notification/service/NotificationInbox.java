@@ -0,0 +1,202 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ro.faur.apollo.notification.client.HomeServiceClient;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.service.push.PushAudience;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Per-user notification inbox (fan-out on write). Every stored notification is copied, as a
+ * small {@code notification_inbox} row, to each user listed for its device in
+ * {@code notification_inbox_member}, so reading a feed is one range scan of the reader's own rows
+ * instead of a query over all of their devices.
+ * <p>
+ * Only users who read their feed have an inbox. It holds the user's devices on which they have
+ * the {@code VIEW_NOTIFICATIONS} right, the same audience {@link PushAudience} pushes to. That
+ * list is fetched from home-service on their first read, after home-service reports an access change for them, and at the latest
+ * every {@code resync-minutes}; devices the user lost are removed from their inbox and devices
+ * they gained are backfilled from {@code notification} for the last {@code backfill-days}.
+ * <p>
+ * The fan-out runs in the writer's transaction and holds a shared advisory lock per device, which
+ * a sync takes exclusively while it adds the device, so a notification committed during a sync is
+ * either in the backfill or in the fan-out, never in neither.
+ */
+@Component
+public class NotificationInbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationInbox.class);
+
+    private static final String DEVICE_LOCK_SHARED_SQL = "SELECT pg_advisory_xact_lock_shared(hashtext('notification_inbox:' || ?))";
+    private static final String DEVICE_LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext('notification_inbox:' || ?))";
+
+    private static final String FAN_OUT_SQL = """
+        INSERT INTO notification_inbox (user_uuid, created_at, notification_uuid, device_uuid)
+        SELECT m.user_uuid, ?, ?, m.device_uuid FROM notification_inbox_member m WHERE m.device_uuid = ?
+        """;
+
+    // Takes the user's row lock until commit, so two syncs of one user do not interleave
+    private static final String MARK_SYNCED_SQL = """
+        INSERT INTO notification_inbox_user (user_uuid, synced_at) VALUES (?, ?)
+        ON CONFLICT (user_uuid) DO UPDATE SET synced_at = EXCLUDED.synced_at
+        """;
+
+    private static final String BACKFILL_SQL = """
+        INSERT INTO notification_inbox (user_uuid, created_at, notification_uuid, device_uuid)
+        SELECT ?, n.created_at, n.uuid, n.device_uuid FROM notification n
+        WHERE n.device_uuid = ? AND n.created_at > ?
+        ON CONFLICT DO NOTHING
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HomeServiceClient homeServiceClient;
+    private final PushAudience pushAudience;
+    private final boolean enabled;
+    private final long resyncMinutes;
+    private final int backfillDays;
+    private final Counter syncCounter;
+    private final DistributionSummary backfillSummary;
+
+    public NotificationInbox(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             HomeServiceClient homeServiceClient,
+                             PushAudience pushAudience,
+                             MeterRegistry meterRegistry,
+                             @Value("${notification.inbox.enabled}") boolean enabled,
+                             @Value("${notification.inbox.resync-minutes}") long resyncMinutes,
+                             @Value("${notification.inbox.backfill-days}") int backfillDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.homeServiceClient = homeServiceClient;
+        this.pushAudience = pushAudience;
+        this.enabled = enabled;
+        this.resyncMinutes = resyncMinutes;
+        this.backfillDays = backfillDays;
+
+        this.syncCounter = Counter.builder("notification.inbox.syncs")
+                .description("Inboxes brought in line with the user's devices")
+                .register(meterRegistry);
+        this.backfillSummary = DistributionSummary.builder("notification.inbox.backfilled")
+                .description("Inbox rows copied from history per sync")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the notifications to the inboxes of their devices' members. Must run inside the
+     * transaction that inserts them.
+     */
+    void fanOut(List<Notification> notifications) {
+        if (!enabled) {
+            return;
+        }
+        List<Notification> withDevice = notifications.stream().filter(n -> n.getDeviceUuid() != null).toList();
+        if (withDevice.isEmpty()) {
+            return;
+        }
+        // Sorted, like sync(), so the two never wait on each other in opposite orders
+        for (String deviceUuid : new TreeSet<>(withDevice.stream().map(Notification::getDeviceUuid).toList())) {
+            jdbcTemplate.query(DEVICE_LOCK_SHARED_SQL, rs -> null, deviceUuid);
+        }
+        jdbcTemplate.batchUpdate(FAN_OUT_SQL, withDevice, withDevice.size(), (ps, notification) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(notification.getCreatedAt()));
+            ps.setString(2, notification.getUuid());
+            ps.setString(3, notification.getDeviceUuid());
+        });
+    }
+
+    /**
+     * Makes sure the user's inbox covers the devices they can currently see, syncing it with
+     * home-service if it never was, was marked stale, or is older than {@code resync-minutes}.
+     * If home-service cannot be reached the inbox is left as it is.
+     */
+    public void ensureSynced(String userUuid) {
+        List<Timestamp> syncedAt = jdbcTemplate.queryForList(
+                "SELECT synced_at FROM notification_inbox_user WHERE user_uuid = ?", Timestamp.class, userUuid);
+        LocalDateTime freshAfter = LocalDateTime.now().minusMinutes(resyncMinutes);
+        if (!syncedAt.isEmpty() && syncedAt.get(0) != null && syncedAt.get(0).toLocalDateTime().isAfter(freshAfter)) {
+            return;
+        }
+
+        List<String> deviceUuids = homeServiceClient.getDeviceUuidsForUser(userUuid);
+        // Guests only see the notifications of the devices they were given VIEW_NOTIFICATIONS on
+        Set<String> viewable = deviceUuids != null ? pushAudience.viewableBy(userUuid, deviceUuids) : null;
+        if (viewable == null) {
+            logger.warn("Could not fetch devices for user {}, serving their inbox as last synced", userUuid);
+            return;
+        }
+        sync(userUuid, viewable);
+    }
+
+    private void sync(String userUuid, Set<String> deviceUuids) {
+        int backfilled = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            jdbcTemplate.update(MARK_SYNCED_SQL, userUuid, Timestamp.valueOf(now));
+
+            Set<String> current = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT device_uuid FROM notification_inbox_member WHERE user_uuid = ?", String.class, userUuid));
+            for (String removed : current) {
+                if (!deviceUuids.contains(removed)) {
+                    jdbcTemplate.update("DELETE FROM notification_inbox_member WHERE device_uuid = ? AND user_uuid = ?", removed, userUuid);
+                    jdbcTemplate.update("DELETE FROM notification_inbox WHERE user_uuid = ? AND device_uuid = ?", userUuid, removed);
+                }
+            }
+
+            int rows = 0;
+            Timestamp since = Timestamp.valueOf(now.minusDays(backfillDays));
+            for (String added : deviceUuids) {
+                if (current.contains(added)) {
+                    continue;
+                }
+                jdbcTemplate.query(DEVICE_LOCK_SQL, rs -> null, added);
+                jdbcTemplate.update("INSERT INTO notification_inbox_member (device_uuid, user_uuid) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                        added, userUuid);
+                rows += jdbcTemplate.update(BACKFILL_SQL, userUuid, added, since);
+            }
+            return rows;
+        });
+
+        syncCounter.increment();
+        backfillSummary.record(backfilled);
+        logger.debug("Synced inbox of user {} to {} devices ({} rows backfilled)", userUuid, deviceUuids.size(), backfilled);
+    }
+
+    /**
+     * Devices whose notifications the user's inbox receives, as of its last sync.
+     */
+    public Set<String> deviceUuidsOf(String userUuid) {
+        return Set.copyOf(jdbcTemplate.queryForList(
+                "SELECT device_uuid FROM notification_inbox_member WHERE user_uuid = ?", String.class, userUuid));
+    }
+
+    /**
+     * Marks the users' inboxes stale after their access changed, so their next read syncs first.
+     */
+    public void markStale(Collection<String> userUuids) {
+        if (!enabled || userUuids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("UPDATE notification_inbox_user SET synced_at = NULL WHERE user_uuid = ?",
+                List.copyOf(userUuids), userUuids.size(), (ps, userUuid) -> ps.setString(1, userUuid));
+    }
+}
@@ -0,0 +1,135 @@
+package ro.faur.apollo.notification.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the monthly partitions of the {@code notification} table set up by {@code schema.sql}.
+ * Partitions are created {@code months-ahead} into the future so an insert never finds its month
+ * missing, and partitions whose whole range is older than {@code retention-months} are detached
+ * and dropped, which frees the space at once instead of deleting rows one by one and leaving the
+ * cleanup to vacuum. Each partition's {@code notification_inbox} twin goes with it.
+ * <p>
+ * Detaching uses {@code CONCURRENTLY}, so feed queries and inserts are not blocked while a month
+ * is removed. Every replica runs this; a partition another replica already dropped is skipped.
+ */
+@Component
+public class NotificationPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationPartitionManager.class);
+
+    private static final String LIST_PARTITIONS_SQL = """
+        SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'notification'::regclass
+        """;
+
+    // Upper bound of a range partition, e.g. FOR VALUES FROM ('2025-01-01 00:00:00') TO ('2025-02-01 00:00:00')
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notification-partitions");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final long checkIntervalHours;
+    private final AtomicInteger partitionCount = new AtomicInteger();
+    private final Counter droppedCounter;
+
+    public NotificationPartitionManager(JdbcTemplate jdbcTemplate,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${notification.partitions.months-ahead}") int monthsAhead,
+                                        @Value("${notification.partitions.retention-months}") int retentionMonths,
+                                        @Value("${notification.partitions.check-interval-hours}") long checkIntervalHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.checkIntervalHours = checkIntervalHours;
+
+        Gauge.builder("notification.partitions", partitionCount, AtomicInteger::get)
+                .description("Partitions of the notification table")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("notification.partitions.dropped")
+                .description("Notification partitions dropped by retention")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, checkIntervalHours, TimeUnit.HOURS);
+    }
+
+    private void maintain() {
+        try {
+            Integer created = jdbcTemplate.queryForObject("SELECT notification_ensure_partitions(?)", Integer.class, monthsAhead);
+            if (created != null && created > 0) {
+                logger.info("Created {} notification partition(s)", created);
+            }
+            if (retentionMonths > 0) {
+                dropExpiredPartitions();
+            }
+            partitionCount.set(listPartitions().size());
+        } catch (Exception e) {
+            logger.error("Error maintaining notification partitions", e);
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        // Everything before the first day of the oldest month still retained can go
+        LocalDateTime cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths).atStartOfDay();
+        for (String[] partition : listPartitions()) {
+            Matcher upperBound = UPPER_BOUND.matcher(partition[1]);
+            if (!upperBound.find() || LocalDate.parse(upperBound.group(1)).atStartOfDay().isAfter(cutoff)) {
+                continue;
+            }
+            String name = partition[0];
+            try {
+                // The inbox first, so no inbox row ever points at a dropped notification
+                dropPartition("notification_inbox", "notification_inbox_" + name.substring("notification_".length()));
+                dropPartition("notification", name);
+                droppedCounter.increment();
+                logger.info("Dropped notification partition {} (retention {} months)", name, retentionMonths);
+            } catch (Exception e) {
+                logger.warn("Could not drop notification partition {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void dropPartition(String parent, String name) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, "\"" + name + "\""))) {
+            // Outside a transaction: CONCURRENTLY does not take the lock that would stall the feed
+            jdbcTemplate.execute("ALTER TABLE " + parent + " DETACH PARTITION \"" + name + "\" CONCURRENTLY");
+            jdbcTemplate.execute("DROP TABLE \"" + name + "\"");
+        }
+    }
+
+    private List<String[]> listPartitions() {
+        return jdbcTemplate.query(LIST_PARTITIONS_SQL, (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)});
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+}
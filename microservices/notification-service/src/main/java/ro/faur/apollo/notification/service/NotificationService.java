@@ -2,14 +2,18 @@ package ro.faur.apollo.notification.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ro.faur.apollo.notification.client.HomeServiceClient;
 import ro.faur.apollo.notification.domain.Notification;
 import ro.faur.apollo.notification.dto.NotificationDTO;
+import ro.faur.apollo.notification.dto.NotificationPageDTO;
 import ro.faur.apollo.notification.repository.NotificationRepository;
 import ro.faur.apollo.shared.dto.HomeSummaryDTO;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.springframework.cache.annotation.CacheEvict;
@@ -18,12 +22,28 @@ import org.springframework.cache.annotation.CacheEvict;
 public class NotificationService {
 
     private final NotificationRepository notificationRepository;
+    private final NotificationBatchWriter notificationBatchWriter;
+    private final NotificationInbox notificationInbox;
     private final HomeServiceClient homeServiceClient;
+    private final int feedDefaultPageSize;
+    private final int feedMaxPageSize;
     private final Logger logger = LoggerFactory.getLogger(NotificationService.class);
 
-    public NotificationService(NotificationRepository notificationRepository, HomeServiceClient homeServiceClient) {
+    // Cursor of the first page: sorts after every stored notification
+    private static final LocalDateTime FEED_START = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    public NotificationService(NotificationRepository notificationRepository,
+                               NotificationBatchWriter notificationBatchWriter,
+                               NotificationInbox notificationInbox,
+                               HomeServiceClient homeServiceClient,
+                               @Value("${notification.feed.default-page-size}") int feedDefaultPageSize,
+                               @Value("${notification.feed.max-page-size}") int feedMaxPageSize) {
         this.notificationRepository = notificationRepository;
+        this.notificationBatchWriter = notificationBatchWriter;
+        this.notificationInbox = notificationInbox;
         this.homeServiceClient = homeServiceClient;
+        this.feedDefaultPageSize = feedDefaultPageSize;
+        this.feedMaxPageSize = feedMaxPageSize;
     }
 
     public List<NotificationDTO> getNotificationsForDevice(String deviceUuid) {
@@ -54,9 +74,62 @@ public class NotificationService {
         }
     }
 
-    public NotificationDTO saveNotification(Notification notification) {
-        Notification saved = notificationRepository.save(notification);
-        return convertToDTO(saved);
+    /**
+     * Returns one page of the user's feed, newest first, using keyset pagination on
+     * {@code (created_at, uuid)}: the cursor is the position of the last notification of the
+     * previous page, so fetching a page does not get slower the further back it is.
+     * <p>
+     * With {@code notification.inbox.enabled} the page is read from the user's inbox and
+     * home-service is only asked for the user's devices when the inbox needs a sync.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or {@code null} for the first page
+     * @param limit  page size, capped at {@code notification.feed.max-page-size}
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public NotificationPageDTO getNotificationFeedForUser(String userUuid, String cursor, Integer limit) {
+        LocalDateTime afterCreatedAt = FEED_START;
+        String afterUuid = "";
+        if (cursor != null && !cursor.isBlank()) {
+            FeedCursor position = FeedCursor.decode(cursor);
+            afterCreatedAt = position.getCreatedAt();
+            afterUuid = position.getUuid();
+        }
+        int pageSize = Math.min(limit != null && limit > 0 ? limit : feedDefaultPageSize, feedMaxPageSize);
+
+        // One extra row tells whether there is a next page
+        List<Notification> rows;
+        if (notificationInbox.isEnabled()) {
+            notificationInbox.ensureSynced(userUuid);
+            rows = notificationRepository.findInboxPage(userUuid, afterCreatedAt, afterUuid, pageSize + 1);
+        } else {
+            List<String> deviceUuids = getUserAccessibleDevicesInternal(userUuid);
+            if (deviceUuids.isEmpty()) {
+                return new NotificationPageDTO(List.of(), null);
+            }
+            rows = notificationRepository.findFeedPage(deviceUuids, afterCreatedAt, afterUuid, pageSize + 1);
+        }
+        List<Notification> page = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            Notification last = page.get(page.size() - 1);
+            nextCursor = new FeedCursor(last.getCreatedAt(), last.getUuid()).encode();
+        }
+        return new NotificationPageDTO(page.stream().map(this::convertToDTO).collect(Collectors.toList()), nextCursor);
+    }
+
+    /**
+     * Hands the notification to the batch writer. Depending on {@code notification.writer.ack-mode}
+     * the returned future completes once the row is committed or as soon as it is queued.
+     */
+    public CompletableFuture<NotificationDTO> saveNotification(Notification notification) {
+        return notificationBatchWriter.write(notification).thenApply(this::convertToDTO);
+    }
+
+    /**
+     * Replaces the message of a stored notification, e.g. once media analysis has finished.
+     */
+    public CompletableFuture<Void> updateNotificationMessage(Notification notification, String message) {
+        return notificationBatchWriter.updateMessage(notification.getUuid(), notification.getCreatedAt(), message);
     }
 
     /**
@@ -129,7 +202,7 @@ public class NotificationService {
     }
 
     private NotificationDTO convertToDTO(Notification notification) {
-        return new NotificationDTO(
+        NotificationDTO dto = new NotificationDTO(
                 notification.getUuid(),
                 notification.getTitle(),
                 notification.getMessage(),
@@ -138,5 +211,8 @@ public class NotificationService {
                 notification.getCreatedAt(),
                 notification.getDeviceUuid()
         );
+        dto.setEventCount(notification.getEventCount());
+        dto.setLastEventAt(notification.getLastEventAt());
+        return dto;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,179 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Per-device token bucket in front of the ingest pipeline, so one faulty lock spamming events
+ * cannot take over the workers or the media analysis budget of everyone else.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the time its bucket would be full again
+ * (GCRA). Admitting an event is one compare-and-set, with no lock. A bucket that has been full
+ * for {@code idle-expiry-seconds} carries no state worth keeping and is dropped by
+ * {@link #sweep}. Burst and refill rate are configured per device type, which is learned from
+ * the device's hellos. Devices only say hello when they boot, so the learned limit is kept apart
+ * from the buckets and outlives their expiry; a new bucket starts with it.
+ * <p>
+ * Rejected events are only counted. {@link #sweep} hands the counts over so they can be
+ * reported as one aggregate notification per device.
+ */
+@Component
+public class DeviceRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRateLimiter.class);
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Limit> limitsByType = new HashMap<>();
+    private final Map<String, Limit> learnedLimits = new ConcurrentHashMap<>();
+    private final Limit defaultLimit;
+    private final int maxLearnedDevices;
+    private final long idleExpiryNanos;
+    private final Counter limitedCounter;
+
+    /**
+     * @param deviceTypeLimits comma-separated {@code TYPE:burst/perMinute} overrides, e.g. {@code AMB82:30/120}
+     */
+    public DeviceRateLimiter(MeterRegistry meterRegistry,
+                             @Value("${mqtt.rate-limit.default.burst}") int defaultBurst,
+                             @Value("${mqtt.rate-limit.default.per-minute}") int defaultPerMinute,
+                             @Value("${mqtt.rate-limit.device-types:}") String deviceTypeLimits,
+                             @Value("${mqtt.rate-limit.idle-expiry-seconds}") long idleExpirySeconds,
+                             @Value("${mqtt.rate-limit.max-learned-devices}") int maxLearnedDevices) {
+        this.defaultLimit = new Limit(defaultBurst, defaultPerMinute);
+        this.maxLearnedDevices = maxLearnedDevices;
+        this.idleExpiryNanos = TimeUnit.SECONDS.toNanos(idleExpirySeconds);
+        for (String entry : deviceTypeLimits.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] typeAndLimit = entry.trim().split(":");
+            String[] burstAndRate = typeAndLimit[1].split("/");
+            limitsByType.put(typeAndLimit[0], new Limit(Integer.parseInt(burstAndRate[0]), Integer.parseInt(burstAndRate[1])));
+        }
+
+        Gauge.builder("mqtt.ingest.rate.buckets", buckets, Map::size)
+                .description("Devices with an active rate limit bucket")
+                .register(meterRegistry);
+        this.limitedCounter = Counter.builder("mqtt.ingest.rate.limited")
+                .description("Events dropped because their device exceeded its rate limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return {@code true} if the event may enter the pipeline
+     */
+    public boolean tryAcquire(String hardwareId) {
+        Bucket bucket = buckets.computeIfAbsent(hardwareId, id -> new Bucket(learnedLimits.getOrDefault(id, defaultLimit)));
+        if (bucket.tryAcquire(System.nanoTime())) {
+            return true;
+        }
+        if (Bucket.SUPPRESSED.getAndIncrement(bucket) == 0) {
+            logger.warn("Device {} exceeded its rate limit, dropping its events", hardwareId);
+        }
+        limitedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Applies the limit configured for the device's type from now on, including to buckets
+     * created after the current one has expired.
+     */
+    public void learnDeviceType(String hardwareId, String deviceType) {
+        Limit limit = limitsByType.get(deviceType);
+        if (limit == null) {
+            // Only overrides are remembered; every other device gets the default anyway
+            learnedLimits.remove(hardwareId);
+            limit = defaultLimit;
+        } else {
+            learnedLimits.put(hardwareId, limit);
+            if (learnedLimits.size() > maxLearnedDevices) {
+                evictLearned(hardwareId);
+            }
+        }
+        Limit learned = limit;
+        buckets.computeIfAbsent(hardwareId, id -> new Bucket(learned)).limit = learned;
+    }
+
+    // Over the bound: forget arbitrary devices, they fall back to the default until their next hello
+    private void evictLearned(String keep) {
+        Iterator<String> keys = learnedLimits.keySet().iterator();
+        while (learnedLimits.size() > maxLearnedDevices && keys.hasNext()) {
+            if (!keys.next().equals(keep)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Reports and resets the number of events dropped per device since the last sweep, and
+     * removes buckets that have been idle and full for the expiry period.
+     */
+    public void sweep(ObjIntConsumer<String> onSuppressed) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Bucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Bucket> entry = iterator.next();
+            Bucket bucket = entry.getValue();
+            int suppressed = Bucket.SUPPRESSED.getAndSet(bucket, 0);
+            if (suppressed > 0) {
+                onSuppressed.accept(entry.getKey(), suppressed);
+            } else if (now - bucket.get() > idleExpiryNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Limit {
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        private Limit(int burst, int perMinute) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(perMinute, 1);
+            this.burstNanos = intervalNanos * Math.max(burst, 1);
+        }
+    }
+
+    /**
+     * The value is the GCRA theoretical arrival time: the instant the bucket is full again.
+     */
+    private static final class Bucket extends AtomicLong {
+        private static final AtomicIntegerFieldUpdater<Bucket> SUPPRESSED =
+                AtomicIntegerFieldUpdater.newUpdater(Bucket.class, "suppressed");
+
+        private volatile Limit limit;
+        private volatile int suppressed;
+
+        private Bucket(Limit limit) {
+            super(System.nanoTime());
+            this.limit = limit;
+        }
+
+        boolean tryAcquire(long now) {
+            Limit current = limit;
+            while (true) {
+                long fullAt = get();
+                long next = Math.max(fullAt, now) + current.intervalNanos;
+                if (next - now > current.burstNanos) {
+                    return false;
+                }
+                if (compareAndSet(fullAt, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
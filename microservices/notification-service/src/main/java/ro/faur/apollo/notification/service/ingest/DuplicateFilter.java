@@ -0,0 +1,120 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Drops MQTT messages the broker delivers more than once (QoS 1 redelivery after a reconnect).
+ * <p>
+ * Messages carrying a device-supplied {@code eventId} are remembered by that id. Messages without
+ * one are remembered by a hash of their payload for a shorter window, since two genuine events
+ * can have identical content. Both windows are bounded in time and in entries, so memory stays
+ * flat however fast events arrive. Hellos are idempotent and never filtered.
+ */
+@Component
+public class DuplicateFilter {
+
+    private final SeenWindow byEventId;
+    private final SeenWindow byContent;
+    private final Counter duplicateCounter;
+
+    public DuplicateFilter(MeterRegistry meterRegistry,
+                           @Value("${mqtt.dedupe.max-entries}") int maxEntries,
+                           @Value("${mqtt.dedupe.event-id-window-seconds}") long eventIdWindowSeconds,
+                           @Value("${mqtt.dedupe.content-window-seconds}") long contentWindowSeconds) {
+        this.byEventId = new SeenWindow(maxEntries, eventIdWindowSeconds * 1000);
+        this.byContent = new SeenWindow(maxEntries, contentWindowSeconds * 1000);
+
+        Gauge.builder("mqtt.ingest.dedupe.size", this, filter -> filter.byEventId.size() + filter.byContent.size())
+                .description("Message keys remembered for duplicate detection")
+                .register(meterRegistry);
+        this.duplicateCounter = Counter.builder("mqtt.ingest.duplicates")
+                .description("Redelivered MQTT messages dropped by the duplicate filter")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the event and reports whether it was already seen within the window.
+     * Must be called after parsing, once the hardwareId is known.
+     * <p>
+     * An event replayed from the {@link IngestJournal} is recorded but never reported: the key
+     * it finds is usually its own, left by the pass that spilled it.
+     */
+    public boolean isDuplicate(InboundEvent event) {
+        if (event.getKind() == InboundEvent.Kind.HELLO) {
+            return false;
+        }
+
+        String eventId = eventIdOf(event);
+        boolean duplicate = eventId != null
+                ? byEventId.markSeen(event.getHardwareId() + '|' + event.getKind() + '|' + eventId)
+                : byContent.markSeen(event.getHardwareId() + '|' + event.getKind() + '|' + Long.toHexString(hash(event.getPayload())));
+        if (event.isReplayed()) {
+            return false;
+        }
+        if (duplicate) {
+            duplicateCounter.increment();
+        }
+        return duplicate;
+    }
+
+    private static String eventIdOf(InboundEvent event) {
+        String eventId = switch (event.getKind()) {
+            case NOTIFICATION -> event.getNotificationMessage().getEventId();
+            case ENROLL_STATUS -> event.getEnrollStatus().getEventId();
+            default -> null;
+        };
+        return eventId == null || eventId.isBlank() ? null : eventId;
+    }
+
+    // 64-bit FNV-1a over the raw payload
+    private static long hash(byte[] payload) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : payload) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Keys in insertion order with the time they were first seen. Since entries are appended in
+     * time order, expired ones are always at the head and are trimmed on each access.
+     */
+    private static final class SeenWindow {
+        private final int maxEntries;
+        private final long windowMillis;
+        private final LinkedHashMap<String, Long> seen;
+
+        private SeenWindow(int maxEntries, long windowMillis) {
+            this.maxEntries = maxEntries;
+            this.windowMillis = windowMillis;
+            this.seen = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > SeenWindow.this.maxEntries;
+                }
+            };
+        }
+
+        synchronized boolean markSeen(String key) {
+            long now = System.currentTimeMillis();
+            Iterator<Long> oldest = seen.values().iterator();
+            while (oldest.hasNext() && now - oldest.next() > windowMillis) {
+                oldest.remove();
+            }
+            return seen.putIfAbsent(key, now) != null;
+        }
+
+        synchronized int size() {
+            return seen.size();
+        }
+    }
+}
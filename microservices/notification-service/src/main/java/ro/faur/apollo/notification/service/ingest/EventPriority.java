@@ -0,0 +1,42 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import ro.faur.apollo.notification.domain.NotificationEventType;
+
+/**
+ * Scheduling class of an inbound event. Every ingest stage keeps one queue per priority and
+ * serves them by weight, so a security alert is not stuck behind a backlog of motion clips.
+ */
+public enum EventPriority {
+    /**
+     * Unauthorized entry attempts and other alerts a user must see at once.
+     */
+    CRITICAL,
+    /**
+     * Regular door activity and enrollment results.
+     */
+    NORMAL,
+    /**
+     * Motion clips and hellos: high volume, fine to delay.
+     */
+    BULK;
+
+    /**
+     * Classifies a raw message before it is parsed. For notifications only the {@code eventType}
+     * value is read from the payload, and it maps exactly like the parsed notification will.
+     */
+    public static EventPriority classify(InboundEvent.Kind kind, byte[] payload) {
+        return switch (kind) {
+            case HELLO -> BULK;
+            case ENROLL_STATUS -> NORMAL;
+            case NOTIFICATION -> of(NotificationEventType.fromDeviceEventType(PayloadFields.stringField(payload, "eventType")));
+        };
+    }
+
+    public static EventPriority of(NotificationEventType type) {
+        return switch (type) {
+            case DOORLOCK_OPENED_UNAUTHORIZED, DOORLOCK_HANDLE_TRIED_UNAUTHORIZED, DOORLOCK_LOST_POWER -> CRITICAL;
+            case DOORLOCK_SUSPICIOUS_ACTIVITY -> BULK;
+            default -> NORMAL;
+        };
+    }
+}
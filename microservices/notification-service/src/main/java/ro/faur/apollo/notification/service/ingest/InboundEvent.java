@@ -0,0 +1,158 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.domain.NotificationEventType;
+import ro.faur.apollo.notification.dto.mqtt.EnrollStatusMessage;
+import ro.faur.apollo.notification.dto.mqtt.NotificationMessage;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single MQTT message travelling through the ingest stages. Each stage fills in the
+ * fields it is responsible for and hands the event over to the next one.
+ */
+public class InboundEvent {
+
+    public enum Kind {
+        HELLO,
+        NOTIFICATION,
+        ENROLL_STATUS
+    }
+
+    private final Kind kind;
+    private final String topic;
+    private final byte[] payload;
+    private final long receivedAtNanos;
+    private final EventPriority priority;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private String hardwareId;
+    private String deviceType;
+    private String deviceUuid;
+    private NotificationMessage notificationMessage;
+    private Notification notification;
+    private EnrollStatusMessage enrollStatus;
+    private long enrichSubmittedAtNanos;
+    private boolean replayed;
+
+    public InboundEvent(Kind kind, String topic, byte[] payload) {
+        this.kind = kind;
+        this.topic = topic;
+        this.payload = payload;
+        this.receivedAtNanos = System.nanoTime();
+        this.priority = EventPriority.classify(kind, payload);
+    }
+
+    /**
+     * Low-priority events may be dropped by a stage running with {@link OverflowPolicy#SHED}.
+     * A notification only becomes sheddable once it has been parsed and classified.
+     */
+    public boolean isSheddable() {
+        if (kind == Kind.HELLO) {
+            return true;
+        }
+        if (notification == null) {
+            return false;
+        }
+        NotificationEventType type = notification.getType();
+        return type == NotificationEventType.DOORLOCK_SUSPICIOUS_ACTIVITY
+                || type == NotificationEventType.DOORLOCK_MISC;
+    }
+
+    /**
+     * Takes the event over for good, either to store it or to write it to the journal on shutdown.
+     * Only the first caller gets it, so an event journaled while a worker was still running it is
+     * not stored as well.
+     */
+    public boolean claim() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks an event read back from the {@link IngestJournal}. It already passed the duplicate
+     * filter before it was spilled, so it must not be taken for a redelivery of itself.
+     */
+    public void markReplayed() {
+        this.replayed = true;
+    }
+
+    public boolean isReplayed() {
+        return replayed;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    public EventPriority getPriority() {
+        return priority;
+    }
+
+    public String getHardwareId() {
+        return hardwareId;
+    }
+
+    public void setHardwareId(String hardwareId) {
+        this.hardwareId = hardwareId;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public void setDeviceType(String deviceType) {
+        this.deviceType = deviceType;
+    }
+
+    public String getDeviceUuid() {
+        return deviceUuid;
+    }
+
+    public void setDeviceUuid(String deviceUuid) {
+        this.deviceUuid = deviceUuid;
+    }
+
+    public NotificationMessage getNotificationMessage() {
+        return notificationMessage;
+    }
+
+    public void setNotificationMessage(NotificationMessage notificationMessage) {
+        this.notificationMessage = notificationMessage;
+    }
+
+    public Notification getNotification() {
+        return notification;
+    }
+
+    public void setNotification(Notification notification) {
+        this.notification = notification;
+    }
+
+    public EnrollStatusMessage getEnrollStatus() {
+        return enrollStatus;
+    }
+
+    public void setEnrollStatus(EnrollStatusMessage enrollStatus) {
+        this.enrollStatus = enrollStatus;
+    }
+
+    public long getEnrichSubmittedAtNanos() {
+        return enrichSubmittedAtNanos;
+    }
+
+    public void setEnrichSubmittedAtNanos(long enrichSubmittedAtNanos) {
+        this.enrichSubmittedAtNanos = enrichSubmittedAtNanos;
+    }
+}
@@ -0,0 +1,56 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket in front of the parse stage. It smooths the backlog the broker replays when a
+ * persistent session resumes, so the parse stage takes it at a steady rate.
+ * <p>
+ * {@link #acquire()} blocks the Paho callback thread, and Paho only acks a QoS 1 message once
+ * the callback returns. Messages the shaper holds back therefore stay queued at the broker
+ * instead of piling up in memory, and none are lost.
+ */
+@Component
+public class InboundRateShaper {
+
+    private final long nanosPerPermit;
+    private final long maxBurstNanos;
+    private final Timer waitTimer;
+    private long nextFreeNanos = System.nanoTime();
+
+    public InboundRateShaper(MeterRegistry meterRegistry,
+                             @Value("${mqtt.ingest.max-rate-per-second}") int maxRatePerSecond,
+                             @Value("${mqtt.ingest.burst}") int burst) {
+        this.nanosPerPermit = maxRatePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxRatePerSecond : 0;
+        this.maxBurstNanos = nanosPerPermit * Math.max(burst, 1);
+        this.waitTimer = Timer.builder("mqtt.ingest.shaping.wait")
+                .description("Time inbound messages were held back by the ingest rate limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits until the next message may enter the pipeline. Returns immediately when shaping is
+     * disabled ({@code mqtt.ingest.max-rate-per-second=0}).
+     */
+    public void acquire() throws InterruptedException {
+        if (nanosPerPermit == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Idle time refills the bucket, but never beyond the configured burst
+            nextFreeNanos = Math.max(nextFreeNanos, now - maxBurstNanos) + nanosPerPermit;
+            waitNanos = nextFreeNanos - now;
+        }
+        if (waitNanos > 0) {
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
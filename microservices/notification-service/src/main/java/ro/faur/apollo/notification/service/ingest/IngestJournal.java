@@ -0,0 +1,198 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+/**
+ * Append-only local file holding raw MQTT messages that could not be queued.
+ * Each line is {@code KIND<TAB>topic<TAB>base64(payload)} so a replay goes through
+ * the whole pipeline again, starting at the parse stage.
+ * <p>
+ * The file is kept open for appending. A replay moves it aside and records how many of its lines
+ * have been handed off in {@code ingest.journal.replay.pos}, so a replay that fails or is cut short
+ * resumes after the last recorded line instead of handing the earlier ones off again.
+ */
+@Component
+public class IngestJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestJournal.class);
+    private static final String JOURNAL_FILE = "ingest.journal";
+    private static final String REPLAY_FILE = "ingest.journal.replay";
+    private static final String POSITION_FILE = "ingest.journal.replay.pos";
+    // Lines handed off between two position writes; at most this many are replayed twice after a crash
+    private static final int POSITION_INTERVAL = 100;
+
+    private final Path journalFile;
+    private final Path replayFile;
+    private final Path positionFile;
+    // Guarded by this
+    private BufferedWriter writer;
+
+    public IngestJournal(@Value("${mqtt.ingest.journal-dir}") String journalDir) {
+        Path dir = Path.of(journalDir);
+        this.journalFile = dir.resolve(JOURNAL_FILE);
+        this.replayFile = dir.resolve(REPLAY_FILE);
+        this.positionFile = dir.resolve(POSITION_FILE);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            logger.error("Cannot create ingest journal directory {}", dir, e);
+        }
+    }
+
+    /**
+     * @return {@code false} if the message could not be written, so the caller can fall back to blocking.
+     */
+    public synchronized boolean append(InboundEvent event) {
+        String line = event.getKind().name() + '\t' + event.getTopic() + '\t'
+                + Base64.getEncoder().encodeToString(event.getPayload()) + '\n';
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line);
+            // Handed to the OS right away, so the line survives the process
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to append {} message to ingest journal", event.getKind(), e);
+            closeWriter();
+            return false;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return !Files.exists(journalFile) && !Files.exists(replayFile);
+    }
+
+    /**
+     * Moves the current journal aside and hands every entry to {@code sink}. Anything the
+     * sink spills again lands in a fresh journal file, so a replay never reads its own output.
+     * A replay file left by an earlier replay is finished first, from its recorded position.
+     */
+    public void replay(Consumer<InboundEvent> sink) {
+        synchronized (this) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(journalFile)) {
+                        return;
+                    }
+                    // Appends after the move go to a new journal file
+                    closeWriter();
+                    Files.move(journalFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                    Files.deleteIfExists(positionFile);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to rotate ingest journal for replay", e);
+                return;
+            }
+        }
+
+        long position = readPosition();
+        long line = 0;
+        long handedOff = position;
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (line <= position) {
+                    continue;
+                }
+                InboundEvent event = parseLine(text);
+                if (event != null) {
+                    event.markReplayed();
+                    sink.accept(event);
+                    replayed++;
+                }
+                handedOff = line;
+                if (line % POSITION_INTERVAL == 0) {
+                    writePosition(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The next replay resumes after the last line handed off
+            logger.error("Failed to replay ingest journal after {} messages", replayed, e);
+            savePosition(handedOff);
+            return;
+        }
+        try {
+            Files.delete(replayFile);
+            Files.deleteIfExists(positionFile);
+        } catch (IOException e) {
+            logger.error("Failed to remove replayed ingest journal", e);
+            savePosition(handedOff);
+            return;
+        }
+        logger.info("Replayed {} spilled MQTT messages from the ingest journal", replayed);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    private static InboundEvent parseLine(String text) {
+        String[] parts = text.split("\t", 3);
+        try {
+            if (parts.length == 3) {
+                return new InboundEvent(InboundEvent.Kind.valueOf(parts[0]), parts[1], Base64.getDecoder().decode(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // reported below
+        }
+        logger.warn("Skipping malformed ingest journal line");
+        return null;
+    }
+
+    private long readPosition() {
+        try {
+            return Files.exists(positionFile) ? Long.parseLong(Files.readString(positionFile).trim()) : 0;
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Cannot read ingest journal replay position, replaying from the start: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // Written to a temporary file and moved over the old one, so a crash never leaves a torn position
+    private void writePosition(long line) throws IOException {
+        Path temp = positionFile.resolveSibling(POSITION_FILE + ".tmp");
+        Files.writeString(temp, Long.toString(line), StandardCharsets.UTF_8);
+        Files.move(temp, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void savePosition(long line) {
+        try {
+            writePosition(line);
+        } catch (IOException e) {
+            logger.error("Failed to record ingest journal replay position {}", line, e);
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close ingest journal: {}", e.getMessage());
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,122 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bounded stages every inbound MQTT message flows through:
+ * parse &rarr; resolve device &rarr; persist, followed by enrich for notifications with media.
+ * Enrichment runs after the notification is stored so a slow AI call never delays the alert.
+ * <p>
+ * With per-device ordering on, parse runs on a single worker (so the broker's delivery order is
+ * kept) and resolve/persist are striped by hardwareId, so a lock's "opened" can never be stored
+ * after its later "locked". Enrich only patches already stored rows and stays unordered.
+ * <p>
+ * Every stage also schedules by {@link EventPriority}, so an unauthorized-entry alert overtakes
+ * queued motion clips everywhere, including media analysis in the enrich stage.
+ * <p>
+ * The stages only provide queues, workers and overflow handling; the work done in each
+ * step lives in {@link ro.faur.apollo.notification.service.MqttService}.
+ */
+@Component
+public class IngestPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+
+    private final IngestJournal journal;
+    private final IngestStage parse;
+    private final IngestStage resolve;
+    private final IngestStage enrich;
+    private final IngestStage persist;
+
+    public IngestPipeline(IngestJournal journal,
+                          PriorityLanes priorityLanes,
+                          MeterRegistry meterRegistry,
+                          @Value("${mqtt.ingest.overflow-policy}") OverflowPolicy overflowPolicy,
+                          @Value("${mqtt.ingest.per-device-ordering}") boolean perDeviceOrdering,
+                          @Value("${mqtt.ingest.parse.workers}") int parseWorkers,
+                          @Value("${mqtt.ingest.parse.queue-capacity}") int parseCapacity,
+                          @Value("${mqtt.ingest.resolve.workers}") int resolveWorkers,
+                          @Value("${mqtt.ingest.resolve.queue-capacity}") int resolveCapacity,
+                          @Value("${mqtt.ingest.enrich.workers}") int enrichWorkers,
+                          @Value("${mqtt.ingest.enrich.queue-capacity}") int enrichCapacity,
+                          @Value("${mqtt.ingest.persist.workers}") int persistWorkers,
+                          @Value("${mqtt.ingest.persist.queue-capacity}") int persistCapacity) {
+        this.journal = journal;
+        if (perDeviceOrdering && parseWorkers > 1) {
+            logger.info("Per-device ordering is on, running the parse stage on 1 worker instead of {}", parseWorkers);
+            parseWorkers = 1;
+        }
+        this.parse = new IngestStage("parse", parseWorkers, parseCapacity, false,
+                overflowPolicy, priorityLanes, journal, meterRegistry);
+        this.resolve = new IngestStage("resolve", resolveWorkers, resolveCapacity, perDeviceOrdering,
+                overflowPolicy, priorityLanes, journal, meterRegistry);
+        this.enrich = new IngestStage("enrich", enrichWorkers, enrichCapacity, false,
+                overflowPolicy, priorityLanes, journal, meterRegistry);
+        this.persist = new IngestStage("persist", persistWorkers, persistCapacity, perDeviceOrdering,
+                overflowPolicy, priorityLanes, journal, meterRegistry);
+    }
+
+    public IngestStage parse() {
+        return parse;
+    }
+
+    public IngestStage resolve() {
+        return resolve;
+    }
+
+    public IngestStage enrich() {
+        return enrich;
+    }
+
+    public IngestStage persist() {
+        return persist;
+    }
+
+    public IngestJournal journal() {
+        return journal;
+    }
+
+    /**
+     * Drains the stages in pipeline order, so each one is closed only after everything upstream
+     * has finished, all within {@code timeoutMillis}. Events left in parse, resolve or persist are
+     * written to the journal as raw messages and go through the whole pipeline again after the next
+     * start. So are events still running there at the deadline, unless persist has already handed
+     * them to the {@link ro.faur.apollo.notification.service.NotificationBatchWriter}, which flushes
+     * its queue when it is stopped after this service.
+     *
+     * @return notifications still waiting for enrichment; they are already stored, so replaying
+     * them would duplicate the alert and the caller settles their placeholder message instead
+     */
+    public List<InboundEvent> drain(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int spilled = 0;
+        int lost = 0;
+        for (IngestStage stage : List.of(parse, resolve, persist)) {
+            for (InboundEvent event : stage.drain(deadline)) {
+                if (!event.claim()) {
+                    // Already journaled upstream, or its notification is already with the writer
+                    continue;
+                }
+                if (journal.append(event)) {
+                    spilled++;
+                } else {
+                    lost++;
+                }
+            }
+        }
+        List<InboundEvent> unenriched = enrich.drain(deadline);
+        if (lost > 0) {
+            logger.error("Ingest drain lost {} messages that could not be written to the journal", lost);
+        }
+        logger.info("Ingest pipeline drained, {} messages spilled to the journal, {} left without media analysis",
+                spilled, unenriched.size());
+        return unenriched;
+    }
+}
@@ -0,0 +1,298 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * One step of the MQTT ingest pipeline: a fixed set of workers draining a bounded queue.
+ * When the queue is full the stage applies its {@link OverflowPolicy} instead of growing.
+ * <p>
+ * A striped stage gives every worker its own lane (a single thread with its own queue) and
+ * routes events by hardwareId, so events from one device run in arrival order while
+ * different devices still run in parallel.
+ * <p>
+ * With {@link PriorityLanes} on, every queue is a {@link PriorityLaneQueue}: critical events are
+ * taken ahead of bulk ones by weight, and per-device order then holds within a priority only.
+ */
+public class IngestStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestStage.class);
+    private static final long RUNNING_TASK_GRACE_MS = 2000;
+
+    private final String name;
+    private final OverflowPolicy overflowPolicy;
+    private final IngestJournal journal;
+    private final ThreadPoolExecutor[] lanes;
+    private final Set<InboundEvent> running = ConcurrentHashMap.newKeySet();
+    private final Counter shedCounter;
+    private final Counter spilledCounter;
+    private final Counter completedCounter;
+    private final Map<EventPriority, Timer> latencyTimers = new EnumMap<>(EventPriority.class);
+    private final PriorityLanes priorityLanes;
+
+    public IngestStage(String name, int workers, int queueCapacity, OverflowPolicy overflowPolicy,
+                       IngestJournal journal, MeterRegistry meterRegistry) {
+        this(name, workers, queueCapacity, false, overflowPolicy, null, journal, meterRegistry);
+    }
+
+    /**
+     * @param striped       if {@code true}, each worker gets its own lane and a {@code queueCapacity / workers}
+     *                      share of the queue; events are routed to lanes by hardwareId
+     * @param priorityLanes scheduling settings, or {@code null} for plain FIFO queues; each priority then
+     *                      gets a queue of the full capacity
+     */
+    public IngestStage(String name, int workers, int queueCapacity, boolean striped, OverflowPolicy overflowPolicy,
+                       PriorityLanes priorityLanes, IngestJournal journal, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.journal = journal;
+        this.priorityLanes = priorityLanes != null && priorityLanes.isEnabled() ? priorityLanes : null;
+        ThreadFactory threadFactory = threadFactory(name);
+        if (striped) {
+            int laneCapacity = Math.max(1, queueCapacity / workers);
+            this.lanes = new ThreadPoolExecutor[workers];
+            for (int i = 0; i < workers; i++) {
+                lanes[i] = newExecutor(1, laneCapacity, threadFactory);
+            }
+        } else {
+            this.lanes = new ThreadPoolExecutor[]{newExecutor(workers, queueCapacity, threadFactory)};
+        }
+
+        for (EventPriority priority : EventPriority.values()) {
+            Timer.Builder latency = Timer.builder("mqtt.ingest.latency")
+                    .tag("stage", name)
+                    .tag("priority", priority.name())
+                    .description("Time from receiving an event until it finished this stage")
+                    .publishPercentiles(0.5, 0.99);
+            if (priorityLanes != null) {
+                latency.serviceLevelObjectives(priorityLanes.getCriticalLatencyTarget());
+            }
+            latencyTimers.put(priority, latency.register(meterRegistry));
+            if (this.priorityLanes != null) {
+                Gauge.builder("mqtt.ingest.lane.depth", this, stage -> stage.laneDepth(priority))
+                        .tag("stage", name)
+                        .tag("priority", priority.name())
+                        .description("Events of this priority waiting in the stage queue")
+                        .register(meterRegistry);
+            }
+        }
+
+        Gauge.builder("mqtt.ingest.queue.depth", this, IngestStage::queueDepth)
+                .tag("stage", name)
+                .description("Events waiting in the stage queue")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.ingest.queue.capacity", this, IngestStage::queueCapacity)
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("mqtt.ingest.workers.active", this,
+                        stage -> Arrays.stream(stage.lanes).mapToInt(ThreadPoolExecutor::getActiveCount).sum())
+                .tag("stage", name)
+                .register(meterRegistry);
+        this.shedCounter = Counter.builder("mqtt.ingest.shed")
+                .tag("stage", name)
+                .description("Low-priority events dropped because the stage queue was full")
+                .register(meterRegistry);
+        this.spilledCounter = Counter.builder("mqtt.ingest.spilled")
+                .tag("stage", name)
+                .description("Events written to the ingest journal because the stage queue was full")
+                .register(meterRegistry);
+        this.completedCounter = Counter.builder("mqtt.ingest.completed")
+                .tag("stage", name)
+                .description("Events that finished this stage")
+                .register(meterRegistry);
+    }
+
+    public void submit(InboundEvent event, Consumer<InboundEvent> step) {
+        ThreadPoolExecutor lane = laneFor(event);
+        lane.execute(new StageTask(event, step, lane));
+    }
+
+    /**
+     * Queues the event only if there is room right now, bypassing the overflow policy.
+     *
+     * @return {@code false} if the queue was full or the stage is shut down
+     */
+    public boolean trySubmit(InboundEvent event, Consumer<InboundEvent> step) {
+        ThreadPoolExecutor lane = laneFor(event);
+        return !lane.isShutdown() && lane.getQueue().offer(new StageTask(event, step, lane));
+    }
+
+    /**
+     * @return {@code true} while less than half of the queue is in use.
+     */
+    public boolean hasHeadroom() {
+        int depth = queueDepth();
+        return depth < queueCapacity() - depth;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    /**
+     * Stops taking new events and lets the workers finish the queue, returning by
+     * {@code deadlineNanos} ({@link System#nanoTime()} based). The last part of that time, at most
+     * {@value #RUNNING_TASK_GRACE_MS} ms, is kept as a grace period for the events already running;
+     * events still queued when it starts are taken out unprocessed. Running events are never
+     * interrupted; those still running at the deadline are returned as well, since the process
+     * may exit before they finish. {@link InboundEvent#claim()} settles which side keeps them.
+     *
+     * @return the events that were not processed, or may not finish
+     */
+    public List<InboundEvent> drain(long deadlineNanos) throws InterruptedException {
+        shutdown();
+        long budget = Math.max(deadlineNanos - System.nanoTime(), 0);
+        long queueDeadline = deadlineNanos - Math.min(TimeUnit.MILLISECONDS.toNanos(RUNNING_TASK_GRACE_MS), budget / 4);
+        List<ThreadPoolExecutor> unfinished = new ArrayList<>();
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(Math.max(queueDeadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                unfinished.add(lane);
+            }
+        }
+        List<InboundEvent> remaining = new ArrayList<>();
+        for (ThreadPoolExecutor lane : unfinished) {
+            List<Runnable> queued = new ArrayList<>();
+            lane.getQueue().drainTo(queued);
+            for (Runnable runnable : queued) {
+                remaining.add(((StageTask) runnable).event);
+            }
+        }
+        // One grace period shared by all lanes, ending at the deadline
+        for (ThreadPoolExecutor lane : unfinished) {
+            if (!lane.awaitTermination(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                List<InboundEvent> stillRunning = new ArrayList<>(running);
+                logger.warn("Ingest stage {} still has {} running events after the drain deadline", name, stillRunning.size());
+                remaining.addAll(stillRunning);
+                break;
+            }
+        }
+        return remaining;
+    }
+
+    private ThreadPoolExecutor laneFor(InboundEvent event) {
+        if (lanes.length == 1 || event.getHardwareId() == null) {
+            return lanes[0];
+        }
+        int hash = event.getHardwareId().hashCode();
+        return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+    }
+
+    private int laneDepth(EventPriority priority) {
+        return Arrays.stream(lanes).mapToInt(lane -> ((PriorityLaneQueue) lane.getQueue()).laneSize(priority)).sum();
+    }
+
+    private int queueDepth() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.getQueue().size()).sum();
+    }
+
+    private int queueCapacity() {
+        return Arrays.stream(lanes)
+                .mapToInt(lane -> lane.getQueue().size() + lane.getQueue().remainingCapacity())
+                .sum();
+    }
+
+    private ThreadPoolExecutor newExecutor(int workers, int queueCapacity, ThreadFactory threadFactory) {
+        BlockingQueue<Runnable> queue = priorityLanes != null
+                ? priorityLanes.newQueue(workers, queueCapacity, runnable -> ((StageTask) runnable).event.getPriority())
+                : new ArrayBlockingQueue<>(queueCapacity);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                queue, threadFactory, this::onOverflow);
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+
+    private void onOverflow(Runnable runnable, ThreadPoolExecutor pool) {
+        InboundEvent event = ((StageTask) runnable).event;
+        if (pool.isShutdown()) {
+            // Submitted by an upstream worker while draining: keep it for the next start, unless the
+            // drain already journaled it because that worker was still running at the deadline
+            if (!event.claim()) {
+                return;
+            }
+            if (journal.append(event)) {
+                spilledCounter.increment();
+            } else {
+                logger.warn("Ingest stage {} is shut down, dropping {} message", name, event.getKind());
+            }
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.SHED && event.isSheddable()) {
+            shedCounter.increment();
+            logger.debug("Ingest stage {} is full, shedding {} message from {}", name, event.getKind(), event.getHardwareId());
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.SPILL && journal.append(event)) {
+            spilledCounter.increment();
+            return;
+        }
+
+        try {
+            pool.getQueue().put(runnable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for room in ingest stage {}, dropping {} message", name, event.getKind());
+        }
+    }
+
+    private static ThreadFactory threadFactory(String stageName) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "mqtt-" + stageName + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class StageTask implements Runnable {
+        private final InboundEvent event;
+        private final Consumer<InboundEvent> step;
+        private final ThreadPoolExecutor lane;
+
+        private StageTask(InboundEvent event, Consumer<InboundEvent> step, ThreadPoolExecutor lane) {
+            this.event = event;
+            this.step = step;
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            running.add(event);
+            try {
+                step.accept(event);
+            } finally {
+                running.remove(event);
+                if (lane.getQueue() instanceof PriorityLaneQueue priorityQueue) {
+                    priorityQueue.release(event.getPriority());
+                }
+            }
+            completedCounter.increment();
+            latencyTimers.get(event.getPriority()).record(System.nanoTime() - event.getReceivedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.dto.mqtt.CommandAckMessage;
+import ro.faur.apollo.notification.dto.mqtt.EnrollStatusMessage;
+import ro.faur.apollo.notification.dto.mqtt.HelloMessage;
+import ro.faur.apollo.notification.dto.mqtt.NotificationMessage;
+
+import java.io.IOException;
+
+/**
+ * Decodes device payloads straight from the MQTT message bytes. One {@link ObjectReader} per
+ * message type is built up front, so decoding skips the per-call deserializer lookup of
+ * {@code ObjectMapper.readValue} and no intermediate {@code String} of the payload is made.
+ */
+@Component
+public class MqttPayloadCodec {
+
+    private final ObjectReader helloReader;
+    private final ObjectReader notificationReader;
+    private final ObjectReader enrollStatusReader;
+    private final ObjectReader commandAckReader;
+
+    public MqttPayloadCodec(ObjectMapper objectMapper) {
+        this.helloReader = objectMapper.readerFor(HelloMessage.class);
+        this.notificationReader = objectMapper.readerFor(NotificationMessage.class);
+        this.enrollStatusReader = objectMapper.readerFor(EnrollStatusMessage.class);
+        this.commandAckReader = objectMapper.readerFor(CommandAckMessage.class);
+    }
+
+    public HelloMessage readHello(byte[] payload) throws IOException {
+        return helloReader.readValue(payload);
+    }
+
+    public NotificationMessage readNotification(byte[] payload) throws IOException {
+        return notificationReader.readValue(payload);
+    }
+
+    public EnrollStatusMessage readEnrollStatus(byte[] payload) throws IOException {
+        return enrollStatusReader.readValue(payload);
+    }
+
+    public CommandAckMessage readCommandAck(byte[] payload) throws IOException {
+        return commandAckReader.readValue(payload);
+    }
+}
@@ -0,0 +1,21 @@
+package ro.faur.apollo.notification.service.ingest;
+
+/**
+ * How inbound device topics are split between notification-service replicas.
+ */
+public enum MqttScalingMode {
+    /**
+     * Plain subscriptions. Only safe with a single replica: every replica gets every message.
+     */
+    SINGLE,
+    /**
+     * {@code $share/<group>/...} subscriptions, so the broker hands each message to one replica
+     * of the group. Needs a broker that supports shared subscriptions (Mosquitto 1.6+, EMQX, HiveMQ).
+     */
+    SHARED_SUBSCRIPTION,
+    /**
+     * Fallback for brokers without shared subscriptions: every replica receives every message and
+     * keeps only the hardware IDs that map to it on a consistent-hash ring.
+     */
+    HASH_PARTITION
+}
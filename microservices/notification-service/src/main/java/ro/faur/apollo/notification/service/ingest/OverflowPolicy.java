@@ -0,0 +1,19 @@
+package ro.faur.apollo.notification.service.ingest;
+
+/**
+ * What an ingest stage does when its bounded queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Block the submitting thread (ultimately the Paho callback) until there is room.
+     */
+    BLOCK,
+    /**
+     * Drop low-priority events (hellos, motion, misc) and block for everything else.
+     */
+    SHED,
+    /**
+     * Append the raw message to the local ingest journal and replay it once the stage has room.
+     */
+    SPILL
+}
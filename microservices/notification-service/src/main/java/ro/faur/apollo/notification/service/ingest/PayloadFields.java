@@ -0,0 +1,50 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads single top-level string fields straight from a raw JSON payload, for decisions that have
+ * to be made on the MQTT callback thread before the message is parsed. Values with escape
+ * sequences are not expected in these fields and are returned up to the first quote.
+ */
+public final class PayloadFields {
+
+    private PayloadFields() {
+    }
+
+    /**
+     * @return the value of {@code "key": "<value>"}, or {@code null} if absent or not a string
+     */
+    public static String stringField(byte[] payload, String key) {
+        byte[] quotedKey = ('"' + key + '"').getBytes(StandardCharsets.UTF_8);
+        int found = indexOf(payload, quotedKey);
+        if (found < 0) {
+            return null;
+        }
+        int i = found + quotedKey.length;
+        while (i < payload.length && (payload[i] == ':' || Character.isWhitespace(payload[i]))) {
+            i++;
+        }
+        if (i >= payload.length || payload[i] != '"') {
+            return null;
+        }
+        int start = ++i;
+        while (i < payload.length && payload[i] != '"') {
+            i++;
+        }
+        return i < payload.length ? new String(payload, start, i - start, StandardCharsets.UTF_8) : null;
+    }
+
+    private static int indexOf(byte[] payload, byte[] needle) {
+        outer:
+        for (int i = 0; i <= payload.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (payload[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
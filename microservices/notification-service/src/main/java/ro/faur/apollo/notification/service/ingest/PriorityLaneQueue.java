@@ -0,0 +1,306 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Work queue for an ingest stage's executor with one bounded lane per {@link EventPriority}.
+ * <p>
+ * Workers take from the lanes by smooth weighted round robin: under load each lane gets a share of
+ * the takes proportional to its weight, and a lane with nothing queued gives its share to the others.
+ * A lane can also be capped at a number of concurrently running tasks. A worker then leaves that
+ * lane's events queued rather than letting, say, slow motion clips occupy every worker. The stage
+ * must call {@link #release(EventPriority)} when a task taken from this queue finishes.
+ * <p>
+ * FIFO order holds within a lane only; a higher-priority event may overtake an earlier one.
+ */
+public class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final EventPriority[] PRIORITIES = EventPriority.values();
+
+    private final Function<Runnable, EventPriority> priorityOf;
+    private final ArrayDeque<Runnable>[] lanes;
+    private final int laneCapacity;
+    private final int[] weight;
+    private final int[] maxActive;
+    private final int[] active;
+    private final int[] currentWeight;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int count;
+
+    /**
+     * @param laneCapacity capacity of each lane
+     * @param weights      scheduling weight per priority, indexed by ordinal
+     * @param maxActive    cap on concurrently running tasks per priority, indexed by ordinal
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityLaneQueue(int laneCapacity, int[] weights, int[] maxActive,
+                             Function<Runnable, EventPriority> priorityOf) {
+        this.priorityOf = priorityOf;
+        this.lanes = new ArrayDeque[PRIORITIES.length];
+        this.laneCapacity = laneCapacity;
+        this.weight = weights.clone();
+        this.maxActive = maxActive.clone();
+        this.active = new int[PRIORITIES.length];
+        this.currentWeight = new int[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Marks a task of the given priority taken from this queue as finished, freeing its slot.
+     */
+    public void release(EventPriority priority) {
+        lock.lock();
+        try {
+            int lane = priority.ordinal();
+            if (active[lane] > 0) {
+                active[lane]--;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int laneSize(EventPriority priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        int lane = priorityOf.apply(task).ordinal();
+        lock.lock();
+        try {
+            if (lanes[lane].size() >= laneCapacity) {
+                return false;
+            }
+            enqueue(lane, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        int lane = priorityOf.apply(task).ordinal();
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (lanes[lane].size() >= laneCapacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(lane, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        int lane = priorityOf.apply(task).ordinal();
+        lock.lockInterruptibly();
+        try {
+            while (lanes[lane].size() >= laneCapacity) {
+                notFull.await();
+            }
+            enqueue(lane, task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                notEmpty.await();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes) {
+                if (!lane.isEmpty()) {
+                    return lane.peekFirst();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            int remaining = 0;
+            for (ArrayDeque<Runnable> lane : lanes) {
+                remaining += laneCapacity - lane.size();
+            }
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes queued tasks highest priority first, ignoring weights and concurrency caps.
+     */
+    @Override
+    public int drainTo(Collection<? super Runnable> target, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            for (ArrayDeque<Runnable> lane : lanes) {
+                while (drained < maxElements && !lane.isEmpty()) {
+                    target.add(lane.pollFirst());
+                    drained++;
+                }
+            }
+            count -= drained;
+            if (drained > 0) {
+                notFull.signalAll();
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes) {
+                if (lane.remove(task)) {
+                    count--;
+                    notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            // Snapshot for reporting; the executor removes tasks through remove(Object)
+            List<Runnable> snapshot = new ArrayList<>(count);
+            for (ArrayDeque<Runnable> lane : lanes) {
+                snapshot.addAll(lane);
+            }
+            return snapshot.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(int lane, Runnable task) {
+        lanes[lane].addLast(task);
+        count++;
+        notEmpty.signal();
+    }
+
+    // Smooth weighted round robin over lanes that have work and a free concurrency slot
+    private Runnable dequeue() {
+        int chosen = -1;
+        int totalWeight = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            if (lanes[i].isEmpty() || active[i] >= maxActive[i]) {
+                continue;
+            }
+            currentWeight[i] += weight[i];
+            totalWeight += weight[i];
+            if (chosen < 0 || currentWeight[i] > currentWeight[chosen]) {
+                chosen = i;
+            }
+        }
+        if (chosen < 0) {
+            return null;
+        }
+        currentWeight[chosen] -= totalWeight;
+        active[chosen]++;
+        count--;
+        notFull.signalAll();
+        return lanes[chosen].pollFirst();
+    }
+}
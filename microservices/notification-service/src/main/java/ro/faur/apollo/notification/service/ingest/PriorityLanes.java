@@ -0,0 +1,57 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Scheduling settings shared by the ingest stages when priority lanes are on: the weight of each
+ * {@link EventPriority} and the share of a stage's workers it may occupy at once.
+ */
+@Component
+public class PriorityLanes {
+
+    private final boolean enabled;
+    private final int[] weights;
+    private final double[] maxShares;
+    private final Duration criticalLatencyTarget;
+
+    public PriorityLanes(@Value("${mqtt.ingest.priority.enabled}") boolean enabled,
+                         @Value("${mqtt.ingest.priority.critical.weight}") int criticalWeight,
+                         @Value("${mqtt.ingest.priority.normal.weight}") int normalWeight,
+                         @Value("${mqtt.ingest.priority.bulk.weight}") int bulkWeight,
+                         @Value("${mqtt.ingest.priority.critical.max-share}") double criticalMaxShare,
+                         @Value("${mqtt.ingest.priority.normal.max-share}") double normalMaxShare,
+                         @Value("${mqtt.ingest.priority.bulk.max-share}") double bulkMaxShare,
+                         @Value("${mqtt.ingest.priority.critical.latency-target-ms}") long criticalLatencyTargetMs) {
+        this.enabled = enabled;
+        this.weights = new int[]{criticalWeight, normalWeight, bulkWeight};
+        this.maxShares = new double[]{criticalMaxShare, normalMaxShare, bulkMaxShare};
+        this.criticalLatencyTarget = Duration.ofMillis(criticalLatencyTargetMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Target for the time from receiving a critical event to finishing a stage, exported as a
+     * service level objective bucket on the lane latency timers.
+     */
+    public Duration getCriticalLatencyTarget() {
+        return criticalLatencyTarget;
+    }
+
+    /**
+     * @return a queue for an executor with {@code workers} threads, each lane holding up to {@code laneCapacity} events
+     */
+    PriorityLaneQueue newQueue(int workers, int laneCapacity, Function<Runnable, EventPriority> priorityOf) {
+        int[] maxActive = new int[maxShares.length];
+        for (int i = 0; i < maxShares.length; i++) {
+            maxActive[i] = Math.max(1, (int) Math.ceil(workers * maxShares[i]));
+        }
+        return new PriorityLaneQueue(laneCapacity, weights, maxActive, priorityOf);
+    }
+}
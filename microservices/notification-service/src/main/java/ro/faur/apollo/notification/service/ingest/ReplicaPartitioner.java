@@ -0,0 +1,98 @@
+package ro.faur.apollo.notification.service.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring over the notification-service replicas, used in
+ * {@link MqttScalingMode#HASH_PARTITION} mode to decide which replica handles a device.
+ * <p>
+ * Replicas are identified by their index ({@code 0..replica-count-1}). When not configured
+ * explicitly the index is taken from the trailing ordinal of the host name, which is what a
+ * StatefulSet gives its pods. Resizing only moves the devices of the added or removed replica.
+ */
+@Component
+public class ReplicaPartitioner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaPartitioner.class);
+    private static final int VIRTUAL_NODES_PER_REPLICA = 128;
+
+    private final boolean enabled;
+    private final int replicaIndex;
+    private final NavigableMap<Long, Integer> ring = new TreeMap<>();
+
+    public ReplicaPartitioner(@Value("${mqtt.scaling.mode}") MqttScalingMode scalingMode,
+                              @Value("${mqtt.scaling.replica-count}") int replicaCount,
+                              @Value("${mqtt.scaling.replica-index:}") String replicaIndex,
+                              @Value("${HOSTNAME:}") String hostname) {
+        this.enabled = scalingMode == MqttScalingMode.HASH_PARTITION && replicaCount > 1;
+        this.replicaIndex = enabled ? resolveReplicaIndex(replicaIndex, hostname, replicaCount) : 0;
+
+        if (enabled) {
+            for (int replica = 0; replica < replicaCount; replica++) {
+                for (int vnode = 0; vnode < VIRTUAL_NODES_PER_REPLICA; vnode++) {
+                    ring.put(hash("replica-" + replica + "#" + vnode), replica);
+                }
+            }
+            logger.info("Hash partitioning enabled: replica {} of {}", this.replicaIndex, replicaCount);
+        }
+    }
+
+    /**
+     * @return whether this replica is responsible for messages from the given device.
+     */
+    public boolean owns(String hardwareId) {
+        if (!enabled) {
+            return true;
+        }
+        Map.Entry<Long, Integer> owner = ring.ceilingEntry(hash(hardwareId));
+        if (owner == null) {
+            owner = ring.firstEntry();
+        }
+        return owner.getValue() == replicaIndex;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static int resolveReplicaIndex(String configured, String hostname, int replicaCount) {
+        String candidate = configured;
+        if (candidate == null || candidate.isBlank()) {
+            int dash = hostname.lastIndexOf('-');
+            candidate = dash >= 0 ? hostname.substring(dash + 1) : "";
+        }
+        try {
+            int index = Integer.parseInt(candidate.trim());
+            if (index >= 0 && index < replicaCount) {
+                return index;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalStateException("Cannot determine replica index for hash partitioning from '"
+                + candidate + "'; set mqtt.scaling.replica-index to a value between 0 and " + (replicaCount - 1));
+    }
+
+    // 64-bit FNV-1a followed by the murmur3 finalizer, stable across JVMs and restarts
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
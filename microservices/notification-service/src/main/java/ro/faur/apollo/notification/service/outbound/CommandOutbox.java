@@ -0,0 +1,279 @@
+package ro.faur.apollo.notification.service.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.domain.OutboxCommand;
+import ro.faur.apollo.notification.repository.OutboxCommandRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable outbox for device commands. Commands are stored in {@code command_outbox} first and a
+ * single drain thread publishes them in order whenever the broker connection is up, so commands
+ * issued while MQTT is down, or still unpublished when the service restarts, go out once the
+ * connection returns. A row is deleted when the broker acknowledges its publish.
+ * <p>
+ * The drain claims a batch, publishes it and waits for the batch to be acknowledged before
+ * claiming the next one, so newer commands never overtake older ones. If part of a batch is not
+ * delivered its claims are released right away and the next drain starts again from the oldest.
+ * <p>
+ * Every command has a TTL: expired rows are deleted without being published, so a stale unlock is
+ * never replayed. The drain is capped at {@code mqtt.outbox.max-drain-per-second} so a reconnect
+ * after a long outage does not hit the broker with the whole backlog at once.
+ */
+@Component
+public class CommandOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandOutbox.class);
+    private static final long BACKLOG_REFRESH_MS = 5000;
+
+    private final OutboxCommandRepository outboxCommandRepository;
+    private final OutboundPublisher outboundPublisher;
+    private final int batchSize;
+    private final long claimLeaseMillis;
+    private final long pollIntervalMillis;
+    private final long drainIntervalNanos;
+    // Roughly time-ordered across restarts, strictly increasing within this process
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final Queue<String> published = new ConcurrentLinkedQueue<>();
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final Thread drainer;
+    private final Counter drainedCounter;
+    private final Counter expiredCounter;
+    private final DistributionSummary burstSummary;
+
+    private volatile boolean running = true;
+    private volatile long backlog;
+    private long lastBacklogRefresh;
+
+    public CommandOutbox(OutboxCommandRepository outboxCommandRepository,
+                         OutboundPublisher outboundPublisher,
+                         MeterRegistry meterRegistry,
+                         @Value("${mqtt.outbox.batch-size}") int batchSize,
+                         @Value("${mqtt.outbox.claim-lease-ms}") long claimLeaseMillis,
+                         @Value("${mqtt.outbox.poll-interval-ms}") long pollIntervalMillis,
+                         @Value("${mqtt.outbox.max-drain-per-second}") int maxDrainPerSecond) {
+        this.outboxCommandRepository = outboxCommandRepository;
+        this.outboundPublisher = outboundPublisher;
+        this.batchSize = batchSize;
+        this.claimLeaseMillis = claimLeaseMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.drainIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxDrainPerSecond;
+        this.drainer = new Thread(this::runDrainer, "command-outbox");
+        this.drainer.setDaemon(true);
+
+        Gauge.builder("mqtt.outbox.backlog", this, outbox -> outbox.backlog)
+                .description("Commands stored in the outbox and not yet acknowledged by the broker")
+                .register(meterRegistry);
+        this.drainedCounter = Counter.builder("mqtt.outbox.drained")
+                .description("Outbox commands acknowledged by the broker")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("mqtt.outbox.expired")
+                .description("Outbox commands discarded because their TTL passed before they could be published")
+                .register(meterRegistry);
+        this.burstSummary = DistributionSummary.builder("mqtt.outbox.drain.throughput")
+                .description("Commands per second published while draining a backlog")
+                .baseUnit("commands/s")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        drainer.start();
+    }
+
+    /**
+     * Stores a command for publishing within {@code ttlMillis}.
+     *
+     * @return {@code false} if the command could not be stored
+     */
+    public boolean enqueue(String topic, byte[] payload, int qos, String commandId, long ttlMillis) {
+        try {
+            outboxCommandRepository.save(new OutboxCommand(sequence.incrementAndGet(), topic,
+                    new String(payload, StandardCharsets.UTF_8), qos, commandId,
+                    LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(ttlMillis))));
+        } catch (Exception e) {
+            logger.error("Failed to store command for {} in the outbox", topic, e);
+            return false;
+        }
+        wakeUp.release();
+        return true;
+    }
+
+    private void runDrainer() {
+        while (running) {
+            try {
+                wakeUp.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                wakeUp.drainPermits();
+                deletePublished();
+                if (!outboundPublisher.isConnected()) {
+                    continue;
+                }
+                drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Error draining command outbox", e);
+            }
+        }
+    }
+
+    private void drain() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        int expired = outboxCommandRepository.deleteExpired(now);
+        if (expired > 0) {
+            expiredCounter.increment(expired);
+            logger.warn("Discarded {} expired commands from the outbox", expired);
+        }
+        refreshBacklog();
+
+        long burstStart = System.nanoTime();
+        int burstCount = 0;
+        List<OutboxCommand> batch;
+        do {
+            batch = new ArrayList<>(outboxCommandRepository.claimBatch(now, leaseEnd(), batchSize));
+            batch.sort(Comparator.comparingLong(OutboxCommand::getSequence));
+            Map<String, CompletableFuture<Void>> deliveries = new LinkedHashMap<>();
+            for (OutboxCommand command : batch) {
+                long sendAt = burstStart + burstCount * drainIntervalNanos;
+                long wait = sendAt - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                CompletableFuture<Void> delivery = publish(command);
+                if (delivery.isCompletedExceptionally()) {
+                    // Publisher full or disconnected: this command and the rest of the batch wait for the next drain
+                    break;
+                }
+                deliveries.put(command.getUuid(), delivery);
+                burstCount++;
+            }
+            boolean allDelivered = awaitDeliveries(batch, deliveries);
+            deletePublished();
+            if (!allDelivered) {
+                return;
+            }
+            now = LocalDateTime.now();
+        } while (batch.size() == batchSize && running);
+
+        if (burstCount > batchSize) {
+            double perSecond = burstCount / ((System.nanoTime() - burstStart) / 1e9);
+            burstSummary.record(perSecond);
+            logger.info("Drained {} outbox commands at {} commands/s", burstCount, Math.round(perSecond));
+        } else if (burstCount > 0) {
+            burstSummary.record(burstCount / Math.max((System.nanoTime() - burstStart) / 1e9, 1.0));
+        }
+    }
+
+    /**
+     * Waits until every published command of the batch is acknowledged or has failed, renewing the
+     * claims meanwhile so a slow acknowledgement never lets another drain publish the row again.
+     * The claims of commands that were not sent or failed are then released, so the next drain
+     * starts from the oldest of them and the outbox keeps its order.
+     *
+     * @return whether the whole batch was delivered
+     */
+    private boolean awaitDeliveries(List<OutboxCommand> batch, Map<String, CompletableFuture<Void>> deliveries)
+            throws InterruptedException {
+        CompletableFuture<Void> settled = CompletableFuture.allOf(deliveries.values().stream()
+                .map(delivery -> delivery.handle((ignored, error) -> null))
+                .toArray(CompletableFuture[]::new));
+        while (true) {
+            try {
+                settled.get(claimLeaseMillis / 3, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                if (!running) {
+                    // Shutting down: the claims lapse and whatever is unacknowledged is published again after the lease
+                    return false;
+                }
+                List<String> pending = deliveries.entrySet().stream()
+                        .filter(entry -> !entry.getValue().isDone())
+                        .map(Map.Entry::getKey)
+                        .toList();
+                outboxCommandRepository.renewClaims(pending, leaseEnd());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Settled delivery failed", e);
+            }
+        }
+
+        List<String> undelivered = new ArrayList<>();
+        for (OutboxCommand command : batch) {
+            CompletableFuture<Void> delivery = deliveries.get(command.getUuid());
+            if (delivery == null || delivery.isCompletedExceptionally()) {
+                undelivered.add(command.getUuid());
+            }
+        }
+        if (undelivered.isEmpty()) {
+            return true;
+        }
+        outboxCommandRepository.releaseClaims(undelivered);
+        logger.warn("{} of {} outbox commands were not delivered; retrying them in order on the next drain",
+                undelivered.size(), batch.size());
+        return false;
+    }
+
+    private LocalDateTime leaseEnd() {
+        return LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(claimLeaseMillis));
+    }
+
+    private CompletableFuture<Void> publish(OutboxCommand command) {
+        CompletableFuture<Void> delivery = outboundPublisher.publish(command.getTopic(),
+                command.getPayload().getBytes(StandardCharsets.UTF_8), command.getQos());
+        String uuid = command.getUuid();
+        // Deleted from the drain thread, never from the client's callback thread. The returned stage
+        // completes after the row is queued for deletion, so the drain sees it once the batch settles.
+        return delivery.thenRun(() -> {
+            published.add(uuid);
+            drainedCounter.increment();
+        });
+    }
+
+    private void deletePublished() {
+        List<String> uuids = new ArrayList<>();
+        String uuid;
+        while ((uuid = published.poll()) != null) {
+            uuids.add(uuid);
+        }
+        if (!uuids.isEmpty()) {
+            outboxCommandRepository.deleteAllByIdInBatch(uuids);
+        }
+    }
+
+    private void refreshBacklog() {
+        long now = System.currentTimeMillis();
+        if (now - lastBacklogRefresh >= BACKLOG_REFRESH_MS) {
+            backlog = outboxCommandRepository.count();
+            lastBacklogRefresh = now;
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        drainer.interrupt();
+    }
+}
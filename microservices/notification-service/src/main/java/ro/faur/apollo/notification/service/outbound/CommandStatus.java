@@ -0,0 +1,15 @@
+package ro.faur.apollo.notification.service.outbound;
+
+/**
+ * Lifecycle of a device command tracked by {@link CommandTracker}.
+ */
+public enum CommandStatus {
+    /** Published or queued, waiting for the device's ack. */
+    PENDING,
+    /** The device reported that it executed the command. */
+    ACKNOWLEDGED,
+    /** The device reported an error, or the broker refused the publish. */
+    FAILED,
+    /** No ack arrived within the ack timeout. */
+    EXPIRED
+}
@@ -0,0 +1,203 @@
+package ro.faur.apollo.notification.service.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.shared.dto.CommandOutcomeDTO;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory table of device commands waiting for the device's acknowledgement on
+ * {@code devices/{hardwareId}/acks}. A command that is not acknowledged within the ack timeout
+ * expires; finished commands are kept for a retention period so their outcome can still be read.
+ * Both deadlines run on a {@link TimingWheel}, so tracking needs no thread or scheduled task per command.
+ * <p>
+ * Acks reach every replica, so a replica also records outcomes for commands it did not send.
+ * A poll that lands on another replica than the one that published therefore still gets the result.
+ */
+@Component
+public class CommandTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandTracker.class);
+
+    private final Map<String, TrackedCommand> commands = new ConcurrentHashMap<>();
+    private final TimingWheel wheel;
+    private final MeterRegistry meterRegistry;
+    private final long ackTimeoutMillis;
+    private final long retentionMillis;
+    private final int maxTracked;
+
+    public CommandTracker(MeterRegistry meterRegistry,
+                          @Value("${mqtt.commands.ack-timeout-ms}") long ackTimeoutMillis,
+                          @Value("${mqtt.commands.retention-ms}") long retentionMillis,
+                          @Value("${mqtt.commands.max-tracked}") int maxTracked) {
+        this.meterRegistry = meterRegistry;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.retentionMillis = retentionMillis;
+        this.maxTracked = maxTracked;
+        this.wheel = new TimingWheel("command-timeouts", 50, 512);
+
+        Gauge.builder("mqtt.command.tracked", commands, Map::size)
+                .description("Commands pending or recently finished")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts tracking a new command. It expires once the ack timeout has passed after the last
+     * moment the outbox may still send it, so it is never reported expired while still deliverable.
+     *
+     * @param ttlMillis how long the command may wait in the outbox before it is published
+     * @return the command id the device must echo in its ack, or {@code null} if the table is full
+     */
+    public String register(String hardwareId, String command, long ttlMillis) {
+        if (commands.size() >= maxTracked) {
+            logger.warn("Command table full, not tracking {} for {}", command, hardwareId);
+            return null;
+        }
+        String commandId = UUID.randomUUID().toString();
+        commands.put(commandId, new TrackedCommand(commandId, hardwareId, command));
+        wheel.schedule(ttlMillis + ackTimeoutMillis, () -> finish(commandId, null, CommandStatus.EXPIRED, "No acknowledgement from device"));
+        return commandId;
+    }
+
+    public void acknowledge(String commandId, String hardwareId, boolean success, String detail) {
+        TrackedCommand tracked = commands.get(commandId);
+        if (tracked == null) {
+            // Sent by another replica, or already evicted: keep the outcome for pollers landing here
+            if (commands.size() >= maxTracked) {
+                return;
+            }
+            commands.computeIfAbsent(commandId, id -> new TrackedCommand(id, hardwareId, null));
+        }
+        finish(commandId, hardwareId, success ? CommandStatus.ACKNOWLEDGED : CommandStatus.FAILED, detail);
+    }
+
+    public void publishFailed(String commandId, Throwable cause) {
+        finish(commandId, null, CommandStatus.FAILED, "Broker did not accept the command: " + cause.getMessage());
+    }
+
+    /**
+     * @return the current outcome, or {@code null} if this replica knows nothing about the command
+     */
+    public CommandOutcomeDTO current(String commandId) {
+        TrackedCommand tracked = commands.get(commandId);
+        return tracked != null && !tracked.placeholder ? tracked.toDTO() : null;
+    }
+
+    /**
+     * @return a future completed once the command is acknowledged, fails or expires. Unknown ids
+     * (a command published by another replica) are waited on until their ack timeout.
+     */
+    public CompletableFuture<CommandOutcomeDTO> awaitOutcome(String commandId) {
+        TrackedCommand tracked = commands.get(commandId);
+        if (tracked == null) {
+            if (commands.size() >= maxTracked) {
+                return new CompletableFuture<>();
+            }
+            tracked = commands.computeIfAbsent(commandId, id -> {
+                TrackedCommand placeholder = new TrackedCommand(id, null, null);
+                placeholder.placeholder = true;
+                wheel.schedule(ackTimeoutMillis, () -> commands.remove(id, placeholder));
+                return placeholder;
+            });
+        }
+        return tracked.outcome;
+    }
+
+    private void finish(String commandId, String hardwareId, CommandStatus status, String detail) {
+        TrackedCommand tracked = commands.get(commandId);
+        if (tracked == null) {
+            return;
+        }
+        if (hardwareId != null && tracked.hardwareId != null && !tracked.hardwareId.equals(hardwareId)) {
+            logger.warn("Ignoring ack for command {} from {}, it was sent to {}", commandId, hardwareId, tracked.hardwareId);
+            return;
+        }
+        if (!tracked.complete(status, detail, hardwareId)) {
+            return;
+        }
+
+        // Only commands sent by this replica know their type and start time
+        String command = tracked.command;
+        if (command != null) {
+            Counter.builder("mqtt.command.outcome")
+                    .tag("command", command)
+                    .tag("status", status.name())
+                    .register(meterRegistry)
+                    .increment();
+            if (status == CommandStatus.ACKNOWLEDGED) {
+                Timer.builder("mqtt.command.ack.latency")
+                        .tag("command", command)
+                        .description("Time from issuing a command until the device acknowledged it")
+                        .publishPercentiles(0.5, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(tracked.latencyNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        TrackedCommand finished = tracked;
+        wheel.schedule(retentionMillis, () -> commands.remove(commandId, finished));
+    }
+
+    @PreDestroy
+    void stop() {
+        wheel.stop();
+    }
+
+    private static final class TrackedCommand {
+        private final String commandId;
+        private final long issuedAtNanos = System.nanoTime();
+        private final String command;
+        private final CompletableFuture<CommandOutcomeDTO> outcome = new CompletableFuture<>();
+        private String hardwareId;
+        private CommandStatus status = CommandStatus.PENDING;
+        private String detail;
+        private long latencyNanos;
+        private volatile boolean placeholder;
+
+        private TrackedCommand(String commandId, String hardwareId, String command) {
+            this.commandId = commandId;
+            this.hardwareId = hardwareId;
+            this.command = command;
+        }
+
+        synchronized boolean complete(CommandStatus status, String detail, String hardwareId) {
+            if (this.status != CommandStatus.PENDING) {
+                return false;
+            }
+            this.status = status;
+            this.detail = detail;
+            this.latencyNanos = System.nanoTime() - issuedAtNanos;
+            if (this.hardwareId == null) {
+                this.hardwareId = hardwareId;
+            }
+            placeholder = false;
+            outcome.complete(toDTO());
+            return true;
+        }
+
+        synchronized CommandOutcomeDTO toDTO() {
+            CommandOutcomeDTO dto = new CommandOutcomeDTO();
+            dto.setCommandId(commandId);
+            dto.setHardwareId(hardwareId);
+            dto.setCommand(command);
+            dto.setStatus(status.name());
+            dto.setDetail(detail);
+            if (status != CommandStatus.PENDING && command != null) {
+                dto.setLatencyMs(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            }
+            return dto;
+        }
+    }
+}
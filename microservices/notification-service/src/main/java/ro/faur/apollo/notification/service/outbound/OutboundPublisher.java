@@ -0,0 +1,239 @@
+package ro.faur.apollo.notification.service.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes outbound MQTT messages without blocking the caller. Messages wait in a bounded queue
+ * and a single sender thread hands them to the async client, keeping at most {@code window}
+ * publishes unacknowledged at a time.
+ * <p>
+ * The window adapts AIMD-style: every ack that comes back within the latency target grows it by
+ * {@code 1/window} (about one slot per round trip), while a failed publish, a slow ack or the
+ * client's own in-flight limit halves it.
+ */
+@Component
+public class OutboundPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundPublisher.class);
+    private static final long NOT_CONNECTED_BACKOFF_MS = 500;
+
+    private final BlockingDeque<OutboundMessage> queue;
+    private final int minWindow;
+    private final int maxWindow;
+    private final long ackLatencyTargetNanos;
+    private final Timer ackTimer;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+    private final Object windowLock = new Object();
+    private final Thread sender;
+
+    private volatile IMqttAsyncClient client;
+    private volatile boolean running = true;
+    private double window;
+    private int inflight;
+
+    public OutboundPublisher(MeterRegistry meterRegistry,
+                             @Value("${mqtt.outbound.queue-capacity}") int queueCapacity,
+                             @Value("${mqtt.outbound.min-window}") int minWindow,
+                             @Value("${mqtt.outbound.max-window}") int maxWindow,
+                             @Value("${mqtt.outbound.ack-latency-target-ms}") long ackLatencyTargetMs) {
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.window = minWindow;
+        this.ackLatencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(ackLatencyTargetMs);
+        this.sender = new Thread(this::runSender, "mqtt-outbound");
+        this.sender.setDaemon(true);
+
+        Gauge.builder("mqtt.outbound.queue.depth", queue, BlockingDeque::size)
+                .description("Messages waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.outbound.inflight", this, publisher -> publisher.inflight)
+                .description("Publishes sent but not yet acknowledged by the broker")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.outbound.window", this, publisher -> publisher.window)
+                .description("Current limit on unacknowledged publishes")
+                .register(meterRegistry);
+        this.ackTimer = Timer.builder("mqtt.outbound.ack.latency")
+                .description("Time from handing a message to the client until the broker acknowledged it")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("mqtt.outbound.rejected")
+                .description("Messages refused because the outbound queue was full")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("mqtt.outbound.failed")
+                .description("Publishes the broker did not acknowledge")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        sender.start();
+    }
+
+    /**
+     * Sets the client to publish through; called once it is connected.
+     */
+    public void attach(IMqttAsyncClient client) {
+        this.client = client;
+    }
+
+    public boolean isConnected() {
+        IMqttAsyncClient current = client;
+        return current != null && current.isConnected();
+    }
+
+    /**
+     * The client keeps unacknowledged QoS 1/2 publishes in its own window, which must be at least
+     * as large as ours.
+     */
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /**
+     * Queues a message for publishing and returns immediately.
+     *
+     * @return a future completed when the broker acknowledges the message; already failed with a
+     * {@link RejectedExecutionException} if the queue is full
+     */
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int qos) {
+        OutboundMessage message = new OutboundMessage(topic, payload, qos);
+        if (!running || !queue.offerLast(message)) {
+            rejectedCounter.increment();
+            message.completion.completeExceptionally(new RejectedExecutionException("Outbound MQTT queue is full"));
+        }
+        return message.completion;
+    }
+
+    private void runSender() {
+        while (running || !queue.isEmpty()) {
+            try {
+                OutboundMessage message = queue.pollFirst(100, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                IMqttAsyncClient current = client;
+                if (current == null || !current.isConnected()) {
+                    requeue(message);
+                    if (!running) {
+                        return;
+                    }
+                    Thread.sleep(NOT_CONNECTED_BACKOFF_MS);
+                    continue;
+                }
+                acquireSlot();
+                send(current, message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(IMqttAsyncClient current, OutboundMessage message) {
+        MqttMessage mqttMessage = new MqttMessage(message.payload);
+        mqttMessage.setQos(message.qos);
+        long sentAt = System.nanoTime();
+        try {
+            current.publish(message.topic, mqttMessage, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    long latency = System.nanoTime() - sentAt;
+                    ackTimer.record(latency, TimeUnit.NANOSECONDS);
+                    releaseSlot(latency <= ackLatencyTargetNanos);
+                    message.completion.complete(null);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable exception) {
+                    failedCounter.increment();
+                    releaseSlot(false);
+                    message.completion.completeExceptionally(exception);
+                }
+            });
+        } catch (MqttException e) {
+            releaseSlot(false);
+            if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT
+                    || e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+                // Back off and retry the same message first
+                requeue(message);
+                return;
+            }
+            failedCounter.increment();
+            message.completion.completeExceptionally(e);
+        }
+    }
+
+    private void requeue(OutboundMessage message) {
+        if (!queue.offerFirst(message)) {
+            rejectedCounter.increment();
+            message.completion.completeExceptionally(new RejectedExecutionException("Outbound MQTT queue is full"));
+        }
+    }
+
+    private void acquireSlot() throws InterruptedException {
+        synchronized (windowLock) {
+            while (inflight >= (int) window) {
+                windowLock.wait();
+            }
+            inflight++;
+        }
+    }
+
+    private void releaseSlot(boolean healthy) {
+        synchronized (windowLock) {
+            inflight--;
+            window = healthy
+                    ? Math.min(maxWindow, window + 1.0 / window)
+                    : Math.max(minWindow, window / 2);
+            windowLock.notifyAll();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("Dropping {} unpublished MQTT messages on shutdown", queue.size());
+        }
+    }
+
+    private static final class OutboundMessage {
+        private final String topic;
+        private final byte[] payload;
+        private final int qos;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private OutboundMessage(String topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+        }
+    }
+}
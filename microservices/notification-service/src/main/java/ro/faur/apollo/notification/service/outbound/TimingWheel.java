@@ -0,0 +1,103 @@
+package ro.faur.apollo.notification.service.outbound;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel for large numbers of short timeouts. Scheduling is O(1) and lock-free; a
+ * single daemon thread advances one bucket per tick and runs the tasks that are due, so timeouts
+ * fire up to one tick late. Tasks run on the wheel thread and must be short.
+ */
+public class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void schedule(long delayMillis, Runnable task) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        incoming.add(new Timeout(Math.max(deadline / tickNanos, 0), task));
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickAt = (tick + 1) * tickNanos;
+            long sleepNanos = nextTickAt - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            transferIncoming();
+            expire(buckets[(int) (tick % buckets.length)]);
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            // Anything already due goes into the current bucket and fires on this tick
+            long targetTick = Math.max(timeout.deadlineTick, tick);
+            buckets[(int) (targetTick % buckets.length)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        int size = bucket.size();
+        for (int i = 0; i < size; i++) {
+            Timeout timeout = bucket.poll();
+            if (timeout.deadlineTick > tick) {
+                // Due in a later rotation of the wheel
+                bucket.add(timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                logger.error("Timing wheel task failed", e);
+            }
+        }
+    }
+
+    private static final class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+    }
+}
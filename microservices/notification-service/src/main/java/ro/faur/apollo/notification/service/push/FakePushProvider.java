@@ -0,0 +1,73 @@
+package ro.faur.apollo.notification.service.push;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for a push provider, for development and load tests. Each batch takes
+ * {@code latency-ms}, like a provider round trip, and each message fails with a retryable error
+ * at {@code failure-rate}. Tokens starting with {@code invalid} are reported as unregistered.
+ * Nothing leaves the process; deliveries are only counted.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.push.provider", havingValue = "fake", matchIfMissing = true)
+public class FakePushProvider implements PushProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakePushProvider.class);
+
+    private final long latencyMillis;
+    private final double failureRate;
+    private final int maxBatchSize;
+    private final Counter deliveredCounter;
+
+    public FakePushProvider(MeterRegistry meterRegistry,
+                            @Value("${notification.push.fake.latency-ms}") long latencyMillis,
+                            @Value("${notification.push.fake.failure-rate}") double failureRate,
+                            @Value("${notification.push.fake.max-batch-size}") int maxBatchSize) {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.maxBatchSize = maxBatchSize;
+        this.deliveredCounter = Counter.builder("notification.push.fake.delivered")
+                .description("Pushes the fake provider accepted")
+                .register(meterRegistry);
+        logger.info("Using the fake push provider: pushes are counted, not sent");
+    }
+
+    @Override
+    public String getName() {
+        return "fake";
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public List<PushOutcome> send(List<PushMessage> batch) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<PushOutcome> outcomes = new ArrayList<>(batch.size());
+        for (PushMessage message : batch) {
+            if (message.getToken().startsWith("invalid")) {
+                outcomes.add(PushOutcome.INVALID_TOKEN);
+            } else if (random.nextDouble() < failureRate) {
+                outcomes.add(PushOutcome.RETRY);
+            } else {
+                outcomes.add(PushOutcome.DELIVERED);
+                deliveredCounter.increment();
+            }
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,146 @@
+package ro.faur.apollo.notification.service.push;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.client.HomeServiceClient;
+import ro.faur.apollo.shared.dto.DeviceAudienceDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who gets pushed a device's notifications: the users home-service lists for the device with the
+ * {@code VIEW_NOTIFICATIONS} right. Audiences are kept here with their version stamp and each
+ * lookup asks home-service only for the ones that moved on, which for a steady fleet is an
+ * empty answer. If home-service cannot be reached the audiences held are used as they are.
+ * <p>
+ * At most {@code audience-cache.max-entries} audiences are held. Dropped ones are simply fetched
+ * again in full, with version {@code -1}.
+ */
+@Component
+public class PushAudience {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushAudience.class);
+
+    private final HomeServiceClient homeServiceClient;
+    private final Map<String, DeviceAudienceDTO> audiences = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public PushAudience(HomeServiceClient homeServiceClient,
+                        @Value("${notification.push.audience-cache.max-entries}") int maxEntries) {
+        this.homeServiceClient = homeServiceClient;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the users to push to, per device; devices with no such user are left out
+     */
+    public Map<String, List<String>> recipients(Collection<String> deviceUuids) {
+        Map<String, DeviceAudienceDTO> current = refresh(deviceUuids);
+        if (current == null) {
+            logger.warn("Could not refresh push audiences of {} devices, using the ones held", deviceUuids.size());
+            current = held(deviceUuids);
+        }
+
+        Map<String, List<String>> recipients = new HashMap<>();
+        for (String deviceUuid : deviceUuids) {
+            DeviceAudienceDTO audience = current.get(deviceUuid);
+            if (audience == null) {
+                continue;
+            }
+            List<String> users = new ArrayList<>();
+            for (DeviceAudienceDTO.Member member : audience.getMembers()) {
+                if (member.isViewNotifications()) {
+                    users.add(member.getUserUuid());
+                }
+            }
+            if (!users.isEmpty()) {
+                recipients.put(deviceUuid, users);
+            }
+        }
+        return recipients;
+    }
+
+    /**
+     * The devices whose notifications the user may view, out of the given ones. Unlike
+     * {@link #recipients}, this does not fall back to the audiences held, since a caller that
+     * revokes access on the answer must not act on a partial one.
+     *
+     * @return {@code null} if home-service could not be reached
+     */
+    public Set<String> viewableBy(String userUuid, Collection<String> deviceUuids) {
+        Map<String, DeviceAudienceDTO> current = refresh(deviceUuids);
+        if (current == null) {
+            return null;
+        }
+        Set<String> viewable = new TreeSet<>();
+        for (String deviceUuid : deviceUuids) {
+            DeviceAudienceDTO audience = current.get(deviceUuid);
+            if (audience == null) {
+                continue;
+            }
+            for (DeviceAudienceDTO.Member member : audience.getMembers()) {
+                if (member.getUserUuid().equals(userUuid) && member.isViewNotifications()) {
+                    viewable.add(deviceUuid);
+                    break;
+                }
+            }
+        }
+        return viewable;
+    }
+
+    /**
+     * Asks home-service for the audiences that changed since the versions held. The answer is
+     * returned rather than read back from the cache, which another caller may be trimming.
+     *
+     * @return the audiences of the requested devices, or {@code null} if home-service could not be reached
+     */
+    private Map<String, DeviceAudienceDTO> refresh(Collection<String> deviceUuids) {
+        Map<String, DeviceAudienceDTO> current = held(deviceUuids);
+        Map<String, Long> knownVersions = new HashMap<>();
+        for (String deviceUuid : deviceUuids) {
+            DeviceAudienceDTO held = current.get(deviceUuid);
+            knownVersions.put(deviceUuid, held != null ? held.getVersion() : -1L);
+        }
+        List<DeviceAudienceDTO> changed = homeServiceClient.getAudiences(knownVersions);
+        if (changed == null) {
+            return null;
+        }
+        for (DeviceAudienceDTO audience : changed) {
+            current.put(audience.getDeviceUuid(), audience);
+            audiences.put(audience.getDeviceUuid(), audience);
+        }
+        if (audiences.size() > maxEntries) {
+            evict();
+        }
+        return current;
+    }
+
+    private Map<String, DeviceAudienceDTO> held(Collection<String> deviceUuids) {
+        Map<String, DeviceAudienceDTO> held = new HashMap<>();
+        for (String deviceUuid : deviceUuids) {
+            DeviceAudienceDTO audience = audiences.get(deviceUuid);
+            if (audience != null) {
+                held.put(deviceUuid, audience);
+            }
+        }
+        return held;
+    }
+
+    private void evict() {
+        Iterator<String> keys = audiences.keySet().iterator();
+        while (audiences.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
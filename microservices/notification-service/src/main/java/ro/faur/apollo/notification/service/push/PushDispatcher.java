@@ -0,0 +1,424 @@
+package ro.faur.apollo.notification.service.push;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.domain.PushPreference;
+import ro.faur.apollo.notification.domain.PushToken;
+import ro.faur.apollo.notification.repository.PushPreferenceRepository;
+import ro.faur.apollo.notification.repository.PushTokenRepository;
+import ro.faur.apollo.notification.service.ingest.EventPriority;
+
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes stored notifications to the phones of the users who can see them.
+ * <p>
+ * Notifications are handed over when the writer's transaction commits and only ever offered to a
+ * bounded queue, so pushing never holds up the writer or the MQTT ingest behind it; when the queue
+ * is full they are not pushed (and still show up in the feed and live stream). A planner thread
+ * takes them in groups, looks up the audiences, preferences and tokens of a whole group at once
+ * and applies quiet hours and the per-user rate limit, both of which critical alerts skip. The
+ * resulting messages go to the {@link PushProvider} in batches of its maximum size, on
+ * {@code sender-threads} threads with at most {@code max-in-flight} batches outstanding.
+ * <p>
+ * Messages the provider could not take are sent again after an exponential backoff with jitter,
+ * up to {@code max-attempts} times; tokens the provider no longer knows are deleted.
+ */
+@Component
+public class PushDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushDispatcher.class);
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final PushProvider provider;
+    private final PushAudience pushAudience;
+    private final PushRateLimiter rateLimiter;
+    private final PushTokenRepository tokenRepository;
+    private final PushPreferenceRepository preferenceRepository;
+    private final boolean enabled;
+    private final int planBatchSize;
+    private final long maxDelayNanos;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final ZoneId defaultTimeZone;
+    private final BlockingQueue<Notification> queue;
+    private final Semaphore inFlight;
+    private final ThreadPoolExecutor sender;
+    private final ScheduledExecutorService retryScheduler;
+    private final Thread plannerThread;
+    private volatile boolean running = true;
+
+    private final Counter droppedCounter;
+    private final Counter quietHoursCounter;
+    private final Counter rateLimitedCounter;
+    private final Counter disabledCounter;
+    private final Counter deliveredCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Counter invalidTokenCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer sendTimer;
+
+    public PushDispatcher(PushProvider provider,
+                          PushAudience pushAudience,
+                          PushRateLimiter rateLimiter,
+                          PushTokenRepository tokenRepository,
+                          PushPreferenceRepository preferenceRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${notification.push.enabled}") boolean enabled,
+                          @Value("${notification.push.queue-capacity}") int queueCapacity,
+                          @Value("${notification.push.plan-batch-size}") int planBatchSize,
+                          @Value("${notification.push.max-delay-ms}") long maxDelayMs,
+                          @Value("${notification.push.sender-threads}") int senderThreads,
+                          @Value("${notification.push.max-in-flight}") int maxInFlight,
+                          @Value("${notification.push.max-attempts}") int maxAttempts,
+                          @Value("${notification.push.retry-base-ms}") long retryBaseMillis,
+                          @Value("${notification.push.retry-max-ms}") long retryMaxMillis,
+                          @Value("${notification.push.default-time-zone}") String defaultTimeZone) {
+        this.provider = provider;
+        this.pushAudience = pushAudience;
+        this.rateLimiter = rateLimiter;
+        this.tokenRepository = tokenRepository;
+        this.preferenceRepository = preferenceRepository;
+        this.enabled = enabled;
+        this.planBatchSize = planBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.maxAttempts = maxAttempts;
+        this.retryBaseMillis = retryBaseMillis;
+        this.retryMaxMillis = retryMaxMillis;
+        this.defaultTimeZone = ZoneId.of(defaultTimeZone);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(maxInFlight);
+
+        AtomicInteger senderIndex = new AtomicInteger();
+        // Unbounded work queue: the semaphore already caps what is handed to it
+        this.sender = (ThreadPoolExecutor) Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "push-sender-" + senderIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "push-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.plannerThread = new Thread(this::runPlanner, "push-planner");
+        this.plannerThread.setDaemon(true);
+
+        Gauge.builder("notification.push.queue.depth", queue, BlockingQueue::size)
+                .description("Notifications waiting to be planned into pushes")
+                .register(meterRegistry);
+        Gauge.builder("notification.push.batches.in-flight", inFlight, semaphore -> maxInFlight - semaphore.availablePermits())
+                .description("Provider batches being sent or waiting for a sender")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("notification.push.dropped")
+                .description("Notifications not pushed because the push queue was full")
+                .register(meterRegistry);
+        this.quietHoursCounter = suppressedCounter(meterRegistry, "quiet_hours");
+        this.rateLimitedCounter = suppressedCounter(meterRegistry, "rate_limited");
+        this.disabledCounter = suppressedCounter(meterRegistry, "disabled");
+        this.deliveredCounter = sentCounter(meterRegistry, "delivered");
+        this.retriedCounter = sentCounter(meterRegistry, "retried");
+        this.failedCounter = sentCounter(meterRegistry, "failed");
+        this.invalidTokenCounter = sentCounter(meterRegistry, "invalid_token");
+        this.batchSizeSummary = DistributionSummary.builder("notification.push.batch.size")
+                .description("Messages per provider request")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("notification.push.send")
+                .description("Time spent on one provider request")
+                .tag("provider", provider.getName())
+                .register(meterRegistry);
+    }
+
+    private static Counter suppressedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("notification.push.suppressed")
+                .description("Pushes not sent because of the user's settings or limits")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static Counter sentCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("notification.push.messages")
+                .description("Push messages by provider outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Push notifications disabled");
+            return;
+        }
+        plannerThread.start();
+        logger.info("Push dispatcher started (provider={}, maxBatchSize={})", provider.getName(), provider.getMaxBatchSize());
+    }
+
+    /**
+     * Queues the notifications for pushing once the current transaction commits, or at once
+     * outside a transaction. Never blocks.
+     */
+    public void submitAfterCommit(List<Notification> notifications) {
+        if (!enabled || notifications.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(notifications);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(notifications);
+            }
+        });
+    }
+
+    private void submit(List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (notification.getDeviceUuid() != null && !queue.offer(notification)) {
+                droppedCounter.increment();
+            }
+        }
+    }
+
+    private void runPlanner() {
+        List<Notification> batch = new ArrayList<>(planBatchSize);
+        long lastSweep = System.nanoTime();
+        while (running) {
+            try {
+                Notification first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < planBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        Notification next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    plan(batch);
+                }
+                if (System.nanoTime() - lastSweep > SWEEP_INTERVAL_NANOS) {
+                    rateLimiter.sweep();
+                    lastSweep = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Could not plan pushes for {} notifications", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void plan(List<Notification> notifications) throws InterruptedException {
+        Map<String, List<String>> recipients = pushAudience.recipients(
+                notifications.stream().map(Notification::getDeviceUuid).collect(Collectors.toSet()));
+        if (recipients.isEmpty()) {
+            return;
+        }
+        Set<String> userUuids = new HashSet<>();
+        recipients.values().forEach(userUuids::addAll);
+        Map<String, List<PushToken>> tokens = tokenRepository.findByUserUuidIn(userUuids).stream()
+                .collect(Collectors.groupingBy(PushToken::getUserUuid));
+        Map<String, PushPreference> preferences = preferenceRepository.findAllById(tokens.keySet()).stream()
+                .collect(Collectors.toMap(PushPreference::getUserUuid, Function.identity()));
+
+        Map<String, LocalTime> localTimes = new HashMap<>();
+        List<PushMessage> messages = new ArrayList<>();
+        for (Notification notification : notifications) {
+            boolean critical = notification.getType() != null && EventPriority.of(notification.getType()) == EventPriority.CRITICAL;
+            for (String userUuid : recipients.getOrDefault(notification.getDeviceUuid(), List.of())) {
+                List<PushToken> userTokens = tokens.get(userUuid);
+                if (userTokens == null) {
+                    continue;
+                }
+                PushPreference preference = preferences.get(userUuid);
+                if (preference != null && !preference.isEnabled()) {
+                    disabledCounter.increment();
+                    continue;
+                }
+                if (!critical && inQuietHours(preference, localTimes)) {
+                    quietHoursCounter.increment();
+                    continue;
+                }
+                if (!critical && !rateLimiter.tryAcquire(userUuid)) {
+                    rateLimitedCounter.increment();
+                    continue;
+                }
+                Map<String, String> data = Map.of(
+                        "notificationUuid", notification.getUuid(),
+                        "deviceUuid", notification.getDeviceUuid(),
+                        "type", String.valueOf(notification.getType()));
+                for (PushToken token : userTokens) {
+                    messages.add(new PushMessage(token.getToken(), token.getPlatform(), userUuid,
+                            notification.getTitle(), bodyOf(notification), critical, data));
+                }
+            }
+        }
+        dispatch(messages);
+    }
+
+    /**
+     * The push body: the notification's message, or none for a notification with media. Its message
+     * is still the placeholder shown while the media is analysed, so the push is sent with the title
+     * alone rather than held back for the analysis; the app shows the result from the feed.
+     */
+    private static String bodyOf(Notification notification) {
+        return notification.getMediaUrl() != null ? null : notification.getMessage();
+    }
+
+    private boolean inQuietHours(PushPreference preference, Map<String, LocalTime> localTimes) {
+        if (preference == null) {
+            return false;
+        }
+        LocalTime start = preference.getQuietStart();
+        LocalTime end = preference.getQuietEnd();
+        if (start == null || end == null || start.equals(end)) {
+            return false;
+        }
+        // Per time zone, once per planned group
+        LocalTime now = localTimes.computeIfAbsent(String.valueOf(preference.getTimeZone()), zone -> LocalTime.now(zoneOf(preference)));
+        // A window like 22:00-07:00 spans midnight
+        return start.isBefore(end)
+                ? !now.isBefore(start) && now.isBefore(end)
+                : !now.isBefore(start) || now.isBefore(end);
+    }
+
+    private ZoneId zoneOf(PushPreference preference) {
+        if (preference.getTimeZone() == null) {
+            return defaultTimeZone;
+        }
+        try {
+            return ZoneId.of(preference.getTimeZone());
+        } catch (DateTimeException e) {
+            return defaultTimeZone;
+        }
+    }
+
+    /**
+     * Splits the messages into provider batches and hands them to the senders, waiting while
+     * {@code max-in-flight} batches are outstanding.
+     */
+    private void dispatch(List<PushMessage> messages) throws InterruptedException {
+        int maxBatchSize = provider.getMaxBatchSize();
+        for (int from = 0; from < messages.size(); from += maxBatchSize) {
+            List<PushMessage> batch = messages.subList(from, Math.min(from + maxBatchSize, messages.size()));
+            inFlight.acquire();
+            sender.execute(() -> send(batch));
+        }
+    }
+
+    private void send(List<PushMessage> batch) {
+        List<PushMessage> retry = new ArrayList<>();
+        List<String> invalidTokens = new ArrayList<>();
+        try {
+            batchSizeSummary.record(batch.size());
+            batch.forEach(PushMessage::addAttempt);
+            List<PushOutcome> outcomes;
+            try {
+                outcomes = sendTimer.recordCallable(() -> provider.send(batch));
+            } catch (Exception e) {
+                logger.warn("Push batch of {} messages failed: {}", batch.size(), e.getMessage());
+                outcomes = null;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                PushOutcome outcome = outcomes != null ? outcomes.get(i) : PushOutcome.RETRY;
+                switch (outcome) {
+                    case DELIVERED -> deliveredCounter.increment();
+                    case INVALID_TOKEN -> {
+                        invalidTokenCounter.increment();
+                        invalidTokens.add(batch.get(i).getToken());
+                    }
+                    case RETRY -> retry.add(batch.get(i));
+                }
+            }
+            if (!invalidTokens.isEmpty()) {
+                tokenRepository.deleteByTokenIn(invalidTokens);
+            }
+        } catch (Exception e) {
+            logger.error("Could not process the outcome of a push batch of {} messages", batch.size(), e);
+        } finally {
+            inFlight.release();
+        }
+        scheduleRetry(retry);
+    }
+
+    private void scheduleRetry(List<PushMessage> messages) {
+        if (messages.isEmpty() || !running) {
+            return;
+        }
+        // All messages of a batch were sent the same number of times
+        int attempts = messages.get(0).getAttempts();
+        if (attempts >= maxAttempts) {
+            failedCounter.increment(messages.size());
+            logger.warn("Giving up on {} push messages after {} attempts", messages.size(), attempts);
+            return;
+        }
+        retriedCounter.increment(messages.size());
+        long backoff = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempts - 1, 20));
+        // Jittered, so batches that failed together do not come back together
+        resendLater(messages, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+    }
+
+    private void resendLater(List<PushMessage> messages, long delayMillis) {
+        retryScheduler.schedule(() -> {
+            if (inFlight.tryAcquire()) {
+                sender.execute(() -> send(messages));
+            } else {
+                // Senders are saturated; wait rather than block the retry thread
+                resendLater(messages, retryBaseMillis);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        plannerThread.join(TimeUnit.SECONDS.toMillis(5));
+        retryScheduler.shutdownNow();
+        sender.shutdown();
+        if (!sender.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.warn("Push senders did not finish, {} batches dropped", sender.getQueue().size());
+            sender.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ro.faur.apollo.notification.service.push;
+
+import ro.faur.apollo.notification.domain.PushPlatform;
+
+import java.util.Map;
+
+/**
+ * One push to one app installation.
+ */
+public class PushMessage {
+
+    private final String token;
+    private final PushPlatform platform;
+    private final String userUuid;
+    private final String title;
+    private final String body;
+    private final boolean critical;
+    private final Map<String, String> data;
+    private int attempts;
+
+    public PushMessage(String token, PushPlatform platform, String userUuid, String title, String body,
+                       boolean critical, Map<String, String> data) {
+        this.token = token;
+        this.platform = platform;
+        this.userUuid = userUuid;
+        this.title = title;
+        this.body = body;
+        this.critical = critical;
+        this.data = data;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public PushPlatform getPlatform() {
+        return platform;
+    }
+
+    public String getUserUuid() {
+        return userUuid;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * {@code null} for a title-only push.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Sent with high priority, so the phone shows it at once even when dozing.
+     */
+    public boolean isCritical() {
+        return critical;
+    }
+
+    /**
+     * Key/value payload the app reads, e.g. the notification and device UUIDs.
+     */
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    void addAttempt() {
+        attempts++;
+    }
+}
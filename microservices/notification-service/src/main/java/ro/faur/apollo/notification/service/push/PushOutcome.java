@@ -0,0 +1,12 @@
+package ro.faur.apollo.notification.service.push;
+
+/**
+ * What a provider did with one message of a batch.
+ */
+public enum PushOutcome {
+    DELIVERED,
+    /** Temporary failure (throttling, provider error): send again later. */
+    RETRY,
+    /** The token is no longer registered with the provider and is removed. */
+    INVALID_TOKEN
+}
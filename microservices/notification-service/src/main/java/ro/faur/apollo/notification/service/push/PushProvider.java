@@ -0,0 +1,22 @@
+package ro.faur.apollo.notification.service.push;
+
+import java.util.List;
+
+/**
+ * A push delivery service (FCM, APNs, ...). {@link PushDispatcher} hands it batches of at most
+ * {@link #getMaxBatchSize()} messages, from several sender threads at once.
+ */
+public interface PushProvider {
+
+    String getName();
+
+    int getMaxBatchSize();
+
+    /**
+     * Sends the batch as one provider request.
+     *
+     * @return the outcome of each message, in the order of {@code batch}
+     * @throws Exception if the request failed as a whole; every message of it is retried
+     */
+    List<PushOutcome> send(List<PushMessage> batch) throws Exception;
+}
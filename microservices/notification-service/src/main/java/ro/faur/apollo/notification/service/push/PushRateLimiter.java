@@ -0,0 +1,60 @@
+package ro.faur.apollo.notification.service.push;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user limit on non-critical pushes, so a busy home does not buzz its members' phones
+ * nonstop. Same GCRA token bucket as the ingest rate limit: each user's bucket is the time it is
+ * full again, and buckets that have been full for a minute are dropped by {@link #sweep}.
+ */
+@Component
+public class PushRateLimiter {
+
+    private static final long IDLE_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    public PushRateLimiter(MeterRegistry meterRegistry,
+                           @Value("${notification.push.rate-limit.burst}") int burst,
+                           @Value("${notification.push.rate-limit.per-minute}") int perMinute) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(perMinute, 1);
+        this.burstNanos = intervalNanos * Math.max(burst, 1);
+
+        Gauge.builder("notification.push.rate.buckets", buckets, Map::size)
+                .description("Users with an active push rate limit bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return {@code true} if the user may get one more push now
+     */
+    public boolean tryAcquire(String userUuid) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.computeIfAbsent(userUuid, key -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return true;
+            }
+        }
+    }
+
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> now - bucket.get() > IDLE_EXPIRY_NANOS);
+    }
+}
@@ -0,0 +1,81 @@
+package ro.faur.apollo.notification.service.push;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ro.faur.apollo.notification.domain.PushPreference;
+import ro.faur.apollo.notification.domain.PushToken;
+import ro.faur.apollo.notification.dto.PushPreferenceDTO;
+import ro.faur.apollo.notification.dto.PushTokenDTO;
+import ro.faur.apollo.notification.repository.PushPreferenceRepository;
+import ro.faur.apollo.notification.repository.PushTokenRepository;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
+/**
+ * Push tokens and push preferences of users, as managed from the mobile app.
+ */
+@Service
+public class PushSettingsService {
+
+    private final PushTokenRepository tokenRepository;
+    private final PushPreferenceRepository preferenceRepository;
+
+    public PushSettingsService(PushTokenRepository tokenRepository, PushPreferenceRepository preferenceRepository) {
+        this.tokenRepository = tokenRepository;
+        this.preferenceRepository = preferenceRepository;
+    }
+
+    /**
+     * Registers the token for the user, taking it over if another user had it (the app was
+     * logged into with another account).
+     *
+     * @throws IllegalArgumentException if the token or platform is missing
+     */
+    @Transactional
+    public void registerToken(String userUuid, PushTokenDTO request) {
+        if (request.getToken() == null || request.getToken().isBlank() || request.getPlatform() == null) {
+            throw new IllegalArgumentException("Token and platform are required");
+        }
+        PushToken token = tokenRepository.findByToken(request.getToken())
+                .orElseGet(() -> new PushToken(request.getToken(), userUuid, request.getPlatform()));
+        token.setUserUuid(userUuid);
+        token.setPlatform(request.getPlatform());
+        tokenRepository.save(token);
+    }
+
+    public boolean unregisterToken(String userUuid, String token) {
+        return tokenRepository.deleteByTokenAndUserUuid(token, userUuid) > 0;
+    }
+
+    public PushPreferenceDTO getPreference(String userUuid) {
+        return preferenceRepository.findById(userUuid)
+                .map(preference -> new PushPreferenceDTO(preference.isEnabled(), preference.getQuietStart(),
+                        preference.getQuietEnd(), preference.getTimeZone()))
+                .orElseGet(PushPreferenceDTO::new);
+    }
+
+    /**
+     * @throws IllegalArgumentException if only one end of the quiet hours is given or the time zone is unknown
+     */
+    @Transactional
+    public PushPreferenceDTO updatePreference(String userUuid, PushPreferenceDTO request) {
+        if ((request.getQuietStart() == null) != (request.getQuietEnd() == null)) {
+            throw new IllegalArgumentException("Quiet hours need both a start and an end");
+        }
+        if (request.getTimeZone() != null) {
+            try {
+                ZoneId.of(request.getTimeZone());
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Unknown time zone: " + request.getTimeZone());
+            }
+        }
+        PushPreference preference = preferenceRepository.findById(userUuid).orElseGet(() -> new PushPreference(userUuid));
+        preference.setEnabled(request.isEnabled());
+        preference.setQuietStart(request.getQuietStart());
+        preference.setQuietEnd(request.getQuietEnd());
+        preference.setTimeZone(request.getTimeZone());
+        preferenceRepository.save(preference);
+        return request;
+    }
+}
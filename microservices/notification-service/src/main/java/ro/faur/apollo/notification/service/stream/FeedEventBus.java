@@ -0,0 +1,231 @@
+package ro.faur.apollo.notification.service.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.domain.NotificationEventType;
+import ro.faur.apollo.notification.service.FeedCursor;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries stored notifications, later changes to them and access changes to the live streams of
+ * every replica, over Postgres {@code LISTEN}/{@code NOTIFY}. Notifications are published in the
+ * writer's transaction, so a stream only ever sees committed rows, in commit order. A notification's
+ * DTO is at most a few kilobytes, below the 8000 byte payload limit.
+ * <p>
+ * Each replica listens on its own connection, outside the pool since it is held for good. Anything
+ * published while that connection is down is lost to the listener, so after reconnecting it closes
+ * every local stream and the clients resume from their last event id.
+ */
+@Component
+public class FeedEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedEventBus.class);
+
+    private static final String FEED_CHANNEL = "notification_feed";
+    private static final String UPDATE_CHANNEL = "notification_update";
+    private static final String ACCESS_CHANNEL = "notification_access";
+    private static final String NOTIFY_SQL = "SELECT pg_notify(?, payload) FROM unnest(?::text[]) AS payload";
+    private static final String UPDATED_ROWS_SQL = """
+        SELECT n.uuid, n.created_at, n.title, n.message, n.type, n.media_url, n.device_uuid, n.event_count, n.last_event_at
+        FROM notification n
+        JOIN unnest(?::varchar[], ?::timestamp[]) AS p(uuid, created_at) ON n.uuid = p.uuid AND n.created_at = p.created_at
+        WHERE n.device_uuid IS NOT NULL
+        """;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationStreamHub hub;
+    private final ObjectMapper objectMapper;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Thread listenerThread;
+    private volatile boolean running = true;
+
+    public FeedEventBus(JdbcTemplate jdbcTemplate,
+                        NotificationStreamHub hub,
+                        ObjectMapper objectMapper,
+                        @Value("${spring.datasource.url}") String url,
+                        @Value("${spring.datasource.username}") String username,
+                        @Value("${spring.datasource.password}") String password) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hub = hub;
+        this.objectMapper = objectMapper;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.listenerThread = new Thread(this::listen, "notification-feed-listener");
+        this.listenerThread.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (hub.isEnabled()) {
+            listenerThread.start();
+        }
+    }
+
+    /**
+     * Publishes newly inserted notifications. Must run inside the transaction that inserts them;
+     * listeners are notified when it commits.
+     */
+    public void publishInserted(List<Notification> notifications) {
+        if (!hub.isEnabled()) {
+            return;
+        }
+        String[] payloads = notifications.stream()
+                .filter(notification -> notification.getDeviceUuid() != null)
+                .map(hub::toJson)
+                .toArray(String[]::new);
+        notify(FEED_CHANNEL, payloads);
+    }
+
+    /**
+     * Publishes the current state of notifications that were patched after their insert (enriched
+     * message, motion session progress). Must run inside the transaction that patches them, after
+     * the patches; the rows are read back there since a patch only carries the columns it changes.
+     */
+    public void publishUpdated(List<FeedCursor> patched) {
+        if (!hub.isEnabled() || patched.isEmpty()) {
+            return;
+        }
+        // A row patched more than once in a flush is published once, with its final state
+        Map<String, FeedCursor> distinct = new LinkedHashMap<>();
+        patched.forEach(key -> distinct.putIfAbsent(key.getUuid(), key));
+        String[] uuids = distinct.keySet().toArray(String[]::new);
+        Timestamp[] createdAts = distinct.values().stream()
+                .map(key -> Timestamp.valueOf(key.getCreatedAt()))
+                .toArray(Timestamp[]::new);
+        List<Notification> rows = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(UPDATED_ROWS_SQL);
+            ps.setArray(1, connection.createArrayOf("varchar", uuids));
+            ps.setArray(2, connection.createArrayOf("timestamp", createdAts));
+            return ps;
+        }, (rs, rowNum) -> toNotification(rs));
+        notify(UPDATE_CHANNEL, rows.stream().map(hub::toJson).toArray(String[]::new));
+    }
+
+    private static Notification toNotification(ResultSet rs) throws SQLException {
+        Notification notification = new Notification();
+        notification.setUuid(rs.getString("uuid"));
+        notification.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        notification.setTitle(rs.getString("title"));
+        notification.setMessage(rs.getString("message"));
+        String type = rs.getString("type");
+        notification.setType(type != null ? NotificationEventType.valueOf(type) : null);
+        notification.setMediaUrl(rs.getString("media_url"));
+        notification.setDeviceUuid(rs.getString("device_uuid"));
+        notification.setEventCount(rs.getInt("event_count"));
+        Timestamp lastEventAt = rs.getTimestamp("last_event_at");
+        notification.setLastEventAt(lastEventAt != null ? lastEventAt.toLocalDateTime() : null);
+        return notification;
+    }
+
+    /**
+     * Publishes that the users' access changed, which closes their streams on every replica.
+     */
+    public void publishAccessChange(Collection<String> userUuids) {
+        if (!hub.isEnabled()) {
+            return;
+        }
+        notify(ACCESS_CHANNEL, userUuids.toArray(String[]::new));
+    }
+
+    private void notify(String channel, String[] payloads) {
+        if (payloads.length == 0) {
+            return;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(NOTIFY_SQL);
+            ps.setString(1, channel);
+            ps.setArray(2, connection.createArrayOf("text", payloads));
+            return ps;
+        }, rs -> null);
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + FEED_CHANNEL);
+                    statement.execute("LISTEN " + UPDATE_CHANNEL);
+                    statement.execute("LISTEN " + ACCESS_CHANNEL);
+                }
+                if (reconnecting) {
+                    hub.closeAll();
+                    logger.info("Notification feed listener reconnected");
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(5000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Notification feed listener lost its connection, retrying: {}", e.getMessage());
+                reconnecting = true;
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(PGNotification notification) {
+        try {
+            if (ACCESS_CHANNEL.equals(notification.getName())) {
+                hub.closeUser(notification.getParameter());
+                return;
+            }
+            String json = notification.getParameter();
+            JsonNode node = objectMapper.readTree(json);
+            if (UPDATE_CHANNEL.equals(notification.getName())) {
+                hub.publishUpdate(node.get("deviceUuid").asText(), json);
+                return;
+            }
+            FeedCursor cursor = new FeedCursor(LocalDateTime.parse(node.get("createdAt").asText()), node.get("uuid").asText());
+            hub.publish(node.get("deviceUuid").asText(), cursor, json);
+        } catch (Exception e) {
+            logger.error("Could not dispatch {} event: {}", notification.getName(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        listenerThread.join(TimeUnit.SECONDS.toMillis(6));
+    }
+}
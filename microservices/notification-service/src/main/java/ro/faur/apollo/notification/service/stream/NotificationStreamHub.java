@@ -0,0 +1,376 @@
+package ro.faur.apollo.notification.service.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ro.faur.apollo.notification.domain.Notification;
+import ro.faur.apollo.notification.mapper.NotificationDtoMapper;
+import ro.faur.apollo.notification.repository.NotificationRepository;
+import ro.faur.apollo.notification.service.FeedCursor;
+import ro.faur.apollo.notification.service.NotificationInbox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live notification streams (server-sent events) open on this replica. A stream receives the
+ * notifications of the devices in its user's inbox as {@link FeedEventBus} delivers them, with the
+ * notification's {@link FeedCursor} as event id. When a delivered notification changes later (its
+ * media was analyzed, its motion session grew) the whole notification is sent again as a
+ * {@code notification-update} event; it has no id, so it does not move the client's resume point.
+ * <p>
+ * A client that reconnects with {@code Last-Event-ID} first gets what it missed, read from its
+ * inbox; live events that arrive during that replay are held and only sent if they come after it.
+ * Updates are held too and sent after the replay, so they never reach the client ahead of the
+ * notification they change.
+ * If more than {@code replay-limit} notifications were missed a {@code reset} event is sent instead
+ * and the client reloads its feed.
+ * <p>
+ * An idle stream holds no thread. Events are queued per stream and written by a small sender pool;
+ * a stream whose queue passes {@code max-pending} (a client that stopped reading) is closed, and
+ * resumes from its last event id when the client reconnects.
+ */
+@Component
+public class NotificationStreamHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationStreamHub.class);
+
+    private static final StreamEvent HEARTBEAT = new StreamEvent(null, null, null, "keepalive");
+
+    private final NotificationInbox notificationInbox;
+    private final NotificationRepository notificationRepository;
+    private final NotificationDtoMapper notificationDtoMapper;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long timeoutMillis;
+    private final int replayLimit;
+    private final int maxPending;
+    private final Set<StreamConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<StreamConnection>> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<StreamConnection>> byDevice = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+    private final ScheduledExecutorService heartbeat;
+    private final Counter pushedCounter;
+    private final Counter overflowCounter;
+
+    public NotificationStreamHub(NotificationInbox notificationInbox,
+                                 NotificationRepository notificationRepository,
+                                 NotificationDtoMapper notificationDtoMapper,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${notification.stream.enabled}") boolean enabled,
+                                 @Value("${notification.stream.timeout-minutes}") long timeoutMinutes,
+                                 @Value("${notification.stream.heartbeat-seconds}") long heartbeatSeconds,
+                                 @Value("${notification.stream.replay-limit}") int replayLimit,
+                                 @Value("${notification.stream.max-pending}") int maxPending,
+                                 @Value("${notification.stream.sender-threads}") int senderThreads) {
+        this.notificationInbox = notificationInbox;
+        this.notificationRepository = notificationRepository;
+        this.notificationDtoMapper = notificationDtoMapper;
+        this.objectMapper = objectMapper;
+        // Membership and replay both come from the inbox
+        this.enabled = enabled && notificationInbox.isEnabled();
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.replayLimit = replayLimit;
+        this.maxPending = maxPending;
+
+        AtomicInteger senderIndex = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-stream-sender-" + senderIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keeps proxies from closing idle streams and finds the ones whose client is gone
+        this.heartbeat.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+
+        Gauge.builder("notification.stream.connections", connections, Set::size)
+                .description("Open notification streams on this replica")
+                .register(meterRegistry);
+        this.pushedCounter = Counter.builder("notification.stream.pushed")
+                .description("Notifications written to streams, replays included")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("notification.stream.overflows")
+                .description("Streams closed because their client fell behind")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a stream for the user, resuming after {@code lastEventId} if given.
+     *
+     * @throws IllegalArgumentException if {@code lastEventId} is not a valid event id
+     */
+    public SseEmitter connect(String userUuid, String lastEventId) {
+        FeedCursor resumeAfter = lastEventId != null && !lastEventId.isBlank() ? FeedCursor.decode(lastEventId) : null;
+
+        notificationInbox.ensureSynced(userUuid);
+        Set<String> deviceUuids = notificationInbox.deviceUuidsOf(userUuid);
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        StreamConnection connection = new StreamConnection(userUuid, deviceUuids, emitter);
+        emitter.onCompletion(() -> unregister(connection));
+        emitter.onTimeout(() -> close(connection));
+        emitter.onError(error -> unregister(connection));
+        // Registered before the replay is read, so nothing committed in between is missed
+        register(connection);
+        connection.offer(new StreamEvent(null, null, null, "connected"));
+
+        // The replay bypasses held: it is what the held live events are compared against
+        FeedCursor replayedUpTo = resumeAfter;
+        if (resumeAfter != null) {
+            List<Notification> missed = notificationRepository.findInboxAfter(
+                    userUuid, resumeAfter.getCreatedAt(), resumeAfter.getUuid(), replayLimit + 1);
+            if (missed.size() > replayLimit) {
+                connection.enqueue(new StreamEvent(null, "reset", "{}", null));
+                replayedUpTo = null;
+            } else {
+                for (Notification notification : missed) {
+                    FeedCursor cursor = new FeedCursor(notification.getCreatedAt(), notification.getUuid());
+                    connection.enqueue(new StreamEvent(cursor, "notification", toJson(notification), null));
+                    replayedUpTo = cursor;
+                }
+            }
+        }
+        connection.finishReplay(replayedUpTo);
+        return emitter;
+    }
+
+    /**
+     * The event data of a notification: its DTO as JSON.
+     */
+    String toJson(Notification notification) {
+        try {
+            return objectMapper.writeValueAsString(notificationDtoMapper.toDto(notification));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize notification " + notification.getUuid(), e);
+        }
+    }
+
+    /**
+     * Sends a stored notification to the streams that can see its device.
+     */
+    void publish(String deviceUuid, FeedCursor cursor, String json) {
+        Set<StreamConnection> audience = byDevice.get(deviceUuid);
+        if (audience == null) {
+            return;
+        }
+        StreamEvent event = new StreamEvent(cursor, "notification", json, null);
+        audience.forEach(connection -> connection.offer(event));
+    }
+
+    /**
+     * Sends the new state of a notification that changed after its insert to the streams that can
+     * see its device.
+     */
+    void publishUpdate(String deviceUuid, String json) {
+        Set<StreamConnection> audience = byDevice.get(deviceUuid);
+        if (audience == null) {
+            return;
+        }
+        StreamEvent event = new StreamEvent(null, "notification-update", json, null);
+        audience.forEach(connection -> connection.offer(event));
+    }
+
+    /**
+     * Closes the user's streams after their access changed; the client reconnects and gets a
+     * stream built from their resynced inbox.
+     */
+    void closeUser(String userUuid) {
+        Set<StreamConnection> userConnections = byUser.get(userUuid);
+        if (userConnections != null) {
+            List.copyOf(userConnections).forEach(this::close);
+        }
+    }
+
+    /**
+     * Closes every stream, after events may have been missed; clients resume from their last event id.
+     */
+    void closeAll() {
+        List.copyOf(connections).forEach(this::close);
+    }
+
+    private void register(StreamConnection connection) {
+        connections.add(connection);
+        byUser.computeIfAbsent(connection.userUuid, key -> ConcurrentHashMap.newKeySet()).add(connection);
+        for (String deviceUuid : connection.deviceUuids) {
+            byDevice.computeIfAbsent(deviceUuid, key -> ConcurrentHashMap.newKeySet()).add(connection);
+        }
+    }
+
+    private void unregister(StreamConnection connection) {
+        if (!connections.remove(connection)) {
+            return;
+        }
+        removeFrom(byUser, connection.userUuid, connection);
+        for (String deviceUuid : connection.deviceUuids) {
+            removeFrom(byDevice, deviceUuid, connection);
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<StreamConnection>> index, String key, StreamConnection connection) {
+        index.computeIfPresent(key, (ignored, set) -> {
+            set.remove(connection);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void close(StreamConnection connection) {
+        unregister(connection);
+        try {
+            connection.emitter.complete();
+        } catch (Exception e) {
+            logger.debug("Stream of user {} already closed: {}", connection.userUuid, e.getMessage());
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (StreamConnection connection : connections) {
+            if (connection.pendingCount.get() == 0) {
+                connection.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        closeAll();
+        sender.shutdown();
+    }
+
+    private final class StreamConnection {
+        private final String userUuid;
+        private final Set<String> deviceUuids;
+        private final SseEmitter emitter;
+        private final Queue<StreamEvent> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // Live events that arrived while the replay was read; guarded by this
+        private List<StreamEvent> held = new ArrayList<>();
+
+        private StreamConnection(String userUuid, Set<String> deviceUuids, SseEmitter emitter) {
+            this.userUuid = userUuid;
+            this.deviceUuids = deviceUuids;
+            this.emitter = emitter;
+        }
+
+        private void offer(StreamEvent event) {
+            synchronized (this) {
+                // Comments (heartbeats) need no ordering and are not held
+                if (held != null && event.name != null) {
+                    held.add(event);
+                    return;
+                }
+            }
+            enqueue(event);
+        }
+
+        /**
+         * Ends the replay: held updates are sent, held notifications unless the replay already covered them.
+         */
+        private void finishReplay(FeedCursor replayedUpTo) {
+            List<StreamEvent> live;
+            synchronized (this) {
+                live = held;
+                held = null;
+            }
+            for (StreamEvent event : live) {
+                if (event.cursor == null || replayedUpTo == null || event.cursor.isAfter(replayedUpTo)) {
+                    enqueue(event);
+                }
+            }
+        }
+
+        private void enqueue(StreamEvent event) {
+            if (pendingCount.incrementAndGet() > maxPending) {
+                overflowCounter.increment();
+                logger.debug("Stream of user {} fell behind, closing it", userUuid);
+                close(this);
+                return;
+            }
+            pending.add(event);
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                StreamEvent event;
+                while ((event = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    emitter.send(event.toSse());
+                    if (event.cursor != null) {
+                        pushedCounter.increment();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away, or the stream was already completed
+                close(this);
+                pending.clear();
+            } finally {
+                draining.set(false);
+                // Something may have been queued after the last poll but before the flag was cleared
+                if (!pending.isEmpty() && connections.contains(this) && draining.compareAndSet(false, true)) {
+                    sender.execute(this::drain);
+                }
+            }
+        }
+    }
+
+    private static final class StreamEvent {
+        private final FeedCursor cursor;
+        private final String id;
+        private final String name;
+        private final String data;
+        private final String comment;
+
+        private StreamEvent(FeedCursor cursor, String name, String data, String comment) {
+            this.cursor = cursor;
+            this.id = cursor != null ? cursor.encode() : null;
+            this.name = name;
+            this.data = data;
+            this.comment = comment;
+        }
+
+        private SseEmitter.SseEventBuilder toSse() {
+            // Built per stream, since a builder can only be sent once
+            SseEmitter.SseEventBuilder builder = SseEmitter.event();
+            if (comment != null) {
+                return builder.comment(comment);
+            }
+            if (id != null) {
+                builder.id(id);
+            }
+            return builder.name(name).data(data);
+        }
+    }
+}
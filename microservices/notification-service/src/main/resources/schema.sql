@@ -0,0 +1,170 @@
+-- This script owns the whole schema of the service; Hibernate runs with ddl-auto=none, so a new
+-- entity column needs its ALTER TABLE here. Notifications are range-partitioned by created_at month,
+-- which Hibernate could not create and whose uuid it cannot make unique on its own.
+-- NotificationPartitionManager keeps creating future months and drops expired ones.
+--
+-- notification_inbox holds one row per notification per user who can see it, appended by
+-- NotificationBatchWriter for the users listed in notification_inbox_member (see NotificationInbox).
+-- It is partitioned like notification, partition for partition, so retention drops both together.
+--
+-- Statements are separated by @@ (spring.sql.init.separator) because the PL/pgSQL bodies contain
+-- semicolons. Every statement is idempotent, the script runs on every start.
+
+CREATE OR REPLACE FUNCTION notification_ensure_partitions(months_ahead integer) RETURNS integer AS $$
+DECLARE
+    month_start timestamp;
+    partition_name text;
+    inbox_name text;
+    part record;
+    created integer := 0;
+BEGIN
+    -- Replicas starting together must not race on CREATE TABLE
+    PERFORM pg_advisory_xact_lock(hashtext('notification_partitions'));
+    FOR i IN 0..months_ahead LOOP
+        month_start := date_trunc('month', localtimestamp) + make_interval(months => i);
+        partition_name := 'notification_p' || to_char(month_start, 'YYYYMM');
+        IF to_regclass(partition_name) IS NULL THEN
+            BEGIN
+                EXECUTE format('CREATE TABLE %I PARTITION OF notification FOR VALUES FROM (%L) TO (%L)',
+                               partition_name, month_start, month_start + interval '1 month');
+                created := created + 1;
+            EXCEPTION WHEN invalid_object_definition THEN
+                -- The month is still covered by notification_legacy
+                NULL;
+            END;
+        END IF;
+    END LOOP;
+    -- Every notification partition, including notification_legacy, gets an inbox twin with the same bounds
+    FOR part IN SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound
+                FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'notification'::regclass LOOP
+        inbox_name := 'notification_inbox_' || substr(part.relname, length('notification_') + 1);
+        IF to_regclass(inbox_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF notification_inbox %s', inbox_name, part.bound);
+            created := created + 1;
+        END IF;
+    END LOOP;
+    RETURN created;
+END
+$$ LANGUAGE plpgsql
+@@
+
+DO $$
+DECLARE
+    legacy_upper timestamp;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('notification_partitions'));
+
+    -- A plain table left by earlier versions becomes one partition holding everything up to the end
+    -- of the current month, and is dropped as a whole once retention has passed its last month
+    IF (SELECT relkind FROM pg_class WHERE oid = to_regclass('notification')) = 'r' THEN
+        ALTER TABLE notification RENAME TO notification_legacy;
+        ALTER TABLE notification_legacy RENAME CONSTRAINT notification_pkey TO notification_legacy_pkey;
+        DROP INDEX IF EXISTS idx_notification_device_uuid;
+        ALTER INDEX IF EXISTS idx_notification_device_created RENAME TO notification_legacy_device_created_idx;
+        ALTER TABLE notification_legacy
+            ADD COLUMN IF NOT EXISTS event_count integer NOT NULL DEFAULT 1,
+            ADD COLUMN IF NOT EXISTS last_event_at timestamp(6);
+        SELECT greatest(date_trunc('month', max(created_at)), date_trunc('month', localtimestamp)) + interval '1 month'
+        INTO legacy_upper FROM notification_legacy;
+    END IF;
+
+    CREATE TABLE IF NOT EXISTS notification (
+        uuid          varchar(255)  NOT NULL,
+        created_at    timestamp(6)  NOT NULL,
+        updated_at    timestamp(6),
+        deleted       boolean       NOT NULL DEFAULT false,
+        title         varchar(255)  NOT NULL,
+        message       varchar(1000) NOT NULL,
+        type          varchar(255),
+        media_url     varchar(255),
+        device_uuid   varchar(255),
+        event_count   integer       NOT NULL DEFAULT 1,
+        last_event_at timestamp(6),
+        -- The partition key has to be part of every unique constraint
+        PRIMARY KEY (uuid, created_at)
+    ) PARTITION BY RANGE (created_at);
+
+    CREATE INDEX IF NOT EXISTS idx_notification_device_created
+        ON notification (device_uuid, created_at DESC, uuid DESC);
+
+    IF legacy_upper IS NOT NULL THEN
+        EXECUTE format('ALTER TABLE notification ATTACH PARTITION notification_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+                       legacy_upper);
+    END IF;
+END
+$$
+@@
+
+CREATE TABLE IF NOT EXISTS notification_inbox (
+    user_uuid         varchar(255) NOT NULL,
+    created_at        timestamp(6) NOT NULL,
+    notification_uuid varchar(255) NOT NULL,
+    device_uuid       varchar(255) NOT NULL,
+    -- Doubles as the feed index: one user's rows in (created_at, notification_uuid) order
+    PRIMARY KEY (user_uuid, created_at, notification_uuid)
+) PARTITION BY RANGE (created_at)
+@@
+
+-- Users whose inbox is kept, and when their device list was last fetched from home-service
+CREATE TABLE IF NOT EXISTS notification_inbox_user (
+    user_uuid varchar(255) PRIMARY KEY,
+    synced_at timestamp(6)
+)
+@@
+
+-- Who receives a copy of each device's notifications
+CREATE TABLE IF NOT EXISTS notification_inbox_member (
+    device_uuid varchar(255) NOT NULL,
+    user_uuid   varchar(255) NOT NULL,
+    PRIMARY KEY (device_uuid, user_uuid)
+)
+@@
+
+CREATE INDEX IF NOT EXISTS idx_notification_inbox_member_user ON notification_inbox_member (user_uuid)
+@@
+
+-- Device commands waiting for a broker acknowledgement, see CommandOutbox
+CREATE TABLE IF NOT EXISTS command_outbox (
+    uuid          varchar(255)  PRIMARY KEY,
+    created_at    timestamp(6)  NOT NULL,
+    updated_at    timestamp(6),
+    deleted       boolean       NOT NULL DEFAULT false,
+    sequence      bigint        NOT NULL,
+    topic         varchar(255)  NOT NULL,
+    payload       varchar(4000) NOT NULL,
+    qos           integer       NOT NULL,
+    command_id    varchar(255),
+    expires_at    timestamp(6)  NOT NULL,
+    claimed_until timestamp(6)
+)
+@@
+
+CREATE INDEX IF NOT EXISTS idx_command_outbox_sequence ON command_outbox (sequence)
+@@
+
+CREATE TABLE IF NOT EXISTS push_token (
+    uuid       varchar(255)  PRIMARY KEY,
+    created_at timestamp(6)  NOT NULL,
+    updated_at timestamp(6),
+    deleted    boolean       NOT NULL DEFAULT false,
+    token      varchar(4096) NOT NULL UNIQUE,
+    user_uuid  varchar(255)  NOT NULL,
+    platform   varchar(255)  NOT NULL
+)
+@@
+
+CREATE INDEX IF NOT EXISTS idx_push_token_user ON push_token (user_uuid)
+@@
+
+CREATE TABLE IF NOT EXISTS push_preference (
+    user_uuid   varchar(255) PRIMARY KEY,
+    enabled     boolean      NOT NULL,
+    quiet_start time(6),
+    quiet_end   time(6),
+    time_zone   varchar(255)
+)
+@@
+
+SELECT notification_ensure_partitions(3)
+@@
@@ -0,0 +1,25 @@
+package ro.faur.apollo.shared.dto;
+
+public class CommandOutcomeDTO {
+    private String commandId;
+    private String hardwareId;
+    private String command;
+    private String status;
+    private String detail;
+    private Long latencyMs;
+
+    public CommandOutcomeDTO() {}
+
+    public String getCommandId() { return commandId; }
+    public void setCommandId(String commandId) { this.commandId = commandId; }
+    public String getHardwareId() { return hardwareId; }
+    public void setHardwareId(String hardwareId) { this.hardwareId = hardwareId; }
+    public String getCommand() { return command; }
+    public void setCommand(String command) { this.command = command; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getDetail() { return detail; }
+    public void setDetail(String detail) { this.detail = detail; }
+    public Long getLatencyMs() { return latencyMs; }
+    public void setLatencyMs(Long latencyMs) { this.latencyMs = latencyMs; }
+}
@@ -0,0 +1,45 @@
+package ro.faur.apollo.shared.dto;
+
+import java.util.List;
+
+/**
+ * The users who can see a device, as served by home-service's {@code /internal/home/audience}.
+ * Members carry the rights other services act on by name, never home-service's internal encoding.
+ */
+public class DeviceAudienceDTO {
+    private String deviceUuid;
+    private long version;
+    private List<Member> members;
+
+    public DeviceAudienceDTO() {}
+
+    public DeviceAudienceDTO(String deviceUuid, long version, List<Member> members) {
+        this.deviceUuid = deviceUuid;
+        this.version = version;
+        this.members = members;
+    }
+
+    public String getDeviceUuid() { return deviceUuid; }
+    public void setDeviceUuid(String deviceUuid) { this.deviceUuid = deviceUuid; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    public List<Member> getMembers() { return members; }
+    public void setMembers(List<Member> members) { this.members = members; }
+
+    public static class Member {
+        private String userUuid;
+        private boolean viewNotifications;
+
+        public Member() {}
+
+        public Member(String userUuid, boolean viewNotifications) {
+            this.userUuid = userUuid;
+            this.viewNotifications = viewNotifications;
+        }
+
+        public String getUserUuid() { return userUuid; }
+        public void setUserUuid(String userUuid) { this.userUuid = userUuid; }
+        public boolean isViewNotifications() { return viewNotifications; }
+        public void setViewNotifications(boolean viewNotifications) { this.viewNotifications = viewNotifications; }
+    }
+}
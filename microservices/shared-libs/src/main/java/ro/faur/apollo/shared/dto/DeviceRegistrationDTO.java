@@ -0,0 +1,18 @@
+package ro.faur.apollo.shared.dto;
+
+public class DeviceRegistrationDTO {
+    private String hardwareId;
+    private String deviceType;
+
+    public DeviceRegistrationDTO() {}
+
+    public DeviceRegistrationDTO(String hardwareId, String deviceType) {
+        this.hardwareId = hardwareId;
+        this.deviceType = deviceType;
+    }
+
+    public String getHardwareId() { return hardwareId; }
+    public void setHardwareId(String hardwareId) { this.hardwareId = hardwareId; }
+    public String getDeviceType() { return deviceType; }
+    public void setDeviceType(String deviceType) { this.deviceType = deviceType; }
+}
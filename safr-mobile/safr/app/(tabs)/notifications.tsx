@@ -36,6 +36,15 @@ export default function NotificationsScreen() {
     return date.toLocaleTimeString([], { hour: '2-digit', minute: '2-digit' });
   };
 
+  // Motion bursts arrive as one notification covering several events
+  const formatSpan = (notification: NotificationDTO) => {
+    const start = formatTime(notification.createdAt);
+    if (!notification.eventCount || notification.eventCount <= 1 || !notification.lastEventAt) {
+      return start;
+    }
+    return `${start} - ${formatTime(notification.lastEventAt)} (${notification.eventCount} events)`;
+  };
+
   const handleCardPress = (mediaUrl: string | undefined) => {
     if (mediaUrl) {
       setIsVideo(mediaUrl.endsWith('.mp4') || mediaUrl.endsWith('.mov'));
@@ -88,7 +97,7 @@ export default function NotificationsScreen() {
                       <NotificationCard
                           title={notification.title}
                           description={notification.message}
-                          time={formatTime(notification.createdAt)}
+                          time={formatSpan(notification)}
                       />
                     </TouchableOpacity>
                 ))
@@ -7,5 +7,7 @@ export interface NotificationDTO {
     type: string;
     mediaUrl?: string;
     createdAt: string;
+    eventCount?: number;
+    lastEventAt?: string;
     emitter: DeviceDTO;
 }
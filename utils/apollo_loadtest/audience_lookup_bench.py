@@ -0,0 +1,80 @@
+"""Measures home-service's batch device audience lookup (/internal/home/audience).
+
+Asks for the audience of the given devices with nothing cached (-1), then repeats the request with
+the returned version stamps, which should come back empty, and reports the latency of both over
+--rounds rounds. The first round after a restart loads from the database; the following full
+lookups are served from home-service's in-process cache.
+
+Device UUIDs are read from --devices-file, one per line, or given with --device (repeatable).
+
+    python audience_lookup_bench.py --devices-file devices.txt --rounds 200
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import statistics
+import time
+import urllib.request
+
+
+def lookup(home_url: str, known_versions: dict[str, int]) -> list[dict]:
+    request = urllib.request.Request(
+        f"{home_url}/internal/home/audience",
+        data=json.dumps(known_versions).encode(),
+        headers={"Content-Type": "application/json"},
+        method="POST",
+    )
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return json.loads(response.read().decode())
+
+
+def timed(home_url: str, known_versions: dict[str, int]) -> tuple[float, list[dict]]:
+    started = time.perf_counter()
+    audiences = lookup(home_url, known_versions)
+    return (time.perf_counter() - started) * 1000, audiences
+
+
+def percentile(samples: list[float], p: float) -> float:
+    ordered = sorted(samples)
+    return ordered[min(len(ordered) - 1, int(len(ordered) * p))]
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--home-url", default=os.getenv("HOME_SERVICE_URL", "http://localhost:8084"))
+    parser.add_argument("--devices-file")
+    parser.add_argument("--device", action="append", default=[])
+    parser.add_argument("--rounds", type=int, default=100)
+    args = parser.parse_args()
+
+    devices = list(args.device)
+    if args.devices_file:
+        with open(args.devices_file) as f:
+            devices += [line.strip() for line in f if line.strip()]
+    if not devices:
+        parser.error("no devices given")
+
+    full_ms: list[float] = []
+    unchanged_ms: list[float] = []
+    stale = 0
+    for _ in range(args.rounds):
+        elapsed, audiences = timed(args.home_url, {device: -1 for device in devices})
+        full_ms.append(elapsed)
+        versions = {audience["deviceUuid"]: audience["version"] for audience in audiences}
+
+        elapsed, changed = timed(args.home_url, versions)
+        unchanged_ms.append(elapsed)
+        stale += len(changed)
+
+    members = sum(len(audience["members"]) for audience in audiences)
+    print(f"{len(devices)} devices, {members} audience members")
+    for name, samples in (("full lookup", full_ms), ("versions unchanged", unchanged_ms)):
+        print(f"{name:>20}: p50 {statistics.median(samples):7.2f} ms  p99 {percentile(samples, 0.99):7.2f} ms")
+    # Only non-zero if access changed while the benchmark ran
+    print(f"devices returned despite current versions: {stale}")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,119 @@
+-- Per-user inbox versus per-device feed reads.
+--
+-- Builds notification and notification_inbox tables shaped like notification-service's schema.sql,
+-- fills 2M notifications over 2000 devices and fans each of them out to three users per device.
+-- The user being read sees 50 devices. It then times one feed page read from the inbox (the query of
+-- NotificationRepository.findInboxPage) next to the per-device keyset page it replaces
+-- (findFeedPage), first page and deep in the history, and the cost of writing 1000 notifications
+-- with and without the fan-out.
+--
+-- Run it against a scratch database, it drops and recreates the tables:
+--   createdb feed_bench && psql -d feed_bench -f feed_inbox_bench.sql
+
+\set ON_ERROR_STOP on
+\set devices 2000
+\set rows 2000000
+\set page_size 21
+\set user_devices 50
+
+DROP TABLE IF EXISTS notification, notification_inbox, notification_inbox_member;
+CREATE TABLE notification (
+    uuid          varchar(255)  NOT NULL,
+    created_at    timestamp(6)  NOT NULL,
+    updated_at    timestamp(6),
+    deleted       boolean       NOT NULL DEFAULT false,
+    title         varchar(255)  NOT NULL,
+    message       varchar(1000) NOT NULL,
+    type          varchar(255),
+    media_url     varchar(255),
+    device_uuid   varchar(255),
+    event_count   integer       NOT NULL DEFAULT 1,
+    last_event_at timestamp(6),
+    PRIMARY KEY (uuid, created_at)
+);
+CREATE TABLE notification_inbox (
+    user_uuid         varchar(255) NOT NULL,
+    created_at        timestamp(6) NOT NULL,
+    notification_uuid varchar(255) NOT NULL,
+    device_uuid       varchar(255) NOT NULL,
+    PRIMARY KEY (user_uuid, created_at, notification_uuid)
+);
+CREATE TABLE notification_inbox_member (
+    device_uuid varchar(255) NOT NULL,
+    user_uuid   varchar(255) NOT NULL,
+    PRIMARY KEY (device_uuid, user_uuid)
+);
+
+-- user-0 sees device-0 .. device-49; every device also has two other readers
+INSERT INTO notification_inbox_member
+SELECT 'device-' || d, 'user-' || u
+FROM generate_series(0, :devices - 1) AS d,
+     LATERAL (VALUES (CASE WHEN d < :user_devices THEN 0 ELSE d END), (d + 10000), (d + 20000)) AS v(u);
+
+\echo 'Loading' :rows 'notifications...'
+INSERT INTO notification (uuid, created_at, updated_at, title, message, type, device_uuid)
+SELECT md5(i::text), now() - i * interval '15 seconds', now(), 'Door opened', 'Bench notification ' || i,
+       'DOORLOCK_OPENED_AUTHORIZED', 'device-' || (i % :devices)
+FROM generate_series(1, :rows) AS i;
+CREATE INDEX idx_notification_device_created ON notification (device_uuid, created_at DESC, uuid DESC);
+
+\echo 'Fanning out to the inboxes...'
+INSERT INTO notification_inbox
+SELECT m.user_uuid, n.created_at, n.uuid, n.device_uuid
+FROM notification n JOIN notification_inbox_member m ON m.device_uuid = n.device_uuid;
+VACUUM ANALYZE notification, notification_inbox, notification_inbox_member;
+
+SELECT array_agg('device-' || d) AS user_device_array FROM generate_series(0, :user_devices - 1) AS d \gset
+SELECT created_at AS deep_created_at, notification_uuid AS deep_uuid FROM notification_inbox
+WHERE user_uuid = 'user-0' ORDER BY created_at DESC, notification_uuid DESC
+OFFSET (SELECT count(*) FROM notification_inbox WHERE user_uuid = 'user-0') / 2 LIMIT 1 \gset
+
+-- Same statement as NotificationRepository.findInboxPage
+PREPARE inbox_page(timestamp, varchar) AS
+SELECT n.* FROM notification_inbox i
+JOIN notification n ON n.uuid = i.notification_uuid AND n.created_at = i.created_at
+WHERE i.user_uuid = 'user-0' AND i.created_at <= $1
+  AND (i.created_at, i.notification_uuid) < ($1, $2)
+ORDER BY i.created_at DESC, i.notification_uuid DESC
+LIMIT :page_size;
+
+-- Same statement as NotificationRepository.findFeedPage
+PREPARE device_page(varchar[], timestamp, varchar) AS
+SELECT n.* FROM unnest($1) AS d(device_uuid)
+CROSS JOIN LATERAL (
+    SELECT * FROM notification x
+    WHERE x.device_uuid = d.device_uuid AND x.created_at <= $2
+      AND (x.created_at, x.uuid) < ($2, $3)
+    ORDER BY x.created_at DESC, x.uuid DESC
+    LIMIT :page_size
+) n
+ORDER BY n.created_at DESC, n.uuid DESC
+LIMIT :page_size;
+
+\echo '--- inbox, first page'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE inbox_page('9999-12-31 23:59:59', '');
+\echo '--- per device, first page'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE device_page(:'user_device_array', '9999-12-31 23:59:59', '');
+\echo '--- inbox, middle of the history'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE inbox_page(:'deep_created_at', :'deep_uuid');
+\echo '--- per device, middle of the history'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE device_page(:'user_device_array', :'deep_created_at', :'deep_uuid');
+
+\timing on
+\echo '--- writing 1000 notifications without fan-out'
+BEGIN;
+INSERT INTO notification (uuid, created_at, updated_at, title, message, type, device_uuid)
+SELECT md5('w' || i), now(), now(), 'Door opened', 'Bench', 'DOORLOCK_OPENED_AUTHORIZED', 'device-' || (i % :devices)
+FROM generate_series(1, 1000) AS i;
+ROLLBACK;
+\echo '--- writing 1000 notifications with fan-out (three readers each)'
+BEGIN;
+INSERT INTO notification (uuid, created_at, updated_at, title, message, type, device_uuid)
+SELECT md5('w' || i), now(), now(), 'Door opened', 'Bench', 'DOORLOCK_OPENED_AUTHORIZED', 'device-' || (i % :devices)
+FROM generate_series(1, 1000) AS i;
+-- Same statement as NotificationInbox.fanOut, for the whole batch at once
+INSERT INTO notification_inbox (user_uuid, created_at, notification_uuid, device_uuid)
+SELECT m.user_uuid, now(), md5('w' || i), m.device_uuid
+FROM generate_series(1, 1000) AS i JOIN notification_inbox_member m ON m.device_uuid = 'device-' || (i % :devices);
+ROLLBACK;
+\timing off
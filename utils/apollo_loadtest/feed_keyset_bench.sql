@@ -0,0 +1,83 @@
+-- Notification feed pagination benchmark at 10M rows.
+--
+-- Builds a notification table shaped like notification-service's, fills it with 10M rows spread
+-- over 2000 devices (about five years of history), then times the feed query for a user with ten
+-- devices: the keyset page used by /api/notification/user/feed at the newest, middle and oldest
+-- position of the user's history, next to OFFSET paging and the old unbounded per-user query.
+-- Keyset pages should take the same time and touch the same number of buffers at every depth.
+--
+-- Run it against a scratch database, it drops and recreates "notification":
+--   createdb feed_bench && psql -d feed_bench -f feed_keyset_bench.sql
+
+\set ON_ERROR_STOP on
+\set devices 2000
+\set rows 10000000
+\set page_size 21
+\set user_devices 'ARRAY[''device-1'', ''device-2'', ''device-3'', ''device-4'', ''device-5'', ''device-6'', ''device-7'', ''device-8'', ''device-9'', ''device-10'']'
+
+DROP TABLE IF EXISTS notification;
+CREATE TABLE notification (
+    uuid          varchar(255) PRIMARY KEY,
+    created_at    timestamp(6) NOT NULL,
+    updated_at    timestamp(6),
+    deleted       boolean      NOT NULL DEFAULT false,
+    title         varchar(255) NOT NULL,
+    message       varchar(1000) NOT NULL,
+    type          varchar(255),
+    media_url     varchar(255),
+    device_uuid   varchar(255),
+    event_count   integer      NOT NULL DEFAULT 1,
+    last_event_at timestamp(6)
+);
+
+\echo 'Loading' :rows 'rows...'
+INSERT INTO notification (uuid, created_at, updated_at, title, message, type, device_uuid)
+SELECT md5(i::text),
+       now() - i * interval '15 seconds',
+       now(),
+       'Door opened',
+       'Bench notification ' || i,
+       'DOORLOCK_OPENED_AUTHORIZED',
+       'device-' || (i % :devices)
+FROM generate_series(1, :rows) AS i;
+
+CREATE INDEX idx_notification_device_created ON notification (device_uuid, created_at DESC, uuid DESC);
+VACUUM ANALYZE notification;
+
+-- Same statement as NotificationRepository.findFeedPage
+PREPARE feed_page(timestamp, varchar) AS
+SELECT n.* FROM unnest(:user_devices) AS d(device_uuid)
+CROSS JOIN LATERAL (
+    SELECT * FROM notification x
+    WHERE x.device_uuid = d.device_uuid AND x.created_at <= $1
+      AND (x.created_at, x.uuid) < ($1, $2)
+    ORDER BY x.created_at DESC, x.uuid DESC
+    LIMIT :page_size
+) n
+ORDER BY n.created_at DESC, n.uuid DESC
+LIMIT :page_size;
+
+SELECT count(*) AS user_rows FROM notification WHERE device_uuid = ANY(:user_devices) \gset
+\echo 'The user has' :user_rows 'notifications'
+
+-- Cursors in the middle and at the very end of the user's history
+SELECT created_at, uuid FROM notification WHERE device_uuid = ANY(:user_devices)
+ORDER BY created_at DESC, uuid DESC OFFSET :user_rows / 2 LIMIT 1 \gset mid_
+SELECT created_at, uuid FROM notification WHERE device_uuid = ANY(:user_devices)
+ORDER BY created_at DESC, uuid DESC OFFSET :user_rows - :page_size LIMIT 1 \gset end_
+
+\echo '--- keyset, first page'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE feed_page('9999-12-31 23:59:59', '');
+\echo '--- keyset, middle of the history'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE feed_page(:'mid_created_at', :'mid_uuid');
+\echo '--- keyset, end of the history'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) EXECUTE feed_page(:'end_created_at', :'end_uuid');
+
+\echo '--- OFFSET paging, middle of the history (for comparison)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT * FROM notification WHERE device_uuid = ANY(:user_devices)
+ORDER BY created_at DESC, uuid DESC OFFSET :user_rows / 2 LIMIT :page_size;
+
+\echo '--- unbounded per-user query used by /api/notification/user (for comparison)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT * FROM notification WHERE device_uuid = ANY(:user_devices) ORDER BY created_at DESC;
@@ -0,0 +1,84 @@
+-- Feed latency as notification history grows, on the monthly partitioned table.
+--
+-- Creates a partitioned notification table like notification-service's schema.sql and grows it in
+-- three steps to 1, 2 and 4 years of history (about 420k rows per month over 2000 devices, ~20M
+-- rows at the end). After each step it times the feed page of a user with ten devices, first page
+-- and a page a year back. Both should stay flat while the table grows: the first page only reads
+-- the newest partitions, and the cursor bound prunes every month newer than the cursor.
+--
+-- Run it against a scratch database, it drops and recreates "notification":
+--   createdb feed_bench && psql -d feed_bench -f feed_partition_bench.sql
+
+\set ON_ERROR_STOP on
+\set devices 2000
+\set rows_per_month 420000
+\set page_size 21
+\set user_devices 'ARRAY[''device-1'', ''device-2'', ''device-3'', ''device-4'', ''device-5'', ''device-6'', ''device-7'', ''device-8'', ''device-9'', ''device-10'']'
+
+DROP TABLE IF EXISTS notification;
+CREATE TABLE notification (
+    uuid          varchar(255)  NOT NULL,
+    created_at    timestamp(6)  NOT NULL,
+    updated_at    timestamp(6),
+    deleted       boolean       NOT NULL DEFAULT false,
+    title         varchar(255)  NOT NULL,
+    message       varchar(1000) NOT NULL,
+    type          varchar(255),
+    media_url     varchar(255),
+    device_uuid   varchar(255),
+    event_count   integer       NOT NULL DEFAULT 1,
+    last_event_at timestamp(6),
+    PRIMARY KEY (uuid, created_at)
+) PARTITION BY RANGE (created_at);
+CREATE INDEX idx_notification_device_created ON notification (device_uuid, created_at DESC, uuid DESC);
+
+-- Creates and fills the partitions of the months from months_back_to (exclusive) up to months_back_from
+CREATE OR REPLACE FUNCTION bench_load_months(months_back_from integer, months_back_to integer, rows_per_month integer,
+                                             devices integer) RETURNS void AS $$
+DECLARE
+    month_start timestamp;
+BEGIN
+    FOR m IN months_back_to + 1..months_back_from LOOP
+        month_start := date_trunc('month', localtimestamp) - make_interval(months => m - 1);
+        EXECUTE format('CREATE TABLE %I PARTITION OF notification FOR VALUES FROM (%L) TO (%L)',
+                       'notification_p' || to_char(month_start, 'YYYYMM'), month_start, month_start + interval '1 month');
+        INSERT INTO notification (uuid, created_at, updated_at, title, message, type, device_uuid)
+        SELECT md5(m || '-' || i), month_start + (i * (interval '28 days' / rows_per_month)), localtimestamp,
+               'Door opened', 'Bench notification', 'DOORLOCK_OPENED_AUTHORIZED', 'device-' || (i % devices)
+        FROM generate_series(1, rows_per_month) AS i;
+    END LOOP;
+END
+$$ LANGUAGE plpgsql;
+
+-- Same statement as NotificationRepository.findFeedPage
+PREPARE feed_page(timestamp, varchar) AS
+SELECT n.* FROM unnest(:user_devices) AS d(device_uuid)
+CROSS JOIN LATERAL (
+    SELECT * FROM notification x
+    WHERE x.device_uuid = d.device_uuid AND x.created_at <= $1
+      AND (x.created_at, x.uuid) < ($1, $2)
+    ORDER BY x.created_at DESC, x.uuid DESC
+    LIMIT :page_size
+) n
+ORDER BY n.created_at DESC, n.uuid DESC
+LIMIT :page_size;
+
+\echo '=== 12 months of history'
+SELECT bench_load_months(12, 0, :rows_per_month, :devices);
+VACUUM ANALYZE notification;
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page('9999-12-31 23:59:59', '');
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page(localtimestamp - interval '11 months', '');
+
+\echo '=== 24 months of history'
+SELECT bench_load_months(24, 12, :rows_per_month, :devices);
+VACUUM ANALYZE notification;
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page('9999-12-31 23:59:59', '');
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page(localtimestamp - interval '11 months', '');
+
+\echo '=== 48 months of history'
+SELECT bench_load_months(48, 24, :rows_per_month, :devices);
+VACUUM ANALYZE notification;
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page('9999-12-31 23:59:59', '');
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF, SUMMARY ON) EXECUTE feed_page(localtimestamp - interval '11 months', '');
+
+DROP FUNCTION bench_load_months(integer, integer, integer, integer);
@@ -0,0 +1,89 @@
+"""Checks that a burst of motion events from one device is rolled into few notifications.
+
+Publishes motion clips from one registered device at a fixed interval, waits for the open session
+to be written back, then reads the device's notifications from notification-service and reports
+how many rows the burst produced and the event count and time span of each.
+
+With the default settings (notification.coalesce.gap-seconds=60) a burst of events 2s apart should
+end up as one notification whose eventCount equals --events, and only its first clip is analysed.
+
+    python motion_coalesce_check.py --hardware-id AMB82_001 --device-uuid <uuid> --events 30 --interval 2
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import time
+import urllib.request
+import uuid
+
+import paho.mqtt.client as mqtt
+
+
+def connect(host: str, port: int) -> mqtt.Client:
+    client = mqtt.Client(
+        client_id=f"coalesce-check-{os.getpid()}",
+        protocol=mqtt.MQTTv311,
+        callback_api_version=mqtt.CallbackAPIVersion.VERSION2,
+    )
+    client.connect(host, port, keepalive=30)
+    client.loop_start()
+    return client
+
+
+def device_notifications(api_url: str, device_uuid: str, token: str | None) -> list[dict]:
+    request = urllib.request.Request(f"{api_url}/api/notification/device/{device_uuid}")
+    if token:
+        request.add_header("Authorization", f"Bearer {token}")
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return json.loads(response.read().decode())
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--mqtt-host", default=os.getenv("MQTT_HOST", "localhost"))
+    parser.add_argument("--mqtt-port", type=int, default=int(os.getenv("MQTT_PORT", "1883")))
+    parser.add_argument("--api-url", default=os.getenv("NOTIFICATION_API_URL", "http://localhost:8085"))
+    parser.add_argument("--token", default=os.getenv("APOLLO_TOKEN"), help="bearer token, if the API requires one")
+    parser.add_argument("--hardware-id", required=True, help="a device already registered in device-service")
+    parser.add_argument("--device-uuid", required=True)
+    parser.add_argument("--events", type=int, default=30)
+    parser.add_argument("--interval", type=float, default=2, help="seconds between motion events")
+    parser.add_argument("--settle", type=float, default=5, help="seconds to wait for the session to be written")
+    args = parser.parse_args()
+
+    run_id = uuid.uuid4().hex[:8]
+    started = time.time()
+    client = connect(args.mqtt_host, args.mqtt_port)
+    for seq in range(args.events):
+        notification = {
+            "hardwareId": args.hardware_id,
+            "eventId": f"{run_id}-{seq}",
+            "title": "Motion Detected",
+            "message": f"coalesce-check run={run_id} seq={seq}",
+            "eventType": "MOTION_DETECTED",
+            "mediaUrl": f"coalesce-check/{run_id}/{seq}.mp4",
+            "timestamp": str(int(time.time() * 1000)),
+        }
+        client.publish("devices/notifications", json.dumps(notification), qos=1)
+        time.sleep(args.interval)
+    client.loop_stop()
+    client.disconnect()
+    time.sleep(args.settle)
+
+    rows = [
+        notification for notification in device_notifications(args.api_url, args.device_uuid, args.token)
+        if f"coalesce-check/{run_id}/" in (notification.get("mediaUrl") or "")
+    ]
+    total = sum(row.get("eventCount") or 1 for row in rows)
+    print(f"{args.events} events over {time.time() - started - args.settle:.0f}s -> {len(rows)} notification(s), "
+          f"{total} events accounted for")
+    for row in sorted(rows, key=lambda row: row["createdAt"]):
+        print(f"  {row['createdAt']} .. {row.get('lastEventAt') or row['createdAt']}  "
+              f"count={row.get('eventCount')}  media={row.get('mediaUrl')}")
+    raise SystemExit(0 if total == args.events else 1)
+
+
+if __name__ == "__main__":
+    main()
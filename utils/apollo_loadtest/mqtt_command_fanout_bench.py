@@ -0,0 +1,134 @@
+"""Broker and device load of shared vs per-device command topics.
+
+Connects --devices simulated locks, each subscribed the way its firmware would be:
+  legacy     devices/commands/unlock (every lock gets every command, filters on hardwareId)
+  addressed  devices/{hardwareId}/commands/#
+then publishes --commands unlock commands to random devices and reports
+  - messages the broker sent (from $SYS/broker/messages/sent)
+  - messages each device had to receive and parse, and how many were for someone else
+  - time until every expected delivery arrived
+
+All clients share one thread through paho's external loop API. 10k devices need
+`ulimit -n` above 10k on this machine and a broker max_connections to match.
+
+    python mqtt_command_fanout_bench.py --layout legacy --devices 10000 --commands 200
+    python mqtt_command_fanout_bench.py --layout addressed --devices 10000 --commands 200
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import random
+import selectors
+import time
+
+import paho.mqtt.client as mqtt
+
+LEGACY_TOPIC = "devices/commands/unlock"
+
+
+class Device:
+    def __init__(self, hardware_id: str, layout: str, stats: dict) -> None:
+        self.hardware_id = hardware_id
+        self.topic = LEGACY_TOPIC if layout == "legacy" else f"devices/{hardware_id}/commands/#"
+        self.stats = stats
+        self.subscribed = False
+        self.client = mqtt.Client(
+            client_id=f"bench-{hardware_id}",
+            protocol=mqtt.MQTTv311,
+            callback_api_version=mqtt.CallbackAPIVersion.VERSION2,
+        )
+        self.client.on_connect = lambda c, u, f, rc, p: c.subscribe(self.topic, qos=0)
+        self.client.on_subscribe = self._on_subscribe
+        self.client.on_message = self._on_message
+
+    def _on_subscribe(self, client, userdata, mid, reason_codes, properties) -> None:
+        self.subscribed = True
+
+    def _on_message(self, client, userdata, message) -> None:
+        self.stats["received"] += 1
+        target = json.loads(message.payload).get("hardwareId")
+        if target != self.hardware_id:
+            self.stats["foreign"] += 1
+
+
+def pump(selector: selectors.DefaultSelector, devices: list[Device], timeout: float) -> None:
+    for key, events in selector.select(timeout):
+        client = key.data.client
+        if events & selectors.EVENT_READ:
+            client.loop_read()
+    for device in devices:
+        if device.client.want_write():
+            device.client.loop_write()
+    for device in devices:
+        device.client.loop_misc()
+
+
+def broker_messages_sent(host: str, port: int) -> int:
+    result: dict = {}
+    client = mqtt.Client(callback_api_version=mqtt.CallbackAPIVersion.VERSION2)
+    client.on_connect = lambda c, u, f, rc, p: c.subscribe("$SYS/broker/messages/sent")
+    client.on_message = lambda c, u, m: result.setdefault("sent", int(m.payload))
+    client.connect(host, port)
+    deadline = time.time() + 15  # $SYS topics are republished every sys_interval (10s by default)
+    while "sent" not in result and time.time() < deadline:
+        client.loop(0.2)
+    client.disconnect()
+    return result.get("sent", -1)
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--mqtt-host", default=os.getenv("MQTT_HOST", "localhost"))
+    parser.add_argument("--mqtt-port", type=int, default=int(os.getenv("MQTT_PORT", "1883")))
+    parser.add_argument("--layout", choices=["legacy", "addressed"], required=True)
+    parser.add_argument("--devices", type=int, default=1000)
+    parser.add_argument("--commands", type=int, default=100)
+    parser.add_argument("--timeout", type=float, default=120)
+    args = parser.parse_args()
+
+    stats = {"received": 0, "foreign": 0}
+    selector = selectors.DefaultSelector()
+    devices = [Device(f"BENCH_{i:05d}", args.layout, stats) for i in range(args.devices)]
+    for device in devices:
+        device.client.connect(args.mqtt_host, args.mqtt_port, keepalive=120)
+        selector.register(device.client.socket(), selectors.EVENT_READ, device)
+
+    deadline = time.time() + args.timeout
+    while not all(d.subscribed for d in devices) and time.time() < deadline:
+        pump(selector, devices, 0.05)
+    print(f"{sum(d.subscribed for d in devices)}/{args.devices} devices subscribed ({args.layout})")
+
+    sent_before = broker_messages_sent(args.mqtt_host, args.mqtt_port)
+    publisher = mqtt.Client(callback_api_version=mqtt.CallbackAPIVersion.VERSION2)
+    publisher.connect(args.mqtt_host, args.mqtt_port)
+    publisher.loop_start()
+
+    expected = args.commands * (args.devices if args.layout == "legacy" else 1)
+    start = time.perf_counter()
+    deadline = time.time() + args.timeout
+    for _ in range(args.commands):
+        target = random.choice(devices).hardware_id
+        topic = LEGACY_TOPIC if args.layout == "legacy" else f"devices/{target}/commands/unlock"
+        publisher.publish(topic, json.dumps({"hardwareId": target}), qos=0)
+    while stats["received"] < expected and time.time() < deadline:
+        pump(selector, devices, 0.05)
+    elapsed = time.perf_counter() - start
+
+    publisher.loop_stop()
+    publisher.disconnect()
+    sent_after = broker_messages_sent(args.mqtt_host, args.mqtt_port)
+    for device in devices:
+        device.client.disconnect()
+
+    print(f"commands published:       {args.commands}")
+    print(f"deliveries received:      {stats['received']} / {expected} expected, in {elapsed:.2f}s")
+    print(f"  for another device:     {stats['foreign']}")
+    print(f"  per device (avg):       {stats['received'] / args.devices:.2f}")
+    if sent_before >= 0 and sent_after >= 0:
+        print(f"broker messages sent:     {sent_after - sent_before} (includes $SYS and subscribe traffic)")
+
+
+if __name__ == "__main__":
+    main()
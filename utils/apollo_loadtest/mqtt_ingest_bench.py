@@ -0,0 +1,142 @@
+"""Burst benchmark for the notification-service MQTT ingest pipeline.
+
+Registers a set of simulated devices, publishes a burst of notifications spread across them
+and measures how long notification-service takes to persist all of them, using the
+mqtt_ingest_completed_total{stage="persist"} counter from /actuator/prometheus.
+
+Run it once per configuration to compare, e.g. with MQTT_INGEST_PER_DEVICE_ORDERING=true
+(striped lanes) and =false (shared pool):
+
+    python mqtt_ingest_bench.py --devices 200 --messages 20000
+
+The burst exceeds the per-device rate limit, so start notification-service with
+MQTT_RATE_LIMIT_ENABLED=false.
+
+With --critical-ratio the burst becomes a synthetic overload: mostly motion clips with media
+(which queue up for media analysis) mixed with unauthorized-entry alerts. The p99 latency per
+priority lane is then read from mqtt_ingest_latency_seconds, to check critical alerts against
+their target with MQTT_INGEST_PRIORITY_ENABLED=true and =false. Also set
+NOTIFICATION_COALESCE_ENABLED=false, or each device's motion clips are rolled into one notification
+and only its first clip is analysed:
+
+    python mqtt_ingest_bench.py --devices 200 --messages 20000 --critical-ratio 0.02
+
+Besides throughput it prints the heap allocated per message, from jvm_gc_memory_allocated_bytes_total
+over the run. That covers the whole service, not just decoding, but is stable enough to compare two
+builds under the same burst, e.g. before and after a change to the payload codec.
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import re
+import time
+import urllib.request
+
+import paho.mqtt.client as mqtt
+
+COMPLETED_RE = re.compile(r'^mqtt_ingest_completed_total\{[^}]*stage="persist"[^}]*\}\s+([0-9.eE+-]+)', re.M)
+ALLOCATED_RE = re.compile(r'^jvm_gc_memory_allocated_bytes_total(?:\{[^}]*\})?\s+([0-9.eE+-]+)', re.M)
+LATENCY_P99_RE = re.compile(
+    r'^mqtt_ingest_latency_seconds\{(?=[^}]*quantile="0.99")(?=[^}]*priority="(\w+)")(?=[^}]*stage="(\w+)")[^}]*\}\s+([0-9.eE+-]+)',
+    re.M)
+
+
+def scrape(metrics_url: str) -> str:
+    with urllib.request.urlopen(metrics_url, timeout=5) as response:
+        return response.read().decode()
+
+
+def persisted(metrics_url: str) -> float:
+    match = COMPLETED_RE.search(scrape(metrics_url))
+    return float(match.group(1)) if match else 0.0
+
+
+def allocated(metrics_url: str) -> float:
+    match = ALLOCATED_RE.search(scrape(metrics_url))
+    return float(match.group(1)) if match else 0.0
+
+
+def print_lane_latency(metrics_url: str) -> None:
+    for priority, stage, value in sorted(LATENCY_P99_RE.findall(scrape(metrics_url)), key=lambda m: (m[1], m[0])):
+        print(f"  p99 {stage:<8} {priority:<9} {float(value) * 1000:8.1f} ms")
+
+
+def connect(host: str, port: int) -> mqtt.Client:
+    client = mqtt.Client(
+        client_id=f"ingest-bench-{os.getpid()}",
+        protocol=mqtt.MQTTv311,
+        callback_api_version=mqtt.CallbackAPIVersion.VERSION2,
+    )
+    client.max_inflight_messages_set(1000)
+    client.max_queued_messages_set(0)
+    client.connect(host, port, keepalive=30)
+    client.loop_start()
+    return client
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--mqtt-host", default=os.getenv("MQTT_HOST", "localhost"))
+    parser.add_argument("--mqtt-port", type=int, default=int(os.getenv("MQTT_PORT", "1883")))
+    parser.add_argument("--metrics-url", default=os.getenv(
+        "NOTIFICATION_METRICS_URL", "http://localhost:8085/actuator/prometheus"))
+    parser.add_argument("--devices", type=int, default=100)
+    parser.add_argument("--messages", type=int, default=10000)
+    parser.add_argument("--timeout", type=float, default=300)
+    parser.add_argument("--critical-ratio", type=float, default=0.0,
+                        help="share of unauthorized-entry alerts in a motion-clip overload (0 = door events only)")
+    args = parser.parse_args()
+
+    client = connect(args.mqtt_host, args.mqtt_port)
+    hardware_ids = [f"BENCH_{i:05d}" for i in range(args.devices)]
+
+    for hardware_id in hardware_ids:
+        hello = {"hardwareId": hardware_id, "deviceType": "STM32"}
+        client.publish("devices/hello", json.dumps(hello), qos=1)
+    print(f"registered {args.devices} devices, waiting for hellos to settle")
+    time.sleep(5)
+
+    baseline = persisted(args.metrics_url)
+    allocated_baseline = allocated(args.metrics_url)
+    start = time.perf_counter()
+    for seq in range(args.messages):
+        hardware_id = hardware_ids[seq % args.devices]
+        notification = {
+            "hardwareId": hardware_id,
+            "title": "Bench event",
+            "message": f"seq={seq}",
+            "timestamp": str(int(time.time() * 1000)),
+        }
+        if args.critical_ratio > 0:
+            critical = (seq * args.critical_ratio) % 1 + args.critical_ratio >= 1
+            notification["eventType"] = "UNAUTHORIZED_DOOR_OPEN" if critical else "MOTION_DETECTED"
+            notification["mediaUrl"] = f"bench/{hardware_id}/{seq}.mp4"
+        else:
+            notification["eventType"] = "DOOR_OPENED" if seq % 2 == 0 else "DOOR_LOCKED"
+        client.publish("devices/notifications", json.dumps(notification), qos=1)
+    published = time.perf_counter() - start
+    print(f"published {args.messages} messages in {published:.2f}s ({args.messages / published:.0f} msg/s)")
+
+    done = 0.0
+    while time.perf_counter() - start < args.timeout:
+        done = persisted(args.metrics_url) - baseline
+        if done >= args.messages:
+            break
+        time.sleep(0.2)
+    elapsed = time.perf_counter() - start
+
+    client.loop_stop()
+    client.disconnect()
+    print(f"persisted {done:.0f}/{args.messages} in {elapsed:.2f}s ({done / elapsed:.0f} msg/s end to end)")
+    if done > 0:
+        per_message = (allocated(args.metrics_url) - allocated_baseline) / done
+        print(f"allocated {per_message / 1024:.1f} KiB per message")
+    if args.critical_ratio > 0:
+        print("lane latency since startup:")
+        print_lane_latency(args.metrics_url)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,139 @@
+"""Checks that restarting notification-service under load loses no events.
+
+Publishes a steady stream of numbered notifications from one registered device, runs the given
+restart command part-way through (e.g. a rolling restart of the deployment) and keeps publishing.
+Afterwards it reads the device's notifications back from notification-service and reports every
+sequence number that never arrived, and every one stored more than once.
+
+With --media-path every notification carries a clip, so it also goes through the enrich stage. That
+stage is not journaled: a notification still waiting for media analysis at shutdown is already
+stored and gets the device's own message instead. The check then also fails if any notification is
+left with the "Analyzing recorded media..." placeholder.
+
+The stream exceeds the per-device rate limit, so start notification-service with
+MQTT_RATE_LIMIT_ENABLED=false.
+
+    python mqtt_restart_loss_check.py --hardware-id AMB82_001 --device-uuid <uuid> \\
+        --messages 5000 --rate 200 \\
+        --restart-cmd "kubectl -n apollo rollout restart statefulset/notification-service"
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import re
+import shlex
+import subprocess
+import time
+import urllib.request
+import uuid
+from collections import Counter
+
+import paho.mqtt.client as mqtt
+
+PENDING_MESSAGE = "Analyzing recorded media..."
+
+
+def connect(host: str, port: int) -> mqtt.Client:
+    client = mqtt.Client(
+        client_id=f"restart-check-{os.getpid()}",
+        protocol=mqtt.MQTTv311,
+        callback_api_version=mqtt.CallbackAPIVersion.VERSION2,
+    )
+    client.max_inflight_messages_set(100)
+    client.connect(host, port, keepalive=30)
+    client.loop_start()
+    return client
+
+
+def stored_sequences(api_url: str, device_uuid: str, token: str | None, run_id: str) -> tuple[Counter, list[int]]:
+    request = urllib.request.Request(f"{api_url}/api/notification/device/{device_uuid}")
+    if token:
+        request.add_header("Authorization", f"Bearer {token}")
+    with urllib.request.urlopen(request, timeout=30) as response:
+        notifications = json.loads(response.read().decode())
+    # The title carries the sequence number, since media analysis replaces the message
+    pattern = re.compile(rf"restart-check run={run_id} seq=(\d+)")
+    seen = Counter()
+    pending = []
+    for notification in notifications:
+        match = pattern.search(notification.get("title") or "")
+        if match:
+            seq = int(match.group(1))
+            seen[seq] += 1
+            if notification.get("message") == PENDING_MESSAGE:
+                pending.append(seq)
+    return seen, pending
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--mqtt-host", default=os.getenv("MQTT_HOST", "localhost"))
+    parser.add_argument("--mqtt-port", type=int, default=int(os.getenv("MQTT_PORT", "1883")))
+    parser.add_argument("--api-url", default=os.getenv("NOTIFICATION_API_URL", "http://localhost:8085"))
+    parser.add_argument("--token", default=os.getenv("APOLLO_TOKEN"), help="bearer token, if the API requires one")
+    parser.add_argument("--hardware-id", required=True, help="a device already registered in device-service")
+    parser.add_argument("--device-uuid", required=True)
+    parser.add_argument("--messages", type=int, default=5000)
+    parser.add_argument("--rate", type=float, default=200, help="messages per second")
+    parser.add_argument("--restart-at", type=float, default=0.3, help="fraction of the run after which to restart")
+    parser.add_argument("--restart-cmd", required=True)
+    parser.add_argument("--media-path", help="attach this clip path to every notification to exercise the enrich stage")
+    parser.add_argument("--timeout", type=float, default=300)
+    args = parser.parse_args()
+
+    run_id = uuid.uuid4().hex[:8]
+    client = connect(args.mqtt_host, args.mqtt_port)
+    restart_seq = int(args.messages * args.restart_at)
+    interval = 1.0 / args.rate
+    start = time.perf_counter()
+    for seq in range(args.messages):
+        if seq == restart_seq:
+            print(f"seq={seq}: running {args.restart_cmd!r}")
+            subprocess.Popen(shlex.split(args.restart_cmd))
+        notification = {
+            "hardwareId": args.hardware_id,
+            "eventId": f"{run_id}-{seq}",
+            "title": f"restart-check run={run_id} seq={seq}",
+            "message": f"restart-check run={run_id} seq={seq}",
+            "eventType": "DOOR_LOCKED",
+            "timestamp": str(int(time.time() * 1000)),
+        }
+        if args.media_path:
+            notification["mediaUrl"] = args.media_path
+        client.publish("devices/notifications", json.dumps(notification), qos=1)
+        delay = start + (seq + 1) * interval - time.perf_counter()
+        if delay > 0:
+            time.sleep(delay)
+    client.loop_stop()
+    client.disconnect()
+    print(f"published {args.messages} messages (run {run_id}), waiting for them to be stored")
+
+    seen: Counter = Counter()
+    pending: list[int] = []
+    deadline = time.perf_counter() + args.timeout
+    while time.perf_counter() < deadline:
+        try:
+            seen, pending = stored_sequences(args.api_url, args.device_uuid, args.token, run_id)
+        except OSError as error:
+            print(f"notification-service not reachable yet: {error}")
+        if len(seen) >= args.messages and not pending:
+            break
+        time.sleep(2)
+
+    missing = [seq for seq in range(args.messages) if seq not in seen]
+    duplicated = [seq for seq, count in seen.items() if count > 1]
+    print(f"stored {len(seen)}/{args.messages}, missing {len(missing)}, duplicated {len(duplicated)}, "
+          f"left without media analysis {len(pending)}")
+    if missing:
+        print(f"first missing: {missing[:20]}")
+    if duplicated:
+        print(f"first duplicated: {sorted(duplicated)[:20]}")
+    if pending:
+        print(f"first left with the placeholder: {sorted(pending)[:20]}")
+    raise SystemExit(1 if missing or pending else 0)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,148 @@
+"""Push dispatch throughput with the in-process fake provider.
+
+Registers --tokens push tokens for one user (a few of them "invalid-..." so token cleanup is
+exercised), then publishes --messages critical notifications from a device the user can see, at
+--rate per second. Each notification fans out to every token, so 10 notifications/s to 1000 tokens
+asks for 10000 pushes/s. Critical alerts skip the per-user rate limit and quiet hours.
+
+Every second it prints, from notification-service's /actuator/prometheus,
+  - notifications persisted (ingest must keep up with --rate while pushes are going out)
+  - push messages delivered, retried, given up and invalid tokens
+  - notifications skipped because the push queue was full, and the queue depth
+Run notification-service with the default NOTIFICATION_PUSH_PROVIDER=fake and with
+MQTT_RATE_LIMIT_ENABLED=false, since --rate is above the per-device limit; raise
+NOTIFICATION_PUSH_FAKE_LATENCY_MS to see how the senders cope with a slow provider. The tokens
+are unregistered at the end.
+
+    python push_dispatch_bench.py --username alice --password secret --hardware-id AMB82_001 \\
+        --tokens 1000 --messages 600 --rate 10
+"""
+from __future__ import annotations
+
+import argparse
+import json
+import os
+import re
+import time
+import urllib.error
+import urllib.request
+
+import paho.mqtt.client as mqtt
+
+METRICS = {
+    "persisted": re.compile(r'^mqtt_ingest_completed_total\{[^}]*stage="persist"[^}]*\}\s+([0-9.eE+-]+)', re.M),
+    "delivered": re.compile(r'^notification_push_messages_total\{[^}]*outcome="delivered"[^}]*\}\s+([0-9.eE+-]+)', re.M),
+    "retried": re.compile(r'^notification_push_messages_total\{[^}]*outcome="retried"[^}]*\}\s+([0-9.eE+-]+)', re.M),
+    "failed": re.compile(r'^notification_push_messages_total\{[^}]*outcome="failed"[^}]*\}\s+([0-9.eE+-]+)', re.M),
+    "invalid": re.compile(r'^notification_push_messages_total\{[^}]*outcome="invalid_token"[^}]*\}\s+([0-9.eE+-]+)', re.M),
+    "dropped": re.compile(r'^notification_push_dropped_total(?:\{[^}]*\})?\s+([0-9.eE+-]+)', re.M),
+    "queued": re.compile(r'^notification_push_queue_depth(?:\{[^}]*\})?\s+([0-9.eE+-]+)', re.M),
+}
+
+
+def api(base_url: str, path: str, token: str | None, body: dict) -> bytes:
+    headers = {"Content-Type": "application/json"}
+    if token:
+        headers["Authorization"] = f"Bearer {token}"
+    request = urllib.request.Request(f"{base_url}{path}", data=json.dumps(body).encode(), headers=headers, method="POST")
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return response.read()
+
+
+def login(base_url: str, username: str, password: str) -> str:
+    body = json.loads(api(base_url, "/api/auth/login", None, {"username": username, "password": password}))
+    return body.get("token") or body["accessToken"]
+
+
+def sample(metrics_url: str) -> dict[str, float]:
+    with urllib.request.urlopen(metrics_url, timeout=5) as response:
+        text = response.read().decode()
+    values = {}
+    for name, pattern in METRICS.items():
+        match = pattern.search(text)
+        values[name] = float(match.group(1)) if match else 0.0
+    return values
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--base-url", default=os.getenv("APOLLO_BASE_URL", "http://localhost:8080"))
+    parser.add_argument("--metrics-url", default=os.getenv(
+        "NOTIFICATION_METRICS_URL", "http://localhost:8085/actuator/prometheus"))
+    parser.add_argument("--mqtt-host", default=os.getenv("MQTT_HOST", "localhost"))
+    parser.add_argument("--mqtt-port", type=int, default=int(os.getenv("MQTT_PORT", "1883")))
+    parser.add_argument("--username", required=True)
+    parser.add_argument("--password", required=True)
+    parser.add_argument("--hardware-id", required=True, help="a registered device the user can see")
+    parser.add_argument("--tokens", type=int, default=1000)
+    parser.add_argument("--invalid-tokens", type=int, default=5)
+    parser.add_argument("--messages", type=int, default=600)
+    parser.add_argument("--rate", type=float, default=10)
+    parser.add_argument("--drain-timeout", type=float, default=120)
+    args = parser.parse_args()
+
+    jwt = login(args.base_url, args.username, args.password)
+    tokens = [f"bench-{os.getpid()}-{i}" for i in range(args.tokens)]
+    tokens += [f"invalid-{os.getpid()}-{i}" for i in range(args.invalid_tokens)]
+    for token in tokens:
+        api(args.base_url, "/api/notification/push/tokens", jwt, {"token": token, "platform": "ANDROID"})
+    print(f"registered {len(tokens)} push tokens ({args.invalid_tokens} invalid)")
+
+    client = mqtt.Client(client_id=f"push-bench-{os.getpid()}", callback_api_version=mqtt.CallbackAPIVersion.VERSION2)
+    client.max_inflight_messages_set(1000)
+    client.connect(args.mqtt_host, args.mqtt_port, keepalive=30)
+    client.loop_start()
+
+    baseline = sample(args.metrics_url)
+    expected_pushes = args.messages * args.tokens
+    start = time.perf_counter()
+    last_print = start
+    previous = baseline
+    sent = 0
+    print(f"{'t':>5} {'persisted/s':>12} {'delivered/s':>12} {'retried':>8} {'failed':>7} {'invalid':>8} {'dropped':>8} {'queued':>7}")
+    while True:
+        now = time.perf_counter()
+        while sent < args.messages and sent < (now - start) * args.rate:
+            notification = {
+                "hardwareId": args.hardware_id,
+                "eventType": "UNAUTHORIZED_DOOR_OPEN",
+                "title": "Push bench",
+                "message": f"seq={sent}",
+                "timestamp": str(int(time.time() * 1000)),
+            }
+            client.publish("devices/notifications", json.dumps(notification), qos=1)
+            sent += 1
+        if now - last_print >= 1:
+            current = sample(args.metrics_url)
+            elapsed = now - last_print
+            print(f"{now - start:5.0f} {(current['persisted'] - previous['persisted']) / elapsed:12.0f} "
+                  f"{(current['delivered'] - previous['delivered']) / elapsed:12.0f} "
+                  f"{current['retried'] - baseline['retried']:8.0f} {current['failed'] - baseline['failed']:7.0f} "
+                  f"{current['invalid'] - baseline['invalid']:8.0f} {current['dropped'] - baseline['dropped']:8.0f} "
+                  f"{current['queued']:7.0f}")
+            previous, last_print = current, now
+            delivered = current["delivered"] - baseline["delivered"]
+            given_up = current["failed"] - baseline["failed"]
+            if sent >= args.messages and (delivered + given_up >= expected_pushes
+                                          or now - start > args.messages / args.rate + args.drain_timeout):
+                break
+        time.sleep(0.01)
+    elapsed = time.perf_counter() - start
+    client.loop_stop()
+    client.disconnect()
+
+    final = sample(args.metrics_url)
+    delivered = final["delivered"] - baseline["delivered"]
+    print(f"pushes delivered:  {delivered:.0f} / {expected_pushes} expected in {elapsed:.1f}s "
+          f"({delivered / elapsed:.0f}/s overall)")
+    print(f"notifications skipped on a full push queue: {final['dropped'] - baseline['dropped']:.0f}")
+
+    for token in tokens:
+        try:
+            api(args.base_url, "/api/notification/push/tokens/unregister", jwt, {"token": token})
+        except urllib.error.HTTPError:
+            pass  # invalid tokens were already removed by the dispatcher
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,184 @@
+"""Holds many notification streams (/api/notification/user/stream) open and measures delivery.
+
+Opens --connections streams for one user through the gateway, all on one asyncio loop, and keeps
+them open for --duration seconds. Meanwhile publish notifications for one of the user's devices
+(e.g. with mqtt_ingest_bench.py). Reports
+  - how long streams took to open (until the first "connected" comment)
+  - notifications received per stream and in total, and the delay from the notification's
+    createdAt to its arrival (same clock assumed)
+  - notification-update events received (enriched messages, motion session progress)
+  - streams that were closed by the server (overflow, access change, timeout)
+Then opens one more stream resuming --resume-back notifications back in the user's feed and checks
+that exactly those are replayed, in order; exits with status 1 if they are not.
+
+Thousands of streams need `ulimit -n` above that on this machine.
+
+    python sse_stream_bench.py --username alice --password secret --connections 5000 --duration 60
+"""
+from __future__ import annotations
+
+import argparse
+import asyncio
+import json
+import os
+import statistics
+import sys
+import time
+import urllib.parse
+import urllib.request
+from datetime import datetime
+
+
+def login(base_url: str, username: str, password: str) -> str:
+    request = urllib.request.Request(
+        f"{base_url}/api/auth/login",
+        data=json.dumps({"username": username, "password": password}).encode(),
+        headers={"Content-Type": "application/json"},
+        method="POST",
+    )
+    with urllib.request.urlopen(request, timeout=30) as response:
+        body = json.loads(response.read().decode())
+        return body.get("token") or body["accessToken"]
+
+
+def feed_page(base_url: str, token: str, limit: int) -> dict:
+    request = urllib.request.Request(
+        f"{base_url}/api/notification/user/feed?limit={limit}", headers={"Authorization": f"Bearer {token}"}
+    )
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return json.loads(response.read().decode())
+
+
+class Stream:
+    def __init__(self) -> None:
+        self.opened_ms: float | None = None
+        self.received = 0
+        self.updates = 0
+        self.delays_ms: list[float] = []
+        self.uuids: list[str] = []
+        self.closed_by_server = False
+
+
+async def run_stream(base_url: str, token: str, stream: Stream, stop: asyncio.Event,
+                     last_event_id: str | None = None) -> None:
+    url = urllib.parse.urlsplit(base_url)
+    port = url.port or (443 if url.scheme == "https" else 80)
+    started = time.perf_counter()
+    reader, writer = await asyncio.open_connection(url.hostname, port, ssl=url.scheme == "https")
+    headers = [
+        "GET /api/notification/user/stream HTTP/1.1",
+        f"Host: {url.netloc}",
+        f"Authorization: Bearer {token}",
+        "Accept: text/event-stream",
+    ]
+    if last_event_id:
+        headers.append(f"Last-Event-ID: {last_event_id}")
+    writer.write(("\r\n".join(headers) + "\r\n\r\n").encode())
+    await writer.drain()
+
+    event: dict[str, str] = {}
+    try:
+        while not stop.is_set():
+            try:
+                line = await asyncio.wait_for(reader.readline(), timeout=1)
+            except asyncio.TimeoutError:
+                continue
+            if not line:
+                stream.closed_by_server = True
+                return
+            # Chunk sizes of the chunked encoding are not SSE fields and fall through unmatched
+            text = line.decode().rstrip("\r\n")
+            if text.startswith(":connected") or text.startswith(": connected"):
+                stream.opened_ms = (time.perf_counter() - started) * 1000
+            elif text.startswith("id:"):
+                event["id"] = text[3:].strip()
+            elif text.startswith("event:"):
+                event["event"] = text[6:].strip()
+            elif text.startswith("data:"):
+                event["data"] = text[5:].strip()
+            elif text == "" and event:
+                if event.get("event") == "notification":
+                    notification = json.loads(event["data"])
+                    stream.received += 1
+                    stream.uuids.append(notification["uuid"])
+                    created_at = datetime.fromisoformat(notification["createdAt"])
+                    stream.delays_ms.append((datetime.now() - created_at).total_seconds() * 1000)
+                elif event.get("event") == "notification-update":
+                    stream.updates += 1
+                event = {}
+    finally:
+        writer.close()
+
+
+def percentile(samples: list[float], p: float) -> float:
+    ordered = sorted(samples)
+    return ordered[min(len(ordered) - 1, int(len(ordered) * p))]
+
+
+async def main_async(args: argparse.Namespace) -> None:
+    token = args.token or login(args.base_url, args.username, args.password)
+    stop = asyncio.Event()
+    streams = [Stream() for _ in range(args.connections)]
+    tasks = []
+    for i, stream in enumerate(streams):
+        tasks.append(asyncio.create_task(run_stream(args.base_url, token, stream, stop)))
+        if i % 200 == 199:
+            await asyncio.sleep(0.1)  # spread the handshakes a little
+
+    print(f"holding {args.connections} streams for {args.duration}s, publish notifications now")
+    await asyncio.sleep(args.duration)
+    stop.set()
+    await asyncio.gather(*tasks, return_exceptions=True)
+
+    opened = [s.opened_ms for s in streams if s.opened_ms is not None]
+    delays = [d for s in streams for d in s.delays_ms]
+    received = sum(s.received for s in streams)
+    print(f"streams opened:             {len(opened)} / {args.connections}")
+    if opened:
+        print(f"  open time:                p50 {statistics.median(opened):.1f} ms  p99 {percentile(opened, 0.99):.1f} ms")
+    print(f"notifications received:     {received} ({received / args.duration:.0f}/s over all streams)")
+    if delays:
+        print(f"  delivery delay:           p50 {statistics.median(delays):.1f} ms  p99 {percentile(delays, 0.99):.1f} ms")
+    print(f"notification updates:       {sum(s.updates for s in streams)} (enriched messages, motion sessions)")
+    print(f"streams closed by server:   {sum(s.closed_by_server for s in streams)}")
+
+    if args.resume_back <= 0:
+        return
+    # A feed cursor is the event id of the page's last notification, so resuming from it replays the ones above it
+    page = feed_page(args.base_url, token, args.resume_back + 1)
+    if not page["nextCursor"]:
+        print("resume check skipped: the user has too few notifications")
+        return
+    recent = page["items"]
+    last_event_id = page["nextCursor"]
+    resumed = Stream()
+    stop = asyncio.Event()
+    task = asyncio.create_task(run_stream(args.base_url, token, resumed, stop, last_event_id))
+    await asyncio.sleep(3)
+    stop.set()
+    await task
+    expected = [n["uuid"] for n in reversed(recent[:args.resume_back])]
+    ok = resumed.uuids[:len(expected)] == expected
+    print(f"resume replayed:            {resumed.received} notifications, expected {len(expected)} in order: "
+          f"{'ok' if ok else 'MISMATCH'}")
+    if not ok:
+        sys.exit(1)
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--base-url", default=os.getenv("APOLLO_BASE_URL", "http://localhost:8080"))
+    parser.add_argument("--token", default=os.getenv("APOLLO_TOKEN"))
+    parser.add_argument("--username")
+    parser.add_argument("--password")
+    parser.add_argument("--connections", type=int, default=1000)
+    parser.add_argument("--duration", type=float, default=60)
+    parser.add_argument("--resume-back", type=int, default=5)
+    args = parser.parse_args()
+    if not args.token and not (args.username and args.password):
+        parser.error("give --token or --username and --password")
+    asyncio.run(main_async(args))
+
+
+if __name__ == "__main__":
+    main()
@@ -76,8 +76,8 @@ const DeviceProvider: React.FC<{ children: ReactNode }> = ({ children }) => {
       ]);
 
       // Unlock command
-      if (topic === 'devices/commands/unlock') {
-        const { hardwareId } = payload as { hardwareId: string };
+      if (topic.endsWith('/commands/unlock')) {
+        const { hardwareId, commandId } = payload as { hardwareId: string; commandId?: string };
         if (!hardwareId) return;
         setDevices(prev => prev.map(d => {
           if (d.id !== hardwareId) return d;
@@ -101,11 +101,16 @@ const DeviceProvider: React.FC<{ children: ReactNode }> = ({ children }) => {
             timestamp: Date.now().toString(),
           });
 
+          // Tell the backend the command was executed
+          if (commandId) {
+            mqtt.publishCommandAck(hardwareId, commandId, 'OK', 'Unlocked');
+          }
+
           return updated;
         }));
       }
 
-      // Enrol start (topic pattern: doorlock/+/enroll/start)
+      // Enrol start (topic pattern: devices/+/commands/enroll/start)
       if (topic.endsWith('/enroll/start')) {
         const { hardwareId, user_fp_id } = payload as { hardwareId: string; user_fp_id: number };
         if (!hardwareId) return;
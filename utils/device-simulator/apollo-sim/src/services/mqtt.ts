@@ -65,7 +65,8 @@ class MQTTService {
 
   private subscribeToDefaultTopics() {
     if (!this.client) return;
-    const topics = ['devices/commands/unlock', 'doorlock/+/enroll/start'];
+    // Addressed command topics: devices/{hardwareId}/commands/...
+    const topics = ['devices/+/commands/#'];
     this.client.subscribe(topics, (err, granted) => {
       if (err) {
         console.error('Failed to subscribe to default topics', err);
@@ -116,6 +117,12 @@ class MQTTService {
     this.client.publish(topic, JSON.stringify(payload));
   }
 
+  // Acknowledge a command back to the backend on devices/{hardwareId}/acks
+  public publishCommandAck(hardwareId: string, commandId: string, status: 'OK' | 'ERROR', detail?: string) {
+    if (!this.client?.connected) return;
+    this.client.publish(`devices/${hardwareId}/acks`, JSON.stringify({ hardwareId, commandId, status, detail }), { qos: 1 });
+  }
+
   // Publish sensor event notification with proper eventType field
   public publishSensorNotification(payload: any) {
     if (!this.client?.connected) return;